@@ -0,0 +1,57 @@
+package application;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+
+/**
+ * The kinds of collections Graph can use to store each person's friends
+ * 
+ * @author samsoncain
+ */
+public enum AdjacencyStore {
+
+  /**
+   * Original LinkedList friend lists. Add, remove and contains are O(degree),
+   * kept as a baseline for benchmarking.
+   */
+  LINKED_LIST {
+    @Override
+    public Collection<Person> create(Graph graph) {
+      return new LinkedList<Person>();
+    }
+  },
+
+  /**
+   * Insertion-ordered hash sets. Add, remove and contains are O(1) expected
+   * while friends are still iterated in the order they were added.
+   */
+  LINKED_HASH_SET {
+    @Override
+    public Collection<Person> create(Graph graph) {
+      return new LinkedHashSet<Person>();
+    }
+  },
+
+  /**
+   * Open addressing sets of friend IDs. Add, remove and contains are O(1)
+   * expected at a few bytes per friend instead of a hash set entry, friends are
+   * iterated in no particular order.
+   */
+  INT_HASH_SET {
+    @Override
+    public Collection<Person> create(Graph graph) {
+      return new FriendIdSet(graph);
+    }
+  };
+
+  /**
+   * Creates a new, empty friend collection for one person
+   * 
+   * @param graph graph the person belongs to
+   * 
+   * @return Collection<Person> to hold a person's friends
+   */
+  public abstract Collection<Person> create(Graph graph);
+
+}
@@ -0,0 +1,763 @@
+package application;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Bulk loader for network files that builds the graph directly instead of
+ * replaying every line through SocialNetwork.
+ *
+ * load(File) reads lines as Strings and tokenizes them in parallel.
+ * loadMapped(File) memory-maps the file and scans it as bytes.
+ *
+ * Lines are read in batches. Each batch is tokenized in parallel on a
+ * ForkJoinPool by a hand-written tokenizer (no regex), and every username is
+ * interned once into a shared table that also remembers whether it is valid
+ * and, while applying, its Person node. While one batch is being tokenized the
+ * previous one is applied to the graph on the calling thread in file order,
+ * so the result is the same graph sequential replay would build, including
+ * stopping at the first blank line or the first failing command.
+ *
+ * @author samsoncain
+ */
+public class BulkNetworkLoader {
+
+  /**
+   * Number of lines read and tokenized together
+   */
+  private static final int BATCH_SIZE = 1 << 14;
+
+  /**
+   * Lines per tokenizing task before it stops splitting
+   */
+  private static final int TASK_SIZE = 1 << 10;
+
+  /**
+   * Line commands, in the order used by the ops array of a batch
+   */
+  static final byte SKIP = 0;
+  static final byte STOP = 1;
+  static final byte ADD_USER = 2;
+  static final byte REMOVE_USER = 3;
+  static final byte ADD_FRIEND = 4;
+  static final byte REMOVE_FRIEND = 5;
+
+  /**
+   * Graph to load into
+   */
+  private GraphADT graph;
+
+  /**
+   * Pool that tokenizes batches
+   */
+  private ForkJoinPool pool;
+
+  /**
+   * Every username seen so far
+   */
+  private ConcurrentHashMap<String, Username> usernames;
+
+  /**
+   * Number of lines applied by the last load
+   */
+  private long lines;
+
+  /**
+   * Nanoseconds taken by the last load
+   */
+  private long nanos;
+
+  /**
+   * Open-addressing table of usernames interned straight from mapped bytes,
+   * power of two length
+   */
+  private Username[] byteTable;
+
+  /**
+   * Number of entries in byteTable
+   */
+  private int byteTableCount;
+
+  /**
+   * Largest mapped window, lines must not be longer than this
+   */
+  private long windowSize = 1 << 30;
+
+  /**
+   * Interned username. The valid flag is set when it is interned, the node
+   * fields are only used by the thread applying commands.
+   */
+  static class Username {
+    final String name;
+    final int hash;
+    final boolean valid;
+    boolean resolved;
+    Person person;
+
+    Username(String name) {
+      this.name = name;
+      this.hash = name.hashCode();
+      this.valid = SocialNetwork.isValidUsername(name);
+    }
+  }
+
+  /**
+   * Constructor
+   *
+   * @param graph   graph to load into, may already contain people
+   * @param threads number of threads used for tokenizing
+   */
+  public BulkNetworkLoader(GraphADT graph, int threads) {
+    this.graph = graph;
+    this.pool = new ForkJoinPool(Math.max(1, threads));
+    this.usernames = new ConcurrentHashMap<String, Username>();
+  }
+
+  /**
+   * Loads a network file into the graph
+   *
+   * @param file the file to load from
+   *
+   * @return long number of lines applied
+   *
+   * @throws IOException if file cannot be read
+   * @throws InvalidUsernameException if a username is invalid
+   * @throws UserAlreadyExistsException if a single user is added twice
+   * @throws UserNotFoundException if a removed user does not exist
+   */
+  public long load(File file)
+      throws IOException, InvalidUsernameException, UserAlreadyExistsException, UserNotFoundException {
+    long start = System.nanoTime();
+    this.lines = 0;
+
+    // start with a fresh table so no cached node outlives changes made between loads
+    this.usernames = new ConcurrentHashMap<String, Username>();
+
+    try (BufferedReader reader = new BufferedReader(new FileReader(file), 1 << 16)) {
+      ForkJoinTask<Batch> pending = this.tokenizeAsync(readBatch(reader));
+
+      while (pending != null) {
+        // read and start tokenizing the next batch while this one is applied
+        List<String> next = readBatch(reader);
+        ForkJoinTask<Batch> nextPending = next.isEmpty() ? null : this.tokenizeAsync(next);
+
+        if (!this.apply(pending.join())) {
+          if (nextPending != null) {
+            nextPending.cancel(false);
+          }
+          break;
+        }
+        pending = nextPending;
+      }
+    } finally {
+      this.nanos = System.nanoTime() - start;
+    }
+
+    return this.lines;
+  }
+
+  /**
+   * Loads a network file into the graph by memory-mapping it
+   *
+   * The file is scanned byte by byte from the mapped pages. Usernames are
+   * hashed and looked up straight from the bytes, a String is only created the
+   * first time a username is seen. Lines are applied in order on the calling
+   * thread with the same rules as load(File). Bytes are read as ISO-8859-1,
+   * which matches the default charset for the ASCII usernames that are valid.
+   *
+   * @param file the file to load from
+   *
+   * @return long number of lines applied
+   *
+   * @throws IOException if file cannot be read
+   * @throws InvalidUsernameException if a username is invalid
+   * @throws UserAlreadyExistsException if a single user is added twice
+   * @throws UserNotFoundException if a removed user does not exist
+   */
+  public long loadMapped(File file)
+      throws IOException, InvalidUsernameException, UserAlreadyExistsException, UserNotFoundException {
+    long start = System.nanoTime();
+    this.lines = 0;
+    this.byteTable = new Username[1 << 10];
+    this.byteTableCount = 0;
+
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      long windowStart = 0;
+      boolean skipNewline = false;
+
+      // map the file in windows; a line cut off at the end of a window is
+      // scanned again at the start of the next one
+      while (windowStart < size) {
+        long length = Math.min(this.windowSize, size - windowStart);
+        boolean last = windowStart + length == size;
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, length);
+        int limit = (int) length;
+
+        // the previous window ended with \r, skip the \n that completes it
+        int position = skipNewline && buffer.get(0) == '\n' ? 1 : 0;
+        skipNewline = false;
+        int lineStart = position;
+
+        while (position < limit) {
+          byte b = buffer.get(position);
+          if (b != '\n' && b != '\r') {
+            position++;
+            continue;
+          }
+
+          if (!this.scanLine(buffer, lineStart, position)) {
+            return this.lines;
+          }
+
+          // \r\n ends a single line, like BufferedReader.readLine
+          position++;
+          if (b == '\r') {
+            if (position < limit) {
+              if (buffer.get(position) == '\n') {
+                position++;
+              }
+            } else {
+              skipNewline = true;
+            }
+          }
+          lineStart = position;
+        }
+
+        if (last) {
+          // the last line does not need a line terminator
+          if (lineStart < limit) {
+            this.scanLine(buffer, lineStart, limit);
+          }
+          break;
+        }
+        if (lineStart == 0) {
+          throw new IOException("Line longer than " + this.windowSize + " bytes in " + file);
+        }
+        windowStart += lineStart;
+      }
+    } finally {
+      this.nanos = System.nanoTime() - start;
+    }
+
+    return this.lines;
+  }
+
+  /**
+   * Tokenizes and applies one line from a mapped buffer
+   *
+   * @param buffer mapped window
+   * @param start  index of the first byte of the line
+   * @param end    index after the last byte of the line
+   *
+   * @return true to keep loading, false if the line was blank
+   *
+   * @throws InvalidUsernameException if a username is invalid
+   * @throws UserAlreadyExistsException if a single user is added twice
+   * @throws UserNotFoundException if a removed user does not exist
+   */
+  private boolean scanLine(ByteBuffer buffer, int start, int end)
+      throws InvalidUsernameException, UserAlreadyExistsException, UserNotFoundException {
+    // blank line stops the load, isBlank also counts the separators 0x1C-0x1F
+    int position = start;
+    while (position < end && (isSpace(buffer.get(position)) || (buffer.get(position) >= 0x1C
+        && buffer.get(position) <= 0x1F))) {
+      position++;
+    }
+    if (position == end) {
+      return this.applyLine(STOP, null, null);
+    }
+
+    byte command = buffer.get(start);
+    if (command != 'a' && command != 'r') {
+      return this.applyLine(SKIP, null, null);
+    }
+
+    // the first token is the command itself, then up to two usernames
+    position = start;
+    while (position < end && !isSpace(buffer.get(position))) {
+      position++;
+    }
+    int tokens = 1;
+    int[] bounds = new int[4];
+    while (true) {
+      while (position < end && isSpace(buffer.get(position))) {
+        position++;
+      }
+      if (position == end) {
+        break;
+      }
+      int tokenStart = position;
+      while (position < end && !isSpace(buffer.get(position))) {
+        position++;
+      }
+      if (tokens < 3) {
+        bounds[2 * (tokens - 1)] = tokenStart;
+        bounds[2 * (tokens - 1) + 1] = position;
+      }
+      tokens++;
+    }
+
+    if (tokens == 2) {
+      return this.applyLine(command == 'a' ? ADD_USER : REMOVE_USER,
+          this.internBytes(buffer, bounds[0], bounds[1]), null);
+    } else if (tokens == 3) {
+      return this.applyLine(command == 'a' ? ADD_FRIEND : REMOVE_FRIEND,
+          this.internBytes(buffer, bounds[0], bounds[1]),
+          this.internBytes(buffer, bounds[2], bounds[3]));
+    }
+    return this.applyLine(SKIP, null, null);
+  }
+
+  /**
+   * Returns the interned entry of the username stored in buffer[start, end),
+   * only creating a String the first time the username is seen
+   *
+   * @param buffer mapped window
+   * @param start  index of the first byte of the username
+   * @param end    index after the last byte of the username
+   *
+   * @return Username entry
+   */
+  private Username internBytes(ByteBuffer buffer, int start, int end) {
+    // same hash as String.hashCode of the ISO-8859-1 decoded bytes
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + (buffer.get(i) & 0xff);
+    }
+
+    int mask = this.byteTable.length - 1;
+    int slot = (hash ^ (hash >>> 16)) & mask;
+    Username username;
+    while ((username = this.byteTable[slot]) != null) {
+      if (username.hash == hash && sameName(username.name, buffer, start, end)) {
+        return username;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    byte[] bytes = new byte[end - start];
+    for (int i = start; i < end; i++) {
+      bytes[i - start] = buffer.get(i);
+    }
+    username = new Username(new String(bytes, StandardCharsets.ISO_8859_1));
+    this.byteTable[slot] = username;
+
+    // keep the table at most half full
+    if (++this.byteTableCount > this.byteTable.length / 2) {
+      Username[] old = this.byteTable;
+      this.byteTable = new Username[old.length * 2];
+      mask = this.byteTable.length - 1;
+      for (Username entry : old) {
+        if (entry != null) {
+          int index = (entry.hash ^ (entry.hash >>> 16)) & mask;
+          while (this.byteTable[index] != null) {
+            index = (index + 1) & mask;
+          }
+          this.byteTable[index] = entry;
+        }
+      }
+    }
+
+    return username;
+  }
+
+  /**
+   * Checks whether a name equals the ISO-8859-1 bytes buffer[start, end)
+   *
+   * @param name   interned username
+   * @param buffer mapped window
+   * @param start  index of the first byte
+   * @param end    index after the last byte
+   *
+   * @return true if they are the same
+   */
+  private static boolean sameName(String name, ByteBuffer buffer, int start, int end) {
+    if (name.length() != end - start) {
+      return false;
+    }
+    for (int i = start; i < end; i++) {
+      if (name.charAt(i - start) != (buffer.get(i) & 0xff)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Sets the largest mapped window, mostly so tests can use small windows
+   *
+   * @param windowSize window size in bytes
+   */
+  void setWindowSize(long windowSize) {
+    this.windowSize = windowSize;
+  }
+
+  /**
+   * Returns the number of lines applied by the last load
+   *
+   * @return long number of lines
+   */
+  public long getLines() {
+    return this.lines;
+  }
+
+  /**
+   * Returns the throughput of the last load
+   *
+   * @return double lines applied per second
+   */
+  public double getLinesPerSecond() {
+    return this.nanos == 0 ? 0 : this.lines * 1e9 / this.nanos;
+  }
+
+  /**
+   * Stops the tokenizing threads
+   */
+  public void shutdown() {
+    this.pool.shutdown();
+  }
+
+  /**
+   * Tokenized batch of lines
+   */
+  static class Batch {
+    final byte[] ops;
+    final Username[] first;
+    final Username[] second;
+
+    Batch(int size) {
+      this.ops = new byte[size];
+      this.first = new Username[size];
+      this.second = new Username[size];
+    }
+  }
+
+  /**
+   * Tokenizes a range of a batch, splitting in half until the range is small
+   */
+  @SuppressWarnings("serial")
+  private class TokenizeTask extends RecursiveAction {
+    private final List<String> lines;
+    private final Batch batch;
+    private final int from;
+    private final int to;
+
+    TokenizeTask(List<String> lines, Batch batch, int from, int to) {
+      this.lines = lines;
+      this.batch = batch;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (this.to - this.from <= TASK_SIZE) {
+        for (int i = this.from; i < this.to; i++) {
+          tokenize(this.lines.get(i), this.batch, i);
+        }
+      } else {
+        int middle = (this.from + this.to) >>> 1;
+        invokeAll(new TokenizeTask(this.lines, this.batch, this.from, middle),
+            new TokenizeTask(this.lines, this.batch, middle, this.to));
+      }
+    }
+  }
+
+  /**
+   * Starts tokenizing a batch on the pool
+   *
+   * @param lines lines of the batch
+   *
+   * @return ForkJoinTask<Batch> that completes with the tokenized batch, or null
+   *         if there are no lines
+   */
+  private ForkJoinTask<Batch> tokenizeAsync(List<String> lines) {
+    if (lines.isEmpty()) {
+      return null;
+    }
+
+    Batch batch = new Batch(lines.size());
+    TokenizeTask task = new TokenizeTask(lines, batch, 0, lines.size());
+    return this.pool.submit(ForkJoinTask.adapt(() -> {
+      task.invoke();
+      return batch;
+    }));
+  }
+
+  /**
+   * Tokenizes one line into a batch
+   *
+   * @param line  line to tokenize
+   * @param batch batch to store the result in
+   * @param index index of the line in the batch
+   */
+  private void tokenize(String line, Batch batch, int index) {
+    String[] names = new String[2];
+    byte op = parseLine(line, names);
+
+    batch.ops[index] = op;
+    if (names[0] != null) {
+      batch.first[index] = this.intern(names[0]);
+    }
+    if (names[1] != null) {
+      batch.second[index] = this.intern(names[1]);
+    }
+  }
+
+  /**
+   * Parses one line the same way loadNetworkFromFile reads it: a blank line
+   * stops the load, the first character picks the command and the number of
+   * whitespace separated tokens picks the variant
+   *
+   * @param line  line to parse
+   * @param names array of length 2 that receives the usernames of the command
+   *
+   * @return byte line command, one of SKIP, STOP, ADD_USER, REMOVE_USER,
+   *         ADD_FRIEND or REMOVE_FRIEND
+   */
+  static byte parseLine(String line, String[] names) {
+    if (line.isBlank()) {
+      return STOP;
+    }
+
+    char command = line.charAt(0);
+    if (command != 'a' && command != 'r') {
+      return SKIP;
+    }
+
+    // the first token is the command itself, then up to two usernames
+    int length = line.length();
+    int position = skipToken(line, 0);
+    int tokens = 1;
+    String first = null;
+    String second = null;
+
+    while (true) {
+      position = skipSpace(line, position);
+      if (position == length) {
+        break;
+      }
+      int end = skipToken(line, position);
+      if (tokens == 1) {
+        first = line.substring(position, end);
+      } else if (tokens == 2) {
+        second = line.substring(position, end);
+      }
+      tokens++;
+      position = end;
+    }
+
+    if (tokens == 2) {
+      names[0] = first;
+      return command == 'a' ? ADD_USER : REMOVE_USER;
+    } else if (tokens == 3) {
+      names[0] = first;
+      names[1] = second;
+      return command == 'a' ? ADD_FRIEND : REMOVE_FRIEND;
+    }
+    return SKIP;
+  }
+
+  /**
+   * Returns the interned entry of a username, creating it the first time
+   *
+   * @param name username
+   *
+   * @return Username entry
+   */
+  private Username intern(String name) {
+    Username username = this.usernames.get(name);
+    return username != null ? username : this.usernames.computeIfAbsent(name, Username::new);
+  }
+
+  /**
+   * Applies a tokenized batch to the graph in order
+   *
+   * @param batch batch to apply
+   *
+   * @return true to keep loading, false if a blank line was reached
+   *
+   * @throws InvalidUsernameException if a username is invalid
+   * @throws UserAlreadyExistsException if a single user is added twice
+   * @throws UserNotFoundException if a removed user does not exist
+   */
+  private boolean apply(Batch batch)
+      throws InvalidUsernameException, UserAlreadyExistsException, UserNotFoundException {
+    for (int i = 0; i < batch.ops.length; i++) {
+      if (!this.applyLine(batch.ops[i], batch.first[i], batch.second[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Applies one tokenized line to the graph
+   *
+   * @param op     line command
+   * @param first  first username, or null
+   * @param second second username, or null
+   *
+   * @return true to keep loading, false if the line was blank
+   *
+   * @throws InvalidUsernameException if a username is invalid
+   * @throws UserAlreadyExistsException if a single user is added twice
+   * @throws UserNotFoundException if a removed user does not exist
+   */
+  private boolean applyLine(byte op, Username first, Username second)
+      throws InvalidUsernameException, UserAlreadyExistsException, UserNotFoundException {
+    switch (op) {
+      case STOP:
+        return false;
+      case ADD_USER:
+        if (this.node(first) != null) {
+          throw new UserAlreadyExistsException();
+        }
+        this.addNode(first);
+        break;
+      case REMOVE_USER:
+        this.graph.removeNode(this.existingNode(first));
+        first.person = null;
+        break;
+      case ADD_FRIEND:
+        if (this.node(first) == null) {
+          this.addNode(first);
+        }
+        if (this.node(second) == null) {
+          this.addNode(second);
+        }
+        this.graph.addEdge(first.person, second.person);
+        break;
+      case REMOVE_FRIEND:
+        this.graph.removeEdge(this.existingNode(first), this.existingNode(second));
+        break;
+      default:
+        break;
+    }
+    this.lines++;
+    return true;
+  }
+
+  /**
+   * Returns the node of a username, looking it up in the graph the first time
+   * so people that were there before the load are found
+   *
+   * @param username interned username
+   *
+   * @return Person node, or null if the user does not exist
+   */
+  private Person node(Username username) {
+    if (!username.resolved) {
+      username.person = this.graph.getNode(username.name);
+      username.resolved = true;
+    }
+    return username.person;
+  }
+
+  /**
+   * Returns the node of a username that has to exist
+   *
+   * @param username interned username
+   *
+   * @return Person node
+   *
+   * @throws UserNotFoundException if user does not exist
+   */
+  private Person existingNode(Username username) throws UserNotFoundException {
+    Person person = this.node(username);
+    if (person == null) {
+      throw new UserNotFoundException("User " + "'" + username.name + "'" + " does not exist");
+    }
+    return person;
+  }
+
+  /**
+   * Adds a new node for a username
+   *
+   * @param username interned username
+   *
+   * @throws InvalidUsernameException if username is invalid
+   */
+  private void addNode(Username username) throws InvalidUsernameException {
+    if (!username.valid) {
+      throw new InvalidUsernameException("Username can only contain letters, digits, underscores, and apostrophes.");
+    }
+    username.person = Person.of(username.name);
+    this.graph.addNode(username.person);
+  }
+
+  /**
+   * Reads the next batch of lines
+   *
+   * @param reader reader to read from
+   *
+   * @return List<String> of up to BATCH_SIZE lines, empty at end of file
+   *
+   * @throws IOException if reading fails
+   */
+  private static List<String> readBatch(BufferedReader reader) throws IOException {
+    List<String> batch = new ArrayList<String>(BATCH_SIZE);
+    String line;
+    while (batch.size() < BATCH_SIZE && (line = reader.readLine()) != null) {
+      batch.add(line);
+    }
+    return batch;
+  }
+
+  /**
+   * Returns the index after the token starting at position
+   *
+   * @param line     line being tokenized
+   * @param position start of the token
+   *
+   * @return int index of the first whitespace character after it, or the line length
+   */
+  private static int skipToken(String line, int position) {
+    while (position < line.length() && !isSpace(line.charAt(position))) {
+      position++;
+    }
+    return position;
+  }
+
+  /**
+   * Returns the index of the next non-whitespace character
+   *
+   * @param line     line being tokenized
+   * @param position where to start
+   *
+   * @return int index of the next token, or the line length
+   */
+  private static int skipSpace(String line, int position) {
+    while (position < line.length() && isSpace(line.charAt(position))) {
+      position++;
+    }
+    return position;
+  }
+
+  /**
+   * Checks for the whitespace characters matched by the regex \s that
+   * loadNetworkFromFile splits on
+   *
+   * @param c character to check
+   *
+   * @return true if c is whitespace
+   */
+  static boolean isSpace(int c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+  }
+
+}
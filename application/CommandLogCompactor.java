@@ -0,0 +1,549 @@
+package application;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Reduces a network command file to the smallest set of commands that builds
+ * the same graph: one "a user1 user2" line per final friendship, one "a user"
+ * line per final user without friends and the last "s" line.
+ *
+ * Offline compaction streams the input and never holds more than a fixed
+ * number of records in memory. It turns every line into user and friendship
+ * records stamped with their line number, external sorts them and works out
+ * the final graph with merge joins:
+ *
+ *   1. a user exists at the end if the last line that touched them added them;
+ *      their last "r user" line is remembered
+ *   2. a friendship exists at the end if its last line was an add and that add
+ *      came after the last removal of both users
+ *
+ * Input must replay without errors (as logs written by the application do),
+ * since lines after a failing command would never be replayed.
+ *
+ * Online compaction writes the same minimal form straight from a graph that is
+ * already in memory.
+ *
+ * @author samsoncain
+ */
+public class CommandLogCompactor {
+
+  /**
+   * Default number of records sorted in memory before spilling a run
+   */
+  private static final int DEFAULT_RUN_SIZE = 1 << 20;
+
+  /**
+   * Sequence number written for users that were never removed
+   */
+  private static final String NEVER = sequence(0);
+
+  /**
+   * Directory for temporary sort runs
+   */
+  private File temporaryDirectory;
+
+  /**
+   * Number of records sorted in memory before spilling a run
+   */
+  private int runSize;
+
+  /**
+   * Number of lines read by the last compaction
+   */
+  private long inputLines;
+
+  /**
+   * Number of lines written by the last compaction
+   */
+  private long outputLines;
+
+  /**
+   * Nanoseconds taken by the last compaction
+   */
+  private long nanos;
+
+  /**
+   * Default no-arg constructor, sorts runs of about a million records in the
+   * default temporary directory
+   */
+  public CommandLogCompactor() {
+    this(new File(System.getProperty("java.io.tmpdir")), DEFAULT_RUN_SIZE);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param temporaryDirectory directory for temporary sort runs
+   * @param runSize            number of records sorted in memory at once
+   */
+  public CommandLogCompactor(File temporaryDirectory, int runSize) {
+    this.temporaryDirectory = temporaryDirectory;
+    this.runSize = Math.max(2, runSize);
+  }
+
+  /**
+   * Compacts a command file into a new file
+   *
+   * @param input  command file to compact
+   * @param output file to write the compacted commands to
+   *
+   * @throws IOException if a file cannot be read or written
+   */
+  public void compact(File input, File output) throws IOException {
+    long start = System.nanoTime();
+    this.inputLines = 0;
+    this.outputLines = 0;
+
+    ExternalSorter userRecords = new ExternalSorter();
+    ExternalSorter edgeRecords = new ExternalSorter();
+    String central = null;
+
+    // 1. turn every line into records stamped with its line number
+    try (BufferedReader reader = new BufferedReader(new FileReader(input), 1 << 16)) {
+      String line;
+      String[] names = new String[2];
+      while ((line = reader.readLine()) != null) {
+        byte op = BulkNetworkLoader.parseLine(line, names);
+        if (op == BulkNetworkLoader.STOP) {
+          break;
+        }
+        this.inputLines++;
+        String seq = sequence(this.inputLines);
+
+        switch (op) {
+          case BulkNetworkLoader.ADD_USER:
+            userRecords.add(names[0] + '\t' + seq + "\tP");
+            break;
+          case BulkNetworkLoader.REMOVE_USER:
+            userRecords.add(names[0] + '\t' + seq + "\tR");
+            break;
+          case BulkNetworkLoader.ADD_FRIEND:
+          case BulkNetworkLoader.REMOVE_FRIEND:
+            boolean add = op == BulkNetworkLoader.ADD_FRIEND;
+            if (add) {
+              userRecords.add(names[0] + '\t' + seq + "\tP");
+              userRecords.add(names[1] + '\t' + seq + "\tP");
+            }
+            // friendships are undirected, store them under the smaller name first
+            String low = names[0].compareTo(names[1]) <= 0 ? names[0] : names[1];
+            String high = low == names[0] ? names[1] : names[0];
+            edgeRecords.add(low + '\t' + high + '\t' + seq + (add ? "\tA" : "\tD"));
+            break;
+          default:
+            if (line.charAt(0) == 's') {
+              central = line;
+            }
+            break;
+        }
+        names[0] = null;
+        names[1] = null;
+      }
+    }
+
+    File userTable = this.temporaryFile();
+    try (Writer writer = new BufferedWriter(new FileWriter(output), 1 << 16)) {
+      // 2. reduce user records to "name, alive, last removal" sorted by name
+      this.buildUserTable(userRecords, userTable);
+
+      // 3. reduce friendship records to the ones whose last line was an add,
+      // then keep those added after the last removal of the first user
+      ExternalSorter bySecond = new ExternalSorter();
+      try (SortedLines edges = edgeRecords.sorted(); SortedLines users = readLines(userTable)) {
+        String[] previous = null;
+        String[] record;
+        String line;
+        while (true) {
+          line = edges.next();
+          record = line == null ? null : line.split("\t");
+          if (previous != null && (record == null || !record[0].equals(previous[0])
+              || !record[1].equals(previous[1]))) {
+            if (previous[3].equals("A") && addedAfterRemoval(users, previous[0], previous[2])) {
+              bySecond.add(previous[1] + '\t' + previous[0] + '\t' + previous[2]);
+            }
+          }
+          if (record == null) {
+            break;
+          }
+          previous = record;
+        }
+      }
+
+      // 4. keep the ones also added after the last removal of the second user
+      ExternalSorter withFriends = new ExternalSorter();
+      try (SortedLines edges = bySecond.sorted(); SortedLines users = readLines(userTable)) {
+        String line;
+        while ((line = edges.next()) != null) {
+          String[] record = line.split("\t");
+          if (addedAfterRemoval(users, record[0], record[2])) {
+            writer.write("a " + record[1] + " " + record[0] + "\n");
+            this.outputLines++;
+            withFriends.add(record[0]);
+            withFriends.add(record[1]);
+          }
+        }
+      }
+
+      // 5. add the users that exist but have no friendship that creates them
+      try (SortedLines named = withFriends.sorted(); SortedLines users = readLines(userTable)) {
+        String friendName = named.next();
+        String line;
+        while ((line = users.next()) != null) {
+          String[] user = line.split("\t");
+          while (friendName != null && friendName.compareTo(user[0]) < 0) {
+            friendName = named.next();
+          }
+          if (user[1].equals("1") && !user[0].equals(friendName)) {
+            writer.write("a " + user[0] + "\n");
+            this.outputLines++;
+          }
+        }
+      }
+
+      if (central != null) {
+        writer.write(central + "\n");
+        this.outputLines++;
+      }
+    } finally {
+      userTable.delete();
+      this.nanos = System.nanoTime() - start;
+    }
+  }
+
+  /**
+   * Writes the minimal commands for a graph that is already in memory
+   *
+   * @param graph       graph to write
+   * @param centralUser central user to write as the last "s" line, or null
+   * @param output      file to write to
+   *
+   * @throws IOException if the file cannot be written
+   */
+  public void compact(GraphADT graph, String centralUser, File output) throws IOException {
+    long start = System.nanoTime();
+    this.inputLines = 0;
+    this.outputLines = 0;
+
+    try (Writer writer = new BufferedWriter(new FileWriter(output), 1 << 16)) {
+      Set<Person> written = new HashSet<Person>();
+      for (Person person : graph.getAllNodes()) {
+        this.inputLines++;
+        if (graph.degree(person) == 0) {
+          writer.write("a " + person.getUsername() + "\n");
+          this.outputLines++;
+        }
+        for (Person friend : graph.getNeighbors(person)) {
+          if (!written.contains(friend)) {
+            writer.write("a " + person.getUsername() + " " + friend.getUsername() + "\n");
+            this.outputLines++;
+          }
+        }
+        written.add(person);
+      }
+
+      if (centralUser != null && graph.getNode(centralUser) != null) {
+        writer.write("s " + centralUser + "\n");
+        this.outputLines++;
+      }
+    } finally {
+      this.nanos = System.nanoTime() - start;
+    }
+  }
+
+  /**
+   * Returns the number of lines read by the last compaction, or the number of
+   * users for an online compaction
+   *
+   * @return long number of input lines
+   */
+  public long getInputLines() {
+    return this.inputLines;
+  }
+
+  /**
+   * Returns the number of lines written by the last compaction
+   *
+   * @return long number of output lines
+   */
+  public long getOutputLines() {
+    return this.outputLines;
+  }
+
+  /**
+   * Returns how many input lines the last compaction replaced per output line
+   *
+   * @return double input lines divided by output lines
+   */
+  public double getCompactionRatio() {
+    return this.outputLines == 0 ? this.inputLines : (double) this.inputLines / this.outputLines;
+  }
+
+  /**
+   * Returns the throughput of the last compaction
+   *
+   * @return double input lines per second
+   */
+  public double getLinesPerSecond() {
+    return this.nanos == 0 ? 0 : this.inputLines * 1e9 / this.nanos;
+  }
+
+  /**
+   * Reduces sorted user records to one "name, alive, last removal" line per
+   * user
+   *
+   * @param userRecords user records
+   * @param userTable   file to write the table to
+   *
+   * @throws IOException if a file cannot be read or written
+   */
+  private void buildUserTable(ExternalSorter userRecords, File userTable) throws IOException {
+    try (SortedLines records = userRecords.sorted();
+        Writer table = new BufferedWriter(new FileWriter(userTable), 1 << 16)) {
+      String name = null;
+      boolean alive = false;
+      String lastRemoval = NEVER;
+      String line;
+
+      while (true) {
+        line = records.next();
+        String[] record = line == null ? null : line.split("\t");
+        if (name != null && (record == null || !record[0].equals(name))) {
+          table.write(name + '\t' + (alive ? "1" : "0") + '\t' + lastRemoval + "\n");
+          lastRemoval = NEVER;
+        }
+        if (record == null) {
+          break;
+        }
+
+        // records of one user are sorted by line number, so the last one wins
+        name = record[0];
+        alive = record[2].equals("P");
+        if (!alive) {
+          lastRemoval = record[1];
+        }
+      }
+    }
+  }
+
+  /**
+   * Advances a sorted user table to a user and checks that a friendship added
+   * at a line came after the user's last removal
+   *
+   * @param users user table, advanced past users before name
+   * @param name  the user
+   * @param added line number the friendship was last added at
+   *
+   * @return true if the user was not removed after the friendship was added
+   *
+   * @throws IOException if the table cannot be read
+   */
+  private static boolean addedAfterRemoval(SortedLines users, String name, String added)
+      throws IOException {
+    String line;
+    while ((line = users.peek()) != null) {
+      int tab = line.indexOf('\t');
+      int order = line.substring(0, tab).compareTo(name);
+      if (order == 0) {
+        return added.compareTo(line.substring(line.lastIndexOf('\t') + 1)) > 0;
+      } else if (order > 0) {
+        return false;
+      }
+      users.next();
+    }
+    return false;
+  }
+
+  /**
+   * Formats a line number as fixed width hex so records sort by it as text
+   *
+   * @param value line number
+   *
+   * @return String of 16 hex digits
+   */
+  private static String sequence(long value) {
+    String hex = Long.toHexString(value);
+    return "0000000000000000".substring(hex.length()) + hex;
+  }
+
+  /**
+   * Creates a temporary file in the temporary directory
+   *
+   * @return File that is deleted on exit
+   *
+   * @throws IOException if the file cannot be created
+   */
+  private File temporaryFile() throws IOException {
+    File file = File.createTempFile("compact", ".run", this.temporaryDirectory);
+    file.deleteOnExit();
+    return file;
+  }
+
+  /**
+   * Opens a file of sorted lines
+   *
+   * @param file file to read
+   *
+   * @return SortedLines over the file
+   *
+   * @throws IOException if the file cannot be opened
+   */
+  private static SortedLines readLines(File file) throws IOException {
+    BufferedReader reader = new BufferedReader(new FileReader(file), 1 << 16);
+    return new SortedLines() {
+      @Override
+      protected String read() throws IOException {
+        return reader.readLine();
+      }
+
+      @Override
+      public void close() throws IOException {
+        reader.close();
+      }
+    };
+  }
+
+  /**
+   * Stream of lines in sorted order that can look one line ahead
+   */
+  private abstract static class SortedLines implements AutoCloseable {
+    private String peeked;
+    private boolean hasPeeked;
+
+    /**
+     * Reads the next line from the source
+     *
+     * @return String next line, or null at the end
+     *
+     * @throws IOException if reading fails
+     */
+    protected abstract String read() throws IOException;
+
+    String peek() throws IOException {
+      if (!this.hasPeeked) {
+        this.peeked = this.read();
+        this.hasPeeked = true;
+      }
+      return this.peeked;
+    }
+
+    String next() throws IOException {
+      String line = this.peek();
+      this.hasPeeked = false;
+      return line;
+    }
+
+    @Override
+    public abstract void close() throws IOException;
+  }
+
+  /**
+   * Sorts lines that may not fit in memory: lines are collected into runs of
+   * runSize, each run is sorted and spilled to a temporary file, and the runs
+   * are merged when the sorted lines are read
+   */
+  private class ExternalSorter {
+    private List<String> buffer = new ArrayList<String>();
+    private List<File> runs = new ArrayList<File>();
+
+    void add(String line) throws IOException {
+      this.buffer.add(line);
+      if (this.buffer.size() >= runSize) {
+        this.spill();
+      }
+    }
+
+    private void spill() throws IOException {
+      Collections.sort(this.buffer);
+      File run = temporaryFile();
+      try (Writer writer = new BufferedWriter(new FileWriter(run), 1 << 16)) {
+        for (String line : this.buffer) {
+          writer.write(line);
+          writer.write('\n');
+        }
+      }
+      this.runs.add(run);
+      this.buffer.clear();
+    }
+
+    SortedLines sorted() throws IOException {
+      // everything fit in memory, no need to touch the disk
+      if (this.runs.isEmpty()) {
+        Collections.sort(this.buffer);
+        List<String> lines = this.buffer;
+        this.buffer = new ArrayList<String>();
+        return new SortedLines() {
+          private int next;
+
+          @Override
+          protected String read() {
+            return this.next < lines.size() ? lines.get(this.next++) : null;
+          }
+
+          @Override
+          public void close() {}
+        };
+      }
+
+      if (!this.buffer.isEmpty()) {
+        this.spill();
+      }
+
+      // k-way merge of the runs
+      List<File> files = this.runs;
+      this.runs = new ArrayList<File>();
+      PriorityQueue<SortedLines> heads =
+          new PriorityQueue<SortedLines>(files.size(), (a, b) -> {
+            try {
+              return a.peek().compareTo(b.peek());
+            } catch (IOException e) {
+              throw new IllegalStateException(e);
+            }
+          });
+      List<SortedLines> open = new ArrayList<SortedLines>();
+      for (File file : files) {
+        SortedLines run = readLines(file);
+        open.add(run);
+        if (run.peek() != null) {
+          heads.add(run);
+        }
+      }
+
+      return new SortedLines() {
+        @Override
+        protected String read() throws IOException {
+          SortedLines head = heads.poll();
+          if (head == null) {
+            return null;
+          }
+          String line = head.next();
+          if (head.peek() != null) {
+            heads.add(head);
+          }
+          return line;
+        }
+
+        @Override
+        public void close() throws IOException {
+          for (SortedLines run : open) {
+            run.close();
+          }
+          for (File file : files) {
+            file.delete();
+          }
+        }
+      };
+    }
+  }
+
+}
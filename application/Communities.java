@@ -0,0 +1,320 @@
+package application;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Communities of a graph found by label propagation.
+ *
+ * Every person starts with a label of their own. In each sweep every person
+ * takes the label most of their friends have, keeping their own when it is
+ * among the most common and otherwise breaking ties by a hash of the label
+ * that changes every sweep. Densely connected groups end up agreeing on one
+ * label, which is their community.
+ *
+ * The graph is copied into compressed adjacency arrays over int IDs. Sweeps
+ * are asynchronous: people are visited in a shuffled order split over a
+ * fork-join pool, and every update reads the labels as they are at that
+ * moment, including ones other tasks just wrote. Labels live in an
+ * AtomicIntegerArray and a person's label is only ever written by the task
+ * updating that person, so no locks are needed. Sweeping stops once almost
+ * nobody changes label or after the sweep limit.
+ *
+ * @author samsoncain
+ */
+public class Communities {
+
+  /**
+   * People per task
+   */
+  private static final int CHUNK = 1 << 12;
+
+  /**
+   * Most sweeps
+   */
+  private static final int MAX_SWEEPS = 30;
+
+  /**
+   * Changed labels per person below which sweeping stops
+   */
+  private static final double TOLERANCE = 1e-4;
+
+  /**
+   * ID of every person
+   */
+  private Map<Person, Integer> ids;
+
+  /**
+   * Community of every ID
+   */
+  private int[] communities;
+
+  /**
+   * Number of people in every community
+   */
+  private int[] sizes;
+
+  /**
+   * Sweeps taken
+   */
+  private int sweeps;
+
+  /**
+   * Detects the communities of a graph
+   *
+   * @param graph graph to detect communities in, must not change while this
+   *              runs
+   * @param pool  pool to run in
+   */
+  public Communities(GraphADT graph, ForkJoinPool pool) {
+    Person[] persons = graph.getAllNodes().toArray(new Person[0]);
+    int order = persons.length;
+    this.ids = new HashMap<Person, Integer>(order * 2);
+    for (int id = 0; id < order; id++) {
+      this.ids.put(persons[id], id);
+    }
+
+    // friendships without self-friendships
+    int[] offsets = new int[order + 1];
+    int[] targets = new int[Math.max(16, order)];
+    for (int id = 0; id < order; id++) {
+      int position = offsets[id];
+      for (Person friend : graph.getNeighbors(persons[id])) {
+        int friendId = this.ids.get(friend);
+        if (friendId == id) {
+          continue;
+        }
+        if (position == targets.length) {
+          targets = Arrays.copyOf(targets, position * 2);
+        }
+        targets[position++] = friendId;
+      }
+      offsets[id + 1] = position;
+    }
+
+    AtomicIntegerArray labels = new AtomicIntegerArray(order);
+    int[] visits = new int[order];
+    for (int id = 0; id < order; id++) {
+      labels.set(id, id);
+      visits[id] = id;
+    }
+    // a fixed shuffle, so labels do not simply flow in ID order
+    Random random = new Random(order);
+    for (int i = order - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int swap = visits[i];
+      visits[i] = visits[j];
+      visits[j] = swap;
+    }
+
+    // leaf tasks borrow idle count arrays, so there are at most as many as
+    // leaves running at once and all of them are dropped on return
+    ConcurrentLinkedQueue<LabelCounts> counts = new ConcurrentLinkedQueue<LabelCounts>();
+    while (this.sweeps < MAX_SWEEPS) {
+      this.sweeps++;
+      int changed = pool.invoke(
+          new SweepTask(offsets, targets, labels, visits, counts, this.sweeps, 0, order));
+      if (changed <= order * TOLERANCE) {
+        break;
+      }
+    }
+
+    // number the surviving labels densely
+    this.communities = new int[order];
+    int[] numbers = new int[order];
+    Arrays.fill(numbers, -1);
+    int count = 0;
+    for (int id = 0; id < order; id++) {
+      int label = labels.get(id);
+      if (numbers[label] < 0) {
+        numbers[label] = count++;
+      }
+      this.communities[id] = numbers[label];
+    }
+    this.sizes = new int[count];
+    for (int id = 0; id < order; id++) {
+      this.sizes[this.communities[id]]++;
+    }
+  }
+
+  /**
+   * Returns the community of a person. Two people are in the same community
+   * exactly when their communities are equal.
+   *
+   * @param person the person
+   *
+   * @return int community between 0 and getCommunityCount() - 1, or -1 if the
+   *         person was not in the graph
+   */
+  public int getCommunityOf(Person person) {
+    Integer id = this.ids.get(person);
+    return id == null ? -1 : this.communities[id];
+  }
+
+  /**
+   * Returns the number of communities
+   *
+   * @return int number of communities
+   */
+  public int getCommunityCount() {
+    return this.sizes.length;
+  }
+
+  /**
+   * Returns the number of people in every community
+   *
+   * @return int[] size of every community, indexed by community
+   */
+  public int[] getCommunitySizes() {
+    return this.sizes.clone();
+  }
+
+  /**
+   * Returns the number of sweeps the detection took
+   *
+   * @return int number of sweeps
+   */
+  public int getSweeps() {
+    return this.sweeps;
+  }
+
+  /**
+   * Tally of the labels around one person, reused for every person of the leaf
+   * tasks that borrow it. Only the labels a tally touched are reset afterwards.
+   */
+  private static class LabelCounts {
+    private int[] counts;
+    private int[] touched;
+    private int touchedCount;
+
+    LabelCounts(int order) {
+      this.counts = new int[order];
+      this.touched = new int[16];
+    }
+
+    /**
+     * Picks the new label of a person
+     *
+     * @param offsets start of every person's friends in targets
+     * @param targets friend IDs
+     * @param labels  current labels
+     * @param id      the person
+     * @param sweep   number of the sweep, varies the tie breaking
+     *
+     * @return int most common label among the person's friends
+     */
+    int choose(int[] offsets, int[] targets, AtomicIntegerArray labels, int id, int sweep) {
+      for (int e = offsets[id]; e < offsets[id + 1]; e++) {
+        int label = labels.get(targets[e]);
+        if (this.counts[label] == 0) {
+          if (this.touchedCount == this.touched.length) {
+            this.touched = Arrays.copyOf(this.touched, this.touchedCount * 2);
+          }
+          this.touched[this.touchedCount++] = label;
+        }
+        this.counts[label]++;
+      }
+
+      // the own label wins every tie it is part of
+      int own = labels.get(id);
+      int best = own;
+      int bestCount = this.counts[own];
+      int bestRank = rank(own, sweep);
+      for (int i = 0; i < this.touchedCount; i++) {
+        int label = this.touched[i];
+        int count = this.counts[label];
+        if (count > bestCount
+            || (count == bestCount && best != own && rank(label, sweep) < bestRank)) {
+          best = label;
+          bestCount = count;
+          bestRank = rank(label, sweep);
+        }
+        this.counts[label] = 0;
+      }
+      this.touchedCount = 0;
+      return best;
+    }
+
+    /**
+     * Hashes a label for tie breaking, so ties do not always go to the same
+     * labels
+     *
+     * @param label the label
+     * @param sweep number of the sweep
+     *
+     * @return int rank, lower wins
+     */
+    private static int rank(int label, int sweep) {
+      int hash = (label + sweep * 0x61c88647) * 0x9e3779b9;
+      return hash ^ (hash >>> 16);
+    }
+  }
+
+  /**
+   * Updates the labels of a range of the shuffled people, returning how many
+   * changed
+   */
+  private static class SweepTask extends RecursiveTask<Integer> {
+    private static final long serialVersionUID = 1L;
+
+    private int[] offsets;
+    private int[] targets;
+    private AtomicIntegerArray labels;
+    private int[] visits;
+    private ConcurrentLinkedQueue<LabelCounts> counts;
+    private int sweep;
+    private int from;
+    private int to;
+
+    SweepTask(int[] offsets, int[] targets, AtomicIntegerArray labels, int[] visits,
+        ConcurrentLinkedQueue<LabelCounts> counts, int sweep, int from, int to) {
+      this.offsets = offsets;
+      this.targets = targets;
+      this.labels = labels;
+      this.visits = visits;
+      this.counts = counts;
+      this.sweep = sweep;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected Integer compute() {
+      if (this.to - this.from > CHUNK) {
+        int middle = (this.from + this.to) >>> 1;
+        SweepTask left = new SweepTask(this.offsets, this.targets, this.labels, this.visits,
+            this.counts, this.sweep, this.from, middle);
+        left.fork();
+        int right = new SweepTask(this.offsets, this.targets, this.labels, this.visits,
+            this.counts, this.sweep, middle, this.to).compute();
+        return left.join() + right;
+      }
+
+      LabelCounts tally = this.counts.poll();
+      if (tally == null) {
+        tally = new LabelCounts(this.labels.length());
+      }
+      int changed = 0;
+      try {
+        for (int i = this.from; i < this.to; i++) {
+          int id = this.visits[i];
+          int label = tally.choose(this.offsets, this.targets, this.labels, id, this.sweep);
+          if (label != this.labels.get(id)) {
+            this.labels.set(id, label);
+            changed++;
+          }
+        }
+      } finally {
+        this.counts.offer(tally);
+      }
+      return changed;
+    }
+  }
+
+}
@@ -0,0 +1,728 @@
+package application;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+
+/**
+ * Read-optimized GraphADT implementation that stores friendships as
+ * compressed sparse row (CSR) arrays over dense int IDs.
+ *
+ * Every username is interned to an int ID. Friends of the person with ID i are
+ * targets[offsets[i]] up to (but not including) targets[offsets[i + 1]], sorted
+ * so membership checks can binary search. Mutations do not touch the CSR arrays,
+ * they go to a small delta overlay (added friendships and removed friendships)
+ * that is compacted into new CSR arrays once it grows past a threshold.
+ *
+ * @author samsoncain
+ */
+public class CompressedGraph implements GraphADT {
+
+  /**
+   * Default minimum number of delta entries before the overlay is compacted
+   */
+  private static final int DEFAULT_COMPACTION_THRESHOLD = 1 << 16;
+
+  /**
+   * Username to int ID of every person in the graph
+   */
+  private Map<String, Integer> ids;
+
+  /**
+   * Person object for every ID, null if the person was removed
+   */
+  private Person[] persons;
+
+  /**
+   * Number of IDs handed out since the last compaction
+   */
+  private int idCount;
+
+  /**
+   * Number of IDs covered by the CSR arrays
+   */
+  private int csrCount;
+
+  /**
+   * CSR row offsets, length csrCount + 1
+   */
+  private int[] offsets;
+
+  /**
+   * CSR friend IDs, every row sorted ascending
+   */
+  private int[] targets;
+
+  /**
+   * Delta overlay: friends added since the last compaction to every ID, null
+   * for rows without additions, same length as persons
+   */
+  private IntHashSet[] added;
+
+  /**
+   * Delta overlay: friends still in the CSR row of every ID that were removed
+   * since the last compaction, null for rows without removals, length csrCount
+   */
+  private IntHashSet[] removed;
+
+  /**
+   * Minimum number of delta entries before the overlay is compacted
+   */
+  private int compactionThreshold;
+
+  /**
+   * Number of delta entries (directed friendships in added and removed)
+   */
+  private int deltaSize;
+
+  /**
+   * Number of live people
+   */
+  private int nodeCount;
+
+  /**
+   * Number of friends of every ID
+   */
+  private int[] degrees;
+
+  /**
+   * Number of directed friendships (sum of all degrees)
+   */
+  private int directedEdges;
+
+  /**
+   * Number of undirected friendships
+   */
+  private int edgeCount;
+
+  /**
+   * Default no-argument constructor
+   */
+  public CompressedGraph() {
+    this(DEFAULT_COMPACTION_THRESHOLD);
+  }
+
+  /**
+   * Constructor with a custom compaction threshold
+   *
+   * @param compactionThreshold minimum number of delta entries before the
+   *                            overlay is compacted into the CSR arrays
+   */
+  public CompressedGraph(int compactionThreshold) {
+    this.ids = new HashMap<String, Integer>();
+    this.persons = new Person[16];
+    this.degrees = new int[16];
+    this.offsets = new int[1];
+    this.targets = new int[0];
+    this.added = new IntHashSet[16];
+    this.removed = new IntHashSet[0];
+    this.compactionThreshold = compactionThreshold;
+  }
+
+  /**
+   * Add new person to the graph.
+   *
+   * @param person person to add to graph
+   *
+   * @return true if node was added, false if not
+   */
+  @Override
+  public boolean addNode(Person person) {
+    // check if person is null or if their username already exists
+    if (person == null || this.ids.containsKey(person.getUsername())) {
+      return false;
+    }
+
+    // hand out the next dense ID
+    if (this.idCount == this.persons.length) {
+      this.persons = Arrays.copyOf(this.persons, this.persons.length * 2);
+      this.degrees = Arrays.copyOf(this.degrees, this.persons.length);
+      this.added = Arrays.copyOf(this.added, this.persons.length);
+    }
+    this.persons[this.idCount] = person;
+    this.ids.put(person.getUsername(), this.idCount);
+    this.idCount++;
+    this.nodeCount++;
+
+    return true;
+  }
+
+  /**
+   * Remove a person and all associated friendships from the graph.
+   *
+   * @param person person to remove from graph
+   *
+   * @return true if node was removed, false if not
+   */
+  @Override
+  public boolean removeNode(Person person) {
+    int id = this.idOf(person);
+    if (id < 0) {
+      return false;
+    }
+
+    // unlink every friendship through the delta overlay
+    for (int friend : this.neighborIds(id)) {
+      this.unlink(id, friend);
+    }
+
+    this.persons[id] = null;
+    this.ids.remove(person.getUsername());
+    this.nodeCount--;
+
+    this.compactIfNeeded();
+    return true;
+  }
+
+  /**
+   * Remove a batch of people and all associated friendships from the graph.
+   *
+   * @param persons people to remove from graph
+   *
+   * @return int the number of people that were removed
+   */
+  @Override
+  public int removeNodes(Collection<Person> persons) {
+    int count = 0;
+    for (Person person : persons) {
+      if (this.removeNode(person)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Add an edge (friendship) from person1 to person2 to this graph.
+   *
+   * @param person1 person to add friendship from
+   * @param person2 person to add friendship to
+   *
+   * @return true if edge was added or already existed, false if a person does
+   *         not exist
+   */
+  @Override
+  public boolean addEdge(Person person1, Person person2) {
+    int id1 = this.idOf(person1);
+    int id2 = this.idOf(person2);
+    if (id1 < 0 || id2 < 0) {
+      return false;
+    }
+
+    if (!this.hasEdge(id1, id2)) {
+      this.link(id1, id2);
+      this.compactIfNeeded();
+    }
+    return true;
+  }
+
+  /**
+   * Remove the friendship from person1 to person2 from this graph.
+   *
+   * @param person1 person to remove friendship from
+   * @param person2 person to remove friendship of
+   *
+   * @return true if edge was removed or did not exist, false if a person does
+   *         not exist
+   */
+  @Override
+  public boolean removeEdge(Person person1, Person person2) {
+    int id1 = this.idOf(person1);
+    int id2 = this.idOf(person2);
+    if (id1 < 0 || id2 < 0) {
+      return false;
+    }
+
+    if (this.hasEdge(id1, id2)) {
+      this.unlink(id1, id2);
+      this.compactIfNeeded();
+    }
+    return true;
+  }
+
+  /**
+   * Returns a read-only view of the friends of a given user that walks the CSR
+   * row, skipping removed friends, and then the added ones. The view follows
+   * later changes, but the graph must not change while it is iterated.
+   *
+   * @param person person to return friends for
+   *
+   * @return Set<Person> neighbors of person
+   */
+  @Override
+  public Set<Person> getNeighbors(Person person) {
+    if (this.idOf(person) < 0) {
+      return null;
+    }
+
+    return new AbstractSet<Person>() {
+      @Override
+      public Iterator<Person> iterator() {
+        // looked up again on every use, compaction renumbers IDs
+        int id = idOf(person);
+        boolean inCsr = id >= 0 && id < csrCount;
+        int end = inCsr ? offsets[id + 1] : 0;
+        IntHashSet gone = inCsr ? removed[id] : null;
+        IntHashSet delta = id < 0 ? null : added[id];
+        PrimitiveIterator.OfInt rest = delta == null ? null : delta.iterator();
+
+        return new Iterator<Person>() {
+          private int next = advance(inCsr ? offsets[id] : 0);
+
+          private int advance(int from) {
+            while (from < end && gone != null && gone.contains(targets[from])) {
+              from++;
+            }
+            return from;
+          }
+
+          @Override
+          public boolean hasNext() {
+            return this.next < end || (rest != null && rest.hasNext());
+          }
+
+          @Override
+          public Person next() {
+            if (this.next < end) {
+              Person friend = persons[targets[this.next]];
+              this.next = this.advance(this.next + 1);
+              return friend;
+            }
+            if (rest == null) {
+              throw new NoSuchElementException();
+            }
+            return persons[rest.nextInt()];
+          }
+        };
+      }
+
+      @Override
+      public boolean contains(Object o) {
+        int id = idOf(person);
+        int friend = o instanceof Person ? idOf((Person) o) : -1;
+        return id >= 0 && friend >= 0 && hasEdge(id, friend);
+      }
+
+      @Override
+      public int size() {
+        int id = idOf(person);
+        return id < 0 ? 0 : degrees[id];
+      }
+    };
+  }
+
+  /**
+   * Returns the number of friends of a given user in O(1)
+   *
+   * @param person person to return degree for
+   *
+   * @return int number of friends, or -1 if person does not exist
+   */
+  @Override
+  public int degree(Person person) {
+    int id = this.idOf(person);
+    return id < 0 ? -1 : this.degrees[id];
+  }
+
+  /**
+   * Returns the friends two people have in common by intersecting their sorted
+   * friend IDs, see SortedIntersection
+   *
+   * @param person1 first person
+   * @param person2 second person
+   *
+   * @return Set<Person> of mutual friends, in ID order
+   */
+  @Override
+  public Set<Person> getMutualNeighbors(Person person1, Person person2) {
+    int id1 = this.idOf(person1);
+    int id2 = this.idOf(person2);
+    if (id1 < 0 || id2 < 0) {
+      return new LinkedHashSet<Person>();
+    }
+
+    int[] mutual = new int[Math.min(this.degrees[id1], this.degrees[id2])];
+    int count = this.intersectNeighbors(id1, id2, mutual);
+    Set<Person> result = new LinkedHashSet<Person>(count * 2);
+    for (int i = 0; i < count; i++) {
+      result.add(this.persons[mutual[i]]);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the number of friends two people have in common. Allocates nothing
+   * unless one of them has friendships changed since the last compaction.
+   *
+   * @param person1 first person
+   * @param person2 second person
+   *
+   * @return int number of mutual friends
+   */
+  @Override
+  public int countMutualNeighbors(Person person1, Person person2) {
+    int id1 = this.idOf(person1);
+    int id2 = this.idOf(person2);
+    if (id1 < 0 || id2 < 0) {
+      return 0;
+    }
+    return this.intersectNeighbors(id1, id2, null);
+  }
+
+  /**
+   * Returns the Person object for a specified node
+   *
+   * @param user the username of the node to get
+   *
+   * @return Person the person object of the node
+   */
+  @Override
+  public Person getNode(String user) {
+    Integer id = this.ids.get(user);
+    return id == null ? null : this.persons[id];
+  }
+
+  /**
+   * Returns a read-only Set view of all the nodes in graph
+   *
+   * @return Set<Person> set of nodes
+   */
+  @Override
+  public Set<Person> getAllNodes() {
+    return new AbstractSet<Person>() {
+      @Override
+      public Iterator<Person> iterator() {
+        return new Iterator<Person>() {
+          private int next = advance(0);
+
+          private int advance(int from) {
+            while (from < idCount && persons[from] == null) {
+              from++;
+            }
+            return from;
+          }
+
+          @Override
+          public boolean hasNext() {
+            return this.next < idCount;
+          }
+
+          @Override
+          public Person next() {
+            if (!this.hasNext()) {
+              throw new NoSuchElementException();
+            }
+            Person person = persons[this.next];
+            this.next = this.advance(this.next + 1);
+            return person;
+          }
+        };
+      }
+
+      @Override
+      public boolean contains(Object o) {
+        return o instanceof Person && idOf((Person) o) >= 0;
+      }
+
+      @Override
+      public int size() {
+        return nodeCount;
+      }
+    };
+  }
+
+  /**
+   * Returns the number of edges in this graph. Every undirected friendship is
+   * counted once.
+   *
+   * @return int the number of edges
+   */
+  @Override
+  public int size() {
+    return this.edgeCount;
+  }
+
+  /**
+   * Returns the number of nodes in this graph.
+   *
+   * @return int the number of nodes
+   */
+  @Override
+  public int order() {
+    return this.nodeCount;
+  }
+
+  /**
+   * Merges the delta overlay into new CSR arrays. IDs are renumbered densely,
+   * dropping the IDs of removed people.
+   */
+  public void compact() {
+    // new dense ID for every live person
+    int[] remap = new int[this.idCount];
+    Person[] live = new Person[Math.max(16, this.nodeCount)];
+    int[] liveDegrees = new int[live.length];
+    int liveCount = 0;
+    for (int id = 0; id < this.idCount; id++) {
+      if (this.persons[id] == null) {
+        remap[id] = -1;
+      } else {
+        remap[id] = liveCount;
+        liveDegrees[liveCount] = this.degrees[id];
+        live[liveCount++] = this.persons[id];
+      }
+    }
+
+    // lay out the new rows
+    int[] newOffsets = new int[liveCount + 1];
+    int[] newTargets = new int[this.directedEdges];
+    int position = 0;
+    for (int id = 0; id < this.idCount; id++) {
+      if (remap[id] < 0) {
+        continue;
+      }
+      int rowStart = position;
+      for (int friend : this.neighborIds(id)) {
+        newTargets[position++] = remap[friend];
+      }
+      Arrays.sort(newTargets, rowStart, position);
+      newOffsets[remap[id] + 1] = position;
+    }
+
+    // swap in the new arrays and reset the overlay
+    this.persons = live;
+    this.degrees = liveDegrees;
+    this.idCount = liveCount;
+    this.csrCount = liveCount;
+    this.offsets = newOffsets;
+    this.targets = newTargets;
+    this.added = new IntHashSet[live.length];
+    this.removed = new IntHashSet[liveCount];
+    this.deltaSize = 0;
+
+    this.ids.clear();
+    for (int id = 0; id < liveCount; id++) {
+      this.ids.put(live[id].getUsername(), id);
+    }
+  }
+
+  /**
+   * Compacts the overlay once it is larger than both the threshold and a
+   * quarter of the CSR arrays, so compaction cost stays amortized O(1) per
+   * mutation
+   */
+  private void compactIfNeeded() {
+    if (this.deltaSize > this.compactionThreshold && this.deltaSize > this.targets.length / 4) {
+      this.compact();
+    }
+  }
+
+  /**
+   * Returns the ID of a person, or -1 if they are not in the graph
+   *
+   * @param person person to look up
+   *
+   * @return int ID of the person
+   */
+  private int idOf(Person person) {
+    if (person == null) {
+      return -1;
+    }
+    Integer id = this.ids.get(person.getUsername());
+    return id != null && this.persons[id] == person ? id : -1;
+  }
+
+  /**
+   * Checks whether the directed friendship id1 -> id2 exists
+   *
+   * @param id1 ID of first person
+   * @param id2 ID of second person
+   *
+   * @return true if id2 is a friend of id1
+   */
+  private boolean hasEdge(int id1, int id2) {
+    IntHashSet delta = this.added[id1];
+    if (delta != null && delta.contains(id2)) {
+      return true;
+    }
+    return this.csrContains(id1, id2) && !this.isRemoved(id1, id2);
+  }
+
+  /**
+   * Checks whether the directed friendship id1 -> id2 was removed from the CSR
+   * row of id1 since the last compaction
+   *
+   * @param id1 ID of first person
+   * @param id2 ID of second person
+   *
+   * @return true if the overlay removes id2 from the row of id1
+   */
+  private boolean isRemoved(int id1, int id2) {
+    return id1 < this.csrCount && this.removed[id1] != null && this.removed[id1].contains(id2);
+  }
+
+  /**
+   * Checks whether the CSR arrays hold the directed friendship id1 -> id2
+   *
+   * @param id1 ID of first person
+   * @param id2 ID of second person
+   *
+   * @return true if the CSR row of id1 contains id2
+   */
+  private boolean csrContains(int id1, int id2) {
+    if (id1 >= this.csrCount) {
+      return false;
+    }
+    return Arrays.binarySearch(this.targets, this.offsets[id1], this.offsets[id1 + 1], id2) >= 0;
+  }
+
+  /**
+   * Records the undirected friendship id1 - id2 in the overlay
+   *
+   * @param id1 ID of first person
+   * @param id2 ID of second person
+   */
+  private void link(int id1, int id2) {
+    this.linkDirected(id1, id2);
+    if (id1 != id2) {
+      this.linkDirected(id2, id1);
+    }
+    this.edgeCount++;
+  }
+
+  /**
+   * Records the directed friendship id1 -> id2 in the overlay
+   *
+   * @param id1 ID of first person
+   * @param id2 ID of second person
+   */
+  private void linkDirected(int id1, int id2) {
+    // re-adding a friendship that is still in the CSR arrays just cancels its removal
+    if (this.isRemoved(id1, id2)) {
+      this.removed[id1].remove(id2);
+      this.deltaSize--;
+    } else {
+      if (this.added[id1] == null) {
+        this.added[id1] = new IntHashSet();
+      }
+      this.added[id1].add(id2);
+      this.deltaSize++;
+    }
+    this.degrees[id1]++;
+    this.directedEdges++;
+  }
+
+  /**
+   * Removes the undirected friendship id1 - id2 through the overlay
+   *
+   * @param id1 ID of first person
+   * @param id2 ID of second person
+   */
+  private void unlink(int id1, int id2) {
+    this.unlinkDirected(id1, id2);
+    if (id1 != id2) {
+      this.unlinkDirected(id2, id1);
+    }
+    this.edgeCount--;
+  }
+
+  /**
+   * Removes the directed friendship id1 -> id2 through the overlay
+   *
+   * @param id1 ID of first person
+   * @param id2 ID of second person
+   */
+  private void unlinkDirected(int id1, int id2) {
+    IntHashSet delta = this.added[id1];
+    if (delta != null && delta.remove(id2)) {
+      if (delta.size() == 0) {
+        this.added[id1] = null;
+      }
+      this.deltaSize--;
+    } else {
+      if (this.removed[id1] == null) {
+        this.removed[id1] = new IntHashSet();
+      }
+      this.removed[id1].add(id2);
+      this.deltaSize++;
+    }
+    this.degrees[id1]--;
+    this.directedEdges--;
+  }
+
+  /**
+   * Returns the IDs of every friend of id in a new array, so the overlay can be
+   * changed while the result is iterated
+   *
+   * @param id ID of the person
+   *
+   * @return int[] of friend IDs
+   */
+  private int[] neighborIds(int id) {
+    IntHashSet delta = this.added[id];
+    int rowLength = id < this.csrCount ? this.offsets[id + 1] - this.offsets[id] : 0;
+    int[] friends = new int[rowLength + (delta == null ? 0 : delta.size())];
+
+    IntHashSet gone = rowLength == 0 ? null : this.removed[id];
+    int count = 0;
+    for (int i = 0; i < rowLength; i++) {
+      int friend = this.targets[this.offsets[id] + i];
+      if (gone == null || !gone.contains(friend)) {
+        friends[count++] = friend;
+      }
+    }
+    if (delta != null) {
+      PrimitiveIterator.OfInt extra = delta.iterator();
+      while (extra.hasNext()) {
+        friends[count++] = extra.nextInt();
+      }
+    }
+
+    return count == friends.length ? friends : Arrays.copyOf(friends, count);
+  }
+
+  /**
+   * Intersects the friend IDs of two people, straight on the CSR rows when
+   * neither row has overlay changes, else on sorted copies
+   *
+   * @param id1 ID of first person
+   * @param id2 ID of second person
+   * @param out array of at least the smaller degree to write the mutual IDs
+   *            to, or null to only count
+   *
+   * @return int number of mutual friends
+   */
+  private int intersectNeighbors(int id1, int id2, int[] out) {
+    if (this.isCompact(id1) && this.isCompact(id2)) {
+      return SortedIntersection.intersect(this.targets, this.offsets[id1], this.offsets[id1 + 1],
+          this.targets, this.offsets[id2], this.offsets[id2 + 1], out);
+    }
+
+    int[] friends1 = this.neighborIds(id1);
+    int[] friends2 = this.neighborIds(id2);
+    Arrays.sort(friends1);
+    Arrays.sort(friends2);
+    return SortedIntersection.intersect(friends1, 0, friends1.length, friends2, 0,
+        friends2.length, out);
+  }
+
+  /**
+   * Checks that the CSR row of a person holds exactly their friends. Removals
+   * lower the degree below the row length, additions go to the overlay.
+   *
+   * @param id ID of the person
+   *
+   * @return true if the row has no overlay changes
+   */
+  private boolean isCompact(int id) {
+    return id < this.csrCount && this.added[id] == null
+        && this.degrees[id] == this.offsets[id + 1] - this.offsets[id];
+  }
+
+}
@@ -0,0 +1,511 @@
+package application;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe SocialNetworkADT implementation that can be shared by many
+ * threads without an outside lock.
+ *
+ * Friend sets are copy-on-write snapshots. Readers never lock, they read the
+ * current snapshot from the friends map and can hold on to it for as long as
+ * they like since it is never changed. Writers build a new snapshot and
+ * publish it with one put into the friends map. A snapshot is a FriendRow,
+ * a sorted array of Person IDs, so a change copies one int array instead of a
+ * hash set of people.
+ *
+ * Writers are serialized per user by a fixed number of lock stripes chosen by
+ * username hash. Whenever more than one stripe is needed they are always
+ * locked in ascending stripe order, which rules out deadlock.
+ *
+ * @author samsoncain
+ */
+public class ConcurrentSocialNetwork implements SocialNetworkADT {
+
+  /**
+   * Default number of lock stripes
+   */
+  private static final int DEFAULT_STRIPES = 64;
+
+  /**
+   * Username to Person of every user
+   */
+  private ConcurrentHashMap<String, Person> users;
+
+  /**
+   * Current read-only friend set snapshot of every user, only replaced while
+   * holding the user's stripe
+   */
+  private ConcurrentHashMap<Person, FriendRow> friends;
+
+  /**
+   * People by ID, used by friend rows to turn IDs back into people. Only grown
+   * and filled under directoryLock, and every user is in it before they are
+   * published, so any row read from friends finds its IDs in the array it
+   * captured. Entries of removed users are kept because older rows may still
+   * hold their IDs, which keeps those people and their IDs alive for as long
+   * as the network is.
+   */
+  private volatile Person[] directory = new Person[0];
+
+  /**
+   * Lock held while growing or filling the directory
+   */
+  private ReentrantLock directoryLock = new ReentrantLock();
+
+  /**
+   * Lock stripes, users are assigned by username hash
+   */
+  private ReentrantLock[] stripes;
+
+  /**
+   * Path search state of each thread, reused between queries
+   */
+  private ThreadLocal<PathFinder> pathFinders = ThreadLocal.withInitial(
+      () -> new PathFinder(this, person -> this.friends.get(person)));
+
+  /**
+   * Default no-arg constructor
+   */
+  public ConcurrentSocialNetwork() {
+    this(DEFAULT_STRIPES);
+  }
+
+  /**
+   * Constructor with a custom number of lock stripes
+   *
+   * @param stripeCount number of lock stripes, rounded up to a power of two
+   */
+  public ConcurrentSocialNetwork(int stripeCount) {
+    int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+
+    this.users = new ConcurrentHashMap<String, Person>();
+    this.friends = new ConcurrentHashMap<Person, FriendRow>();
+    this.stripes = new ReentrantLock[size];
+    for (int i = 0; i < size; i++) {
+      this.stripes[i] = new ReentrantLock();
+    }
+  }
+
+  /**
+   * Add a user to the social network
+   *
+   * @param user the user to be added
+   *
+   * @return true if user was added, false if not
+   *
+   * @throws InvalidUsernameException if username is invalid
+   * @throws UserAlreadyExistsException if user already exists
+   */
+  @Override
+  public boolean addUser(String user) throws InvalidUsernameException, UserAlreadyExistsException {
+    if (!SocialNetwork.validateUsername(user)) {
+      throw new InvalidUsernameException("Username can only contain letters, digits, underscores, and apostrophes.");
+    }
+
+    ReentrantLock lock = this.stripes[this.stripeOf(user)];
+    lock.lock();
+    try {
+      // make sure user does not already exist
+      if (this.users.containsKey(user)) {
+        throw new UserAlreadyExistsException();
+      }
+
+      // publish the friend set before the user so anyone who finds the user finds it
+      Person person = Person.of(user);
+      this.friends.put(person, new FriendRow(this.register(person)));
+      this.users.put(user, person);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Remove a user from the social network
+   *
+   * Locks the user's stripe together with the stripes of all of their friends.
+   * The friend set can only change under the user's own stripe, so once all of
+   * those stripes are held it is stable. If a friend was added on a new stripe
+   * in between, the locks are released and taken again.
+   *
+   * @param user the user to be removed
+   *
+   * @return true if user was removed, false if not
+   * @throws UserNotFoundException if user does not exist
+   */
+  @Override
+  public boolean removeUser(String user) throws UserNotFoundException {
+    int own = this.stripeOf(user);
+
+    while (true) {
+      // collect the stripes of the user and their current friends
+      Set<Integer> needed = new TreeSet<Integer>();
+      needed.add(own);
+      for (Person friend : this.snapshotOf(user)) {
+        needed.add(this.stripeOf(friend.getUsername()));
+      }
+
+      this.lockAll(needed);
+      try {
+        Person person = this.users.get(user);
+        if (person == null) {
+          throw new UserNotFoundException("User " + "'" + user + "'" + " does not exist");
+        }
+
+        FriendRow personFriends = this.friends.get(person);
+        if (!this.coversFriends(needed, personFriends)) {
+          continue;
+        }
+
+        // unlink reverse edges, then the user
+        for (Person friend : personFriends) {
+          if (friend != person) {
+            this.publish(friend, person, false);
+          }
+        }
+        this.users.remove(user);
+        this.friends.remove(person);
+        return true;
+      } finally {
+        this.unlockAll(needed);
+      }
+    }
+  }
+
+  /**
+   * Add a friendship between user1 and user2
+   *
+   * If the friendship exists in the network,
+   * no friendship is added and no exception is thrown.
+   *
+   * @param user1 the first user
+   * @param user2 the second user
+   *
+   * @return true if the friendship was added, false if it already existed
+   *
+   * @throws UserNotFoundException if one of the users does not exist
+   */
+  @Override
+  public boolean addFriend(String user1, String user2) throws UserNotFoundException {
+    int stripe1 = this.stripeOf(user1);
+    int stripe2 = this.stripeOf(user2);
+
+    this.lockPair(stripe1, stripe2);
+    try {
+      Person person1 = this.existingUser(user1);
+      Person person2 = this.existingUser(user2);
+
+      boolean changed = this.publish(person1, person2, true);
+      this.publish(person2, person1, true);
+      return changed;
+    } finally {
+      this.unlockPair(stripe1, stripe2);
+    }
+  }
+
+  /**
+   * Remove a friendship between user1 and user2
+   *
+   * @param user1 the first user
+   * @param user2 the second user
+   *
+   * @return true if the friendship was removed, false if it did not exist
+   *
+   * @throws UserNotFoundException if a user does not exist
+   */
+  @Override
+  public boolean removeFriend(String user1, String user2) throws UserNotFoundException {
+    int stripe1 = this.stripeOf(user1);
+    int stripe2 = this.stripeOf(user2);
+
+    this.lockPair(stripe1, stripe2);
+    try {
+      Person person1 = this.existingUser(user1);
+      Person person2 = this.existingUser(user2);
+
+      boolean changed = this.publish(person1, person2, false);
+      this.publish(person2, person1, false);
+      return changed;
+    } finally {
+      this.unlockPair(stripe1, stripe2);
+    }
+  }
+
+  /**
+   * Returns a read-only, weakly consistent Set of all the users in network
+   *
+   * @return a Set<Person> which contains all the users in the network
+   */
+  @Override
+  public Set<Person> getAllUsers() {
+    return Collections.unmodifiableSet(this.friends.keySet());
+  }
+
+  /**
+   * Returns the Person object for a specified username
+   *
+   * @param name the username to look up
+   *
+   * @return Person object of the user, or null if user does not exist
+   */
+  @Override
+  public Person getPersonByName(String name) {
+    return name == null ? null : this.users.get(name);
+  }
+
+  /**
+   * Get all the friends of a user
+   *
+   * @param user the specified user
+   *
+   * @return a List<Person> of all the friends of the specified person
+   *
+   * @throws UserNotFoundException if user does not exist
+   */
+  @Override
+  public List<Person> getFriendsOf(String user) throws UserNotFoundException {
+    return new LinkedList<Person>(this.snapshotOf(user));
+  }
+
+  /**
+   * Get the current friend snapshot of a user without locking or copying
+   *
+   * @param user the specified user
+   *
+   * @return a read-only Set<Person> of all the friends of the specified person
+   *
+   * @throws UserNotFoundException if user does not exist
+   */
+  @Override
+  public Set<Person> getFriendsView(String user) throws UserNotFoundException {
+    return this.snapshotOf(user);
+  }
+
+  /**
+   * Get all of the mutual friends between two users
+   *
+   * Reads both users' snapshots without locking, so a friendship changed
+   * between the two reads may or may not be reflected. The two sorted rows are
+   * merged, the result is in ID order.
+   *
+   * @param user1 the first user
+   * @param user2 the second user
+   *
+   * @return Set<Person> set of the mutual friends between to two users
+   *
+   * @throws UserNotFoundException if a user does not exist
+   */
+  @Override
+  public Set<Person> getMutualFriends(String user1, String user2) throws UserNotFoundException {
+    return this.snapshotOf(user1).intersect(this.snapshotOf(user2));
+  }
+
+  /**
+   * Get a shortest chain of friendships connecting two users
+   *
+   * Searches lock-free over friend snapshots with the calling thread's
+   * PathFinder, so friendships changed during the search may or may not be
+   * reflected.
+   *
+   * @param user1 the first user
+   * @param user2 the second user
+   *
+   * @return List<Person> of the people on the path from user1 to user2, both
+   *         included, or an empty list if they are not connected
+   *
+   * @throws UserNotFoundException if a user does not exist
+   */
+  @Override
+  public List<Person> getShortestPath(String user1, String user2) throws UserNotFoundException {
+    return this.pathFinders.get().getShortestPath(user1, user2);
+  }
+
+  /**
+   * Loads a file and constructs a social network from the file
+   *
+   * @param file the file to load from
+   */
+  @Override
+  public void loadNetworkFromFile(File file) {
+    SocialNetwork.loadNetworkFromFile(file, this);
+  }
+
+  /**
+   * Saves a social network to a file
+   *
+   * @param file the file to save to
+   */
+  @Override
+  public void saveNetworkToFile(File file, Queue<String> commandList) {
+    SocialNetwork.saveCommandsToFile(file, commandList);
+  }
+
+  /**
+   * Returns the Person for a username, must be called with the user's stripe held
+   *
+   * @param user the username to look up
+   *
+   * @return Person of the user
+   *
+   * @throws UserNotFoundException if user does not exist
+   */
+  private Person existingUser(String user) throws UserNotFoundException {
+    Person person = user == null ? null : this.users.get(user);
+    if (person == null) {
+      throw new UserNotFoundException("User " + "'" + user + "'" + " does not exist");
+    }
+    return person;
+  }
+
+  /**
+   * Returns the current friend snapshot of a user without locking
+   *
+   * @param user the username to look up
+   *
+   * @return read-only FriendRow of the user's friends
+   *
+   * @throws UserNotFoundException if user does not exist
+   */
+  private FriendRow snapshotOf(String user) throws UserNotFoundException {
+    Person person = user == null ? null : this.users.get(user);
+    FriendRow snapshot = person == null ? null : this.friends.get(person);
+
+    // the user may have been removed between the two lookups
+    if (snapshot == null) {
+      throw new UserNotFoundException("User " + "'" + user + "'" + " does not exist");
+    }
+    return snapshot;
+  }
+
+  /**
+   * Publishes a new friend snapshot of person with friend added or removed,
+   * must be called with person's stripe locked
+   *
+   * @param person person whose friends change
+   * @param friend friend to add or remove
+   * @param add    true to add friend, false to remove
+   *
+   * @return true if a new snapshot was published, false if friend already was
+   *         or was not in it
+   */
+  private boolean publish(Person person, Person friend, boolean add) {
+    FriendRow current = this.friends.get(person);
+    FriendRow next = add ? current.with(friend, this.directory) : current.without(friend);
+    if (next == current) {
+      return false;
+    }
+    this.friends.put(person, next);
+    return true;
+  }
+
+  /**
+   * Puts a person into the directory, growing it if needed
+   *
+   * @param person person to add
+   *
+   * @return Person[] directory that holds person
+   */
+  private Person[] register(Person person) {
+    int id = person.getId();
+    this.directoryLock.lock();
+    try {
+      Person[] current = this.directory;
+      if (id >= current.length) {
+        current = Arrays.copyOf(current, Math.max(id + 1, current.length * 2));
+      }
+      current[id] = person;
+      this.directory = current;
+      return current;
+    } finally {
+      this.directoryLock.unlock();
+    }
+  }
+
+  /**
+   * Returns the lock stripe of a username
+   *
+   * @param user the username
+   *
+   * @return int index into stripes
+   */
+  private int stripeOf(String user) {
+    int hash = user == null ? 0 : user.hashCode();
+    // spread the high bits so similar usernames land on different stripes
+    return (hash ^ (hash >>> 16)) & (this.stripes.length - 1);
+  }
+
+  /**
+   * Locks two stripes in ascending order, once if they are the same
+   *
+   * @param stripe1 first stripe
+   * @param stripe2 second stripe
+   */
+  private void lockPair(int stripe1, int stripe2) {
+    this.stripes[Math.min(stripe1, stripe2)].lock();
+    if (stripe1 != stripe2) {
+      this.stripes[Math.max(stripe1, stripe2)].lock();
+    }
+  }
+
+  /**
+   * Releases two stripes locked by lockPair
+   *
+   * @param stripe1 first stripe
+   * @param stripe2 second stripe
+   */
+  private void unlockPair(int stripe1, int stripe2) {
+    if (stripe1 != stripe2) {
+      this.stripes[Math.max(stripe1, stripe2)].unlock();
+    }
+    this.stripes[Math.min(stripe1, stripe2)].unlock();
+  }
+
+  /**
+   * Locks a sorted set of stripes in ascending order
+   *
+   * @param needed stripes to lock, iterated in ascending order
+   */
+  private void lockAll(Set<Integer> needed) {
+    for (int stripe : needed) {
+      this.stripes[stripe].lock();
+    }
+  }
+
+  /**
+   * Releases the stripes locked by lockAll
+   *
+   * @param needed stripes to unlock
+   */
+  private void unlockAll(Set<Integer> needed) {
+    for (int stripe : needed) {
+      this.stripes[stripe].unlock();
+    }
+  }
+
+  /**
+   * Checks that every friend's stripe is in the locked set
+   *
+   * @param locked stripes that are held
+   * @param personFriends friends to check
+   *
+   * @return true if all friends are covered
+   */
+  private boolean coversFriends(Set<Integer> locked, FriendRow personFriends) {
+    for (Person friend : personFriends) {
+      if (!locked.contains(this.stripeOf(friend.getUsername()))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+}
@@ -0,0 +1,456 @@
+package application;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Connected components of a graph, kept up to date as the graph changes.
+ *
+ * Every person gets an int ID and components are the sets of a union-find
+ * forest over those IDs. The forest lives in an AtomicIntegerArray and all
+ * changes to it are compare-and-set, so the first computation can union the
+ * edges of the whole graph from all cores at once without locks.
+ *
+ * After that the graph reports every change:
+ *
+ *   - a new person is a new set
+ *   - a new friendship unions two sets
+ *   - a removed friendship may split a set. Both ends are searched at once, one
+ *     vertex at a time, until they meet (no split) or one side runs out, and
+ *     only that smaller side is moved into a new set
+ *   - a removed person may split their component into as many parts as they
+ *     had friends. All friends are searched at once the same way, searches
+ *     that meet are joined, and once at most one is still going every search
+ *     that ran out is moved into a new set
+ *
+ * A union-find forest cannot split, so moved people get fresh IDs and their
+ * old IDs stay behind as unused inner nodes so the paths of the people that
+ * stayed keep working. Once unused IDs outnumber people the forest should be
+ * rebuilt, see isWasteful.
+ *
+ * @author samsoncain
+ */
+class ConnectedComponents {
+
+  /**
+   * People per task of the parallel first computation
+   */
+  private static final int CHUNK = 1 << 12;
+
+  /**
+   * Graph the components belong to
+   */
+  private GraphADT graph;
+
+  /**
+   * Current ID of every person
+   */
+  private Map<Person, Integer> ids;
+
+  /**
+   * Union-find parent of every ID, roots are their own parent
+   */
+  private AtomicIntegerArray parent;
+
+  /**
+   * Number of IDs handed out, including unused ones
+   */
+  private int used;
+
+  /**
+   * Number of components
+   */
+  private int count;
+
+  /**
+   * Computes the components of a graph in parallel
+   *
+   * @param graph graph to compute the components of
+   * @param pool  pool to run the computation in
+   */
+  ConnectedComponents(GraphADT graph, ForkJoinPool pool) {
+    this.graph = graph;
+
+    Person[] persons = graph.getAllNodes().toArray(new Person[0]);
+    this.ids = new HashMap<Person, Integer>(persons.length * 2);
+    for (int id = 0; id < persons.length; id++) {
+      this.ids.put(persons[id], id);
+    }
+    this.parent = new AtomicIntegerArray(Math.max(16, persons.length));
+    for (int id = 0; id < persons.length; id++) {
+      this.parent.set(id, id);
+    }
+    this.used = persons.length;
+
+    pool.invoke(new UnionTask(persons, 0, persons.length));
+
+    for (int id = 0; id < persons.length; id++) {
+      if (this.parent.get(id) == id) {
+        this.count++;
+      }
+    }
+  }
+
+  /**
+   * Returns the number of components
+   *
+   * @return int number of components
+   */
+  int count() {
+    return this.count;
+  }
+
+  /**
+   * Returns the component of a person as the ID of its set's root. Two people
+   * are connected exactly when their components are equal.
+   *
+   * @param person the person
+   *
+   * @return int component, or -1 if the person is not in the graph
+   */
+  int componentOf(Person person) {
+    Integer id = this.ids.get(person);
+    return id == null ? -1 : this.find(id);
+  }
+
+  /**
+   * Returns the people of every component
+   *
+   * @return Collection<Set<Person>> one set per component
+   */
+  Collection<Set<Person>> components() {
+    Map<Integer, Set<Person>> members = new HashMap<Integer, Set<Person>>();
+    for (Map.Entry<Person, Integer> entry : this.ids.entrySet()) {
+      members.computeIfAbsent(this.find(entry.getValue()), root -> new HashSet<Person>())
+          .add(entry.getKey());
+    }
+    return members.values();
+  }
+
+  /**
+   * Checks whether unused IDs have piled up enough that the forest should be
+   * rebuilt
+   *
+   * @return true if more than half of the IDs are unused
+   */
+  boolean isWasteful() {
+    return this.used > 2 * this.ids.size() + CHUNK;
+  }
+
+  /**
+   * Adds a person without friends as a new component
+   *
+   * @param person the added person
+   */
+  void nodeAdded(Person person) {
+    this.ids.put(person, this.newId());
+    this.count++;
+  }
+
+  /**
+   * Drops a removed person and splits their component if they were the last
+   * path between some of their friends. The graph must already be without
+   * the person and their friendships.
+   *
+   * @param person  the removed person
+   * @param friends the friends the person had
+   */
+  void nodeRemoved(Person person, Collection<Person> friends) {
+    // the ID stays in the forest as an inner node
+    if (this.ids.remove(person) == null) {
+      return;
+    }
+
+    // one search per friend, searches that meet are joined
+    Map<Person, Integer> searchOf = new HashMap<Person, Integer>();
+    List<Integer> joined = new ArrayList<Integer>();
+    List<ArrayDeque<Person>> queues = new ArrayList<ArrayDeque<Person>>();
+    List<List<Person>> members = new ArrayList<List<Person>>();
+    for (Person friend : friends) {
+      if (friend != person && !searchOf.containsKey(friend)) {
+        searchOf.put(friend, joined.size());
+        joined.add(joined.size());
+        queues.add(new ArrayDeque<Person>());
+        queues.get(queues.size() - 1).add(friend);
+        members.add(new ArrayList<Person>());
+        members.get(members.size() - 1).add(friend);
+      }
+    }
+
+    // expand every search still going by one person in turn until at most one
+    // is left; a search that runs out cannot meet another one later
+    List<Integer> done = new ArrayList<Integer>();
+    int going = joined.size();
+    while (going > 1) {
+      for (int search = 0; search < joined.size() && going > 1; search++) {
+        if (joined.get(search) != search || queues.get(search) == null) {
+          continue;
+        }
+        ArrayDeque<Person> queue = queues.get(search);
+        if (queue.isEmpty()) {
+          queues.set(search, null);
+          done.add(search);
+          going--;
+          continue;
+        }
+        for (Person next : this.graph.getNeighbors(queue.poll())) {
+          Integer other = searchOf.get(next);
+          if (other == null) {
+            searchOf.put(next, search);
+            queue.add(next);
+            members.get(search).add(next);
+          } else if (rootOf(joined, other) != search) {
+            // joins the other search into this one, both are still going
+            int root = rootOf(joined, other);
+            joined.set(root, search);
+            queue.addAll(queues.get(root));
+            members.get(search).addAll(members.get(root));
+            queues.set(root, null);
+            members.set(root, null);
+            going--;
+          }
+        }
+      }
+    }
+
+    // the search still going, if any, keeps the old set
+    for (int search : done) {
+      int root = -1;
+      for (Person member : members.get(search)) {
+        int id = this.newId();
+        if (root < 0) {
+          root = id;
+        } else {
+          this.parent.set(id, root);
+        }
+        this.ids.put(member, id);
+      }
+    }
+    this.count += done.size() + (going > 0 ? 1 : 0) - 1;
+  }
+
+  /**
+   * Returns the search a search was joined into
+   *
+   * @param joined search each search was joined into, itself if none
+   * @param search the search
+   *
+   * @return int search that holds it now
+   */
+  private static int rootOf(List<Integer> joined, int search) {
+    while (joined.get(search) != search) {
+      search = joined.get(search);
+    }
+    return search;
+  }
+
+  /**
+   * Joins the components of two new friends
+   *
+   * @param person1 first person
+   * @param person2 second person
+   */
+  void edgeAdded(Person person1, Person person2) {
+    if (this.union(this.ids.get(person1), this.ids.get(person2))) {
+      this.count--;
+    }
+  }
+
+  /**
+   * Splits a component if a removed friendship was the last path between two
+   * people
+   *
+   * @param person1 first person
+   * @param person2 second person
+   */
+  void edgeRemoved(Person person1, Person person2) {
+    Set<Person> side = this.separatedSide(person1, person2);
+    if (side == null) {
+      return;
+    }
+
+    // move the smaller side into a fresh set rooted at its first new ID
+    int root = -1;
+    for (Person person : side) {
+      int id = this.newId();
+      if (root < 0) {
+        root = id;
+      } else {
+        this.parent.set(id, root);
+      }
+      this.ids.put(person, id);
+    }
+    this.count++;
+  }
+
+  /**
+   * Searches from both people at once, one vertex per side in turn
+   *
+   * @param person1 first person
+   * @param person2 second person
+   *
+   * @return Set<Person> of every person on the side that ran out first, or null
+   *         if the two are still connected
+   */
+  private Set<Person> separatedSide(Person person1, Person person2) {
+    if (person1 == person2) {
+      return null;
+    }
+
+    Set<Person> seen1 = new HashSet<Person>();
+    Set<Person> seen2 = new HashSet<Person>();
+    Queue<Person> queue1 = new ArrayDeque<Person>();
+    Queue<Person> queue2 = new ArrayDeque<Person>();
+    seen1.add(person1);
+    seen2.add(person2);
+    queue1.add(person1);
+    queue2.add(person2);
+
+    while (true) {
+      if (queue1.isEmpty()) {
+        return seen1;
+      }
+      if (this.expand(queue1, seen1, seen2)) {
+        return null;
+      }
+      if (queue2.isEmpty()) {
+        return seen2;
+      }
+      if (this.expand(queue2, seen2, seen1)) {
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Visits the friends of the next person in a search
+   *
+   * @param queue queue of the search
+   * @param seen  people this search has seen
+   * @param other people the other search has seen
+   *
+   * @return true if a friend was already seen by the other search
+   */
+  private boolean expand(Queue<Person> queue, Set<Person> seen, Set<Person> other) {
+    for (Person friend : this.graph.getNeighbors(queue.poll())) {
+      if (other.contains(friend)) {
+        return true;
+      }
+      if (seen.add(friend)) {
+        queue.add(friend);
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Hands out the next ID as a new root, growing the forest if needed
+   *
+   * @return int new ID
+   */
+  private int newId() {
+    if (this.used == this.parent.length()) {
+      AtomicIntegerArray grown = new AtomicIntegerArray(this.used * 2);
+      for (int id = 0; id < this.used; id++) {
+        grown.set(id, this.parent.get(id));
+      }
+      this.parent = grown;
+    }
+    int id = this.used++;
+    this.parent.set(id, id);
+    return id;
+  }
+
+  /**
+   * Returns the root of an ID's set, halving the path on the way
+   *
+   * @param id the ID
+   *
+   * @return int root ID
+   */
+  private int find(int id) {
+    while (true) {
+      int up = this.parent.get(id);
+      if (up == id) {
+        return id;
+      }
+      int upper = this.parent.get(up);
+      // point at the grandparent, losing the race only skips the shortcut
+      this.parent.compareAndSet(id, up, upper);
+      id = upper;
+    }
+  }
+
+  /**
+   * Joins the sets of two IDs. Always hangs the larger root under the smaller
+   * one so concurrent unions cannot form a cycle.
+   *
+   * @param id1 first ID
+   * @param id2 second ID
+   *
+   * @return true if they were in different sets
+   */
+  private boolean union(int id1, int id2) {
+    while (true) {
+      int root1 = this.find(id1);
+      int root2 = this.find(id2);
+      if (root1 == root2) {
+        return false;
+      }
+      int low = Math.min(root1, root2);
+      int high = Math.max(root1, root2);
+      // fails if high stopped being a root in the meantime, then try again
+      if (this.parent.compareAndSet(high, high, low)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Unions every friendship of a range of people, splitting big ranges
+   */
+  private class UnionTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private Person[] persons;
+    private int from;
+    private int to;
+
+    UnionTask(Person[] persons, int from, int to) {
+      this.persons = persons;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (this.to - this.from > CHUNK) {
+        int middle = (this.from + this.to) >>> 1;
+        invokeAll(new UnionTask(this.persons, this.from, middle),
+            new UnionTask(this.persons, middle, this.to));
+        return;
+      }
+
+      for (int id = this.from; id < this.to; id++) {
+        for (Person friend : graph.getNeighbors(this.persons[id])) {
+          int friendId = ids.get(friend);
+          // every friendship is seen from both ends, union it once
+          if (friendId > id) {
+            union(id, friendId);
+          }
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,77 @@
+package application;
+
+import java.util.Arrays;
+
+/**
+ * Set of non-negative ints, such as Person IDs, that can be emptied in O(1).
+ *
+ * Every index has an int stamp and counts as set only if its stamp equals the
+ * current epoch, so clearing the whole set is just starting the next epoch.
+ * This is the visit state of a search that runs again and again: marking is
+ * one array write and nothing has to be reset between searches. Only when the
+ * epoch wraps around are the stamps really zeroed.
+ *
+ * @author samsoncain
+ */
+class EpochBitSet {
+
+  /**
+   * Epoch in which each index was last set
+   */
+  private int[] stamps;
+
+  /**
+   * Current epoch, never 0 so fresh stamps are unset
+   */
+  private int epoch;
+
+  /**
+   * Constructor for an empty set
+   *
+   * @param capacity indexes to make room for before growing
+   */
+  EpochBitSet(int capacity) {
+    this.stamps = new int[Math.max(16, capacity)];
+    this.epoch = 1;
+  }
+
+  /**
+   * Sets an index
+   *
+   * @param index index to set, not negative
+   *
+   * @return true if it was not set yet in this epoch
+   */
+  boolean set(int index) {
+    if (index >= this.stamps.length) {
+      this.stamps = Arrays.copyOf(this.stamps, Math.max(index + 1, this.stamps.length * 2));
+    }
+    if (this.stamps[index] == this.epoch) {
+      return false;
+    }
+    this.stamps[index] = this.epoch;
+    return true;
+  }
+
+  /**
+   * Checks whether an index is set
+   *
+   * @param index the index
+   *
+   * @return true if it was set in this epoch
+   */
+  boolean get(int index) {
+    return index < this.stamps.length && this.stamps[index] == this.epoch;
+  }
+
+  /**
+   * Unsets every index by starting the next epoch
+   */
+  void clear() {
+    if (++this.epoch == 0) {
+      Arrays.fill(this.stamps, 0);
+      this.epoch = 1;
+    }
+  }
+
+}
@@ -0,0 +1,78 @@
+package application;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.PrimitiveIterator;
+
+/**
+ * Friend collection of one person in a Graph that stores the Person IDs of the
+ * friends in an IntHashSet and turns them back into people through the graph
+ * while iterating.
+ *
+ * @author samsoncain
+ */
+class FriendIdSet extends AbstractSet<Person> {
+
+  /**
+   * Graph that owns this set, resolves IDs to people
+   */
+  private Graph graph;
+
+  /**
+   * Person IDs of the friends
+   */
+  private IntHashSet ids;
+
+  /**
+   * Constructor for an empty set
+   *
+   * @param graph graph that owns this set
+   */
+  FriendIdSet(Graph graph) {
+    this.graph = graph;
+    this.ids = new IntHashSet();
+  }
+
+  @Override
+  public boolean add(Person person) {
+    return this.ids.add(person.getId());
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    return o instanceof Person && this.ids.remove(((Person) o).getId());
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return o instanceof Person && this.ids.contains(((Person) o).getId());
+  }
+
+  @Override
+  public int size() {
+    return this.ids.size();
+  }
+
+  /**
+   * Iterates the friends in hash order. The set must not change while the
+   * iterator is in use.
+   *
+   * @return Iterator<Person> over the friends
+   */
+  @Override
+  public Iterator<Person> iterator() {
+    PrimitiveIterator.OfInt ids = this.ids.iterator();
+    return new Iterator<Person>() {
+      @Override
+      public boolean hasNext() {
+        return ids.hasNext();
+      }
+
+      @Override
+      public Person next() {
+        return graph.personOf(ids.nextInt());
+      }
+    };
+  }
+
+}
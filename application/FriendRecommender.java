@@ -0,0 +1,389 @@
+package application;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Recommends "people you may know": the friends of a person's friends, ranked
+ * by how many friends they have in common with the person.
+ *
+ * Mutual friend counts are kept in an int array indexed by a per-recommender
+ * person slot and only the slots a query touched are reset afterwards, so a
+ * query allocates nothing but its result. The best k candidates are picked
+ * with a bounded min-heap of slots, ties go to the smaller username so results
+ * do not depend on slot order.
+ *
+ * A FriendRecommender is not thread-safe, give every thread its own one.
+ *
+ * @author samsoncain
+ */
+public class FriendRecommender {
+
+  /**
+   * Initial number of slots
+   */
+  private static final int INITIAL_SLOTS = 1 << 10;
+
+  /**
+   * People per task of recommendAll
+   */
+  private static final int CHUNK = 1 << 10;
+
+  /**
+   * Count of a slot that must not be recommended (the person and their friends)
+   */
+  private static final int EXCLUDED = -1;
+
+  /**
+   * Graph to recommend from
+   */
+  private GraphADT graph;
+
+  /**
+   * Slot of every person touched so far by Person ID, or of every person if
+   * shared
+   */
+  private IntIntHashMap slots;
+
+  /**
+   * True if slots is a fixed numbering shared with other recommenders
+   */
+  private boolean shared;
+
+  /**
+   * Person of every slot
+   */
+  private Person[] persons;
+
+  /**
+   * Mutual friend count of every slot, 0 outside of a query
+   */
+  private int[] counts;
+
+  /**
+   * Slots whose count the current query changed
+   */
+  private int[] touched;
+  private int touchedCount;
+
+  /**
+   * Constructor
+   *
+   * @param graph graph to recommend from
+   */
+  public FriendRecommender(GraphADT graph) {
+    this.graph = graph;
+    this.reset();
+  }
+
+  /**
+   * Constructor for recommenders that share one fixed numbering of every
+   * person, used by recommendAll
+   *
+   * @param graph   graph to recommend from, must not change while in use
+   * @param slots   slot of every person by Person ID
+   * @param persons person of every slot
+   */
+  private FriendRecommender(GraphADT graph, IntIntHashMap slots, Person[] persons) {
+    this.graph = graph;
+    this.slots = slots;
+    this.shared = true;
+    this.persons = persons;
+    this.counts = new int[persons.length];
+    this.touched = new int[INITIAL_SLOTS];
+  }
+
+  /**
+   * Returns the k friends of friends with the most mutual friends
+   *
+   * @param person person to recommend friends to
+   * @param k      most recommendations to return
+   *
+   * @return List<Person> of up to k people who are not friends of person yet,
+   *         most mutual friends first
+   */
+  public List<Person> recommend(Person person, int k) {
+    if (!this.shared && this.slots.size() > 2 * this.graph.order() + INITIAL_SLOTS) {
+      this.reset();
+    }
+
+    // the person and their friends are never recommended
+    this.exclude(this.slotOf(person));
+    for (Person friend : this.graph.getNeighbors(person)) {
+      this.exclude(this.slotOf(friend));
+    }
+
+    // count the mutual friends of everybody two hops away
+    for (Person friend : this.graph.getNeighbors(person)) {
+      if (friend == person) {
+        continue;
+      }
+      for (Person candidate : this.graph.getNeighbors(friend)) {
+        int slot = this.slotOf(candidate);
+        if (this.counts[slot] == 0) {
+          this.touch(slot);
+        }
+        if (this.counts[slot] != EXCLUDED) {
+          this.counts[slot]++;
+        }
+      }
+    }
+
+    // keep the best k in a min-heap whose root is the worst of them
+    int[] heap = new int[Math.max(1, Math.min(k, this.touchedCount))];
+    int heapSize = 0;
+    for (int i = 0; i < this.touchedCount && k > 0; i++) {
+      int slot = this.touched[i];
+      if (this.counts[slot] <= 0) {
+        continue;
+      }
+      if (heapSize < k) {
+        heap[heapSize] = slot;
+        this.siftUp(heap, heapSize++);
+      } else if (this.better(slot, heap[0])) {
+        heap[0] = slot;
+        this.siftDown(heap, heapSize);
+      }
+    }
+
+    // popping the heap yields worst first
+    Person[] best = new Person[heapSize];
+    for (int i = heapSize - 1; i >= 0; i--) {
+      best[i] = this.persons[heap[0]];
+      heap[0] = heap[i];
+      this.siftDown(heap, i);
+    }
+
+    for (int i = 0; i < this.touchedCount; i++) {
+      this.counts[this.touched[i]] = 0;
+    }
+    this.touchedCount = 0;
+    return Arrays.asList(best);
+  }
+
+  /**
+   * Computes the recommendations of every person in a graph in parallel
+   *
+   * @param graph graph to recommend from, must not change while this runs
+   * @param k     most recommendations per person
+   * @param pool  pool to run in
+   *
+   * @return Map<Person, List<Person>> recommendations of every person
+   */
+  public static Map<Person, List<Person>> recommendAll(GraphADT graph, int k, ForkJoinPool pool) {
+    Person[] persons = graph.getAllNodes().toArray(new Person[0]);
+    IntIntHashMap slots = new IntIntHashMap(persons.length);
+    for (int slot = 0; slot < persons.length; slot++) {
+      slots.put(persons[slot].getId(), slot);
+    }
+
+    // leaf tasks borrow idle recommenders, so there are at most as many count
+    // arrays as leaves running at once and all of them are dropped on return
+    RecommendTask.Idle idle = new RecommendTask.Idle(graph, slots, persons);
+    Map<Person, List<Person>> recommendations =
+        new ConcurrentHashMap<Person, List<Person>>(persons.length * 2);
+    pool.invoke(new RecommendTask(persons, 0, persons.length, k, idle, recommendations));
+    return recommendations;
+  }
+
+  /**
+   * Marks a slot as not recommendable for the current query
+   *
+   * @param slot the slot
+   */
+  private void exclude(int slot) {
+    if (this.counts[slot] == 0) {
+      this.touch(slot);
+    }
+    this.counts[slot] = EXCLUDED;
+  }
+
+  /**
+   * Remembers a slot so it is reset after the query
+   *
+   * @param slot the slot
+   */
+  private void touch(int slot) {
+    if (this.touchedCount == this.touched.length) {
+      this.touched = Arrays.copyOf(this.touched, this.touchedCount * 2);
+    }
+    this.touched[this.touchedCount++] = slot;
+  }
+
+  /**
+   * Compares two candidates
+   *
+   * @param slot1 first candidate
+   * @param slot2 second candidate
+   *
+   * @return true if slot1 has more mutual friends, or as many and a smaller
+   *         username
+   */
+  private boolean better(int slot1, int slot2) {
+    if (this.counts[slot1] != this.counts[slot2]) {
+      return this.counts[slot1] > this.counts[slot2];
+    }
+    return this.persons[slot1].getUsername().compareTo(this.persons[slot2].getUsername()) < 0;
+  }
+
+  /**
+   * Moves a new heap entry up to its place, the worst candidate is the root
+   *
+   * @param heap  the heap
+   * @param index index of the new entry
+   */
+  private void siftUp(int[] heap, int index) {
+    int slot = heap[index];
+    while (index > 0) {
+      int up = (index - 1) >>> 1;
+      if (!this.better(heap[up], slot)) {
+        break;
+      }
+      heap[index] = heap[up];
+      index = up;
+    }
+    heap[index] = slot;
+  }
+
+  /**
+   * Moves the heap root down to its place
+   *
+   * @param heap the heap
+   * @param size number of entries in the heap
+   */
+  private void siftDown(int[] heap, int size) {
+    if (size == 0) {
+      return;
+    }
+    int slot = heap[0];
+    int index = 0;
+    while (true) {
+      int child = 2 * index + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size && this.better(heap[child], heap[child + 1])) {
+        child++;
+      }
+      if (!this.better(slot, heap[child])) {
+        break;
+      }
+      heap[index] = heap[child];
+      index = child;
+    }
+    heap[index] = slot;
+  }
+
+  /**
+   * Drops all slots and counts
+   */
+  private void reset() {
+    this.slots = new IntIntHashMap();
+    this.persons = new Person[INITIAL_SLOTS];
+    this.counts = new int[INITIAL_SLOTS];
+    this.touched = new int[INITIAL_SLOTS];
+    this.touchedCount = 0;
+  }
+
+  /**
+   * Returns the slot of a person, assigning the next free one the first time
+   *
+   * @param person the person
+   *
+   * @return int slot
+   */
+  private int slotOf(Person person) {
+    int slot = this.slots.get(person.getId(), -1);
+    if (slot >= 0) {
+      return slot;
+    }
+
+    int next = this.slots.size();
+    if (next == this.persons.length) {
+      this.persons = Arrays.copyOf(this.persons, next * 2);
+      this.counts = Arrays.copyOf(this.counts, next * 2);
+    }
+    this.slots.put(person.getId(), next);
+    this.persons[next] = person;
+    return next;
+  }
+
+  /**
+   * Recommends for a range of people, splitting big ranges
+   */
+  private static class RecommendTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private Person[] persons;
+    private int from;
+    private int to;
+    private int k;
+    private Idle idle;
+    private Map<Person, List<Person>> recommendations;
+
+    RecommendTask(Person[] persons, int from, int to, int k, Idle idle,
+        Map<Person, List<Person>> recommendations) {
+      this.persons = persons;
+      this.from = from;
+      this.to = to;
+      this.k = k;
+      this.idle = idle;
+      this.recommendations = recommendations;
+    }
+
+    @Override
+    protected void compute() {
+      if (this.to - this.from > CHUNK) {
+        int middle = (this.from + this.to) >>> 1;
+        invokeAll(new RecommendTask(this.persons, this.from, middle, this.k, this.idle,
+            this.recommendations),
+            new RecommendTask(this.persons, middle, this.to, this.k, this.idle,
+                this.recommendations));
+        return;
+      }
+
+      FriendRecommender recommender = this.idle.take();
+      try {
+        for (int i = this.from; i < this.to; i++) {
+          this.recommendations.put(this.persons[i], recommender.recommend(this.persons[i], this.k));
+        }
+      } finally {
+        this.idle.recommenders.offer(recommender);
+      }
+    }
+
+    /**
+     * Recommenders of one recommendAll call that no leaf task is using
+     */
+    private static class Idle {
+      private GraphADT graph;
+      private IntIntHashMap slots;
+      private Person[] persons;
+      private ConcurrentLinkedQueue<FriendRecommender> recommenders =
+          new ConcurrentLinkedQueue<FriendRecommender>();
+
+      Idle(GraphADT graph, IntIntHashMap slots, Person[] persons) {
+        this.graph = graph;
+        this.slots = slots;
+        this.persons = persons;
+      }
+
+      /**
+       * Takes an idle recommender, or makes one if all are in use
+       *
+       * @return FriendRecommender to give back to recommenders when done
+       */
+      FriendRecommender take() {
+        FriendRecommender recommender = this.recommenders.poll();
+        return recommender != null ? recommender
+            : new FriendRecommender(this.graph, this.slots, this.persons);
+      }
+    }
+  }
+
+}
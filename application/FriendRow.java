@@ -0,0 +1,158 @@
+package application;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable friend set of one person in a ConcurrentSocialNetwork.
+ *
+ * The friends are kept as a sorted array of Person IDs, so membership is a
+ * binary search and a changed copy is a single primitive array copy. IDs are
+ * turned back into people through a directory array captured when the row was
+ * built, which already holds every friend in it.
+ *
+ * @author samsoncain
+ */
+final class FriendRow extends AbstractSet<Person> {
+
+  /**
+   * IDs shared by every empty row
+   */
+  private static final int[] NO_IDS = new int[0];
+
+  /**
+   * Sorted Person IDs of the friends, never changed
+   */
+  private final int[] ids;
+
+  /**
+   * People by ID, holds at least every ID in ids
+   */
+  private final Person[] directory;
+
+  /**
+   * Constructor for an empty row
+   *
+   * @param directory people by ID
+   */
+  FriendRow(Person[] directory) {
+    this(NO_IDS, directory);
+  }
+
+  /**
+   * Constructor for a row over sorted IDs
+   *
+   * @param ids       sorted friend IDs, not copied
+   * @param directory people by ID, must hold every ID in ids
+   */
+  private FriendRow(int[] ids, Person[] directory) {
+    this.ids = ids;
+    this.directory = directory;
+  }
+
+  /**
+   * Returns a row that also holds friend
+   *
+   * @param friend    friend to add
+   * @param directory current people by ID, must hold friend
+   *
+   * @return FriendRow with friend, or this row if friend was already in it
+   */
+  FriendRow with(Person friend, Person[] directory) {
+    int index = Arrays.binarySearch(this.ids, friend.getId());
+    if (index >= 0) {
+      return this;
+    }
+
+    int at = -index - 1;
+    int[] next = new int[this.ids.length + 1];
+    System.arraycopy(this.ids, 0, next, 0, at);
+    next[at] = friend.getId();
+    System.arraycopy(this.ids, at, next, at + 1, this.ids.length - at);
+    return new FriendRow(next, directory);
+  }
+
+  /**
+   * Returns a row without friend
+   *
+   * @param friend friend to remove
+   *
+   * @return FriendRow without friend, or this row if friend was not in it
+   */
+  FriendRow without(Person friend) {
+    int at = Arrays.binarySearch(this.ids, friend.getId());
+    if (at < 0) {
+      return this;
+    }
+
+    int[] next = this.ids.length == 1 ? NO_IDS : new int[this.ids.length - 1];
+    System.arraycopy(this.ids, 0, next, 0, at);
+    System.arraycopy(this.ids, at + 1, next, at, next.length - at);
+    return new FriendRow(next, this.directory);
+  }
+
+  /**
+   * Returns the friends in both rows by merging the sorted IDs
+   *
+   * @param other the other row
+   *
+   * @return Set<Person> of the friends in both rows, in ID order
+   */
+  Set<Person> intersect(FriendRow other) {
+    Set<Person> mutual = new LinkedHashSet<Person>();
+    int i = 0;
+    int j = 0;
+    while (i < this.ids.length && j < other.ids.length) {
+      if (this.ids[i] < other.ids[j]) {
+        i++;
+      } else if (this.ids[i] > other.ids[j]) {
+        j++;
+      } else {
+        mutual.add(this.directory[this.ids[i]]);
+        i++;
+        j++;
+      }
+    }
+    return mutual;
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return o instanceof Person && Arrays.binarySearch(this.ids, ((Person) o).getId()) >= 0;
+  }
+
+  @Override
+  public int size() {
+    return this.ids.length;
+  }
+
+  /**
+   * Iterates the friends in ID order
+   *
+   * @return Iterator<Person> over the friends
+   */
+  @Override
+  public Iterator<Person> iterator() {
+    return new Iterator<Person>() {
+      private int next;
+
+      @Override
+      public boolean hasNext() {
+        return this.next < ids.length;
+      }
+
+      @Override
+      public Person next() {
+        if (this.next >= ids.length) {
+          throw new NoSuchElementException();
+        }
+        return directory[ids[this.next++]];
+      }
+    };
+  }
+
+}
@@ -1,11 +1,14 @@
 package application;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Graph implementation based on GraphADT
@@ -15,20 +18,76 @@ import java.util.Set;
 public class Graph implements GraphADT {
 
   /**
-   * Define people Map<String, List<String>>
+   * Define people Map<Person, Collection<Person>>
    * 
-   * The key will be the Person and the value will be an LinkedList of Person objects 
-   * which will be the key's (person's) friends
+   * The key will be the Person and the value will be a Collection of Person objects 
+   * which will be the key's (person's) friends. The kind of collection is chosen by
+   * the AdjacencyStore the graph was created with.
    */
-  private Map<Person, List<Person>> people;
+  private Map<Person, Collection<Person>> people;
+  
+  /**
+   * Creates the friend collection for every new person
+   */
+  private AdjacencyStore store;
+  
+  /**
+   * Username index Map<String, Person>
+   * 
+   * Maps every username in the graph to its Person node so getNode does not have
+   * to scan every key of people. Kept in sync by addNode and removeNode.
+   */
+  private Map<String, Person> usernames;
+  
+  /**
+   * Number of undirected edges (friendships) in the graph
+   */
+  private int edgeCount;
+  
+  /**
+   * Degree histogram, degreeCounts[d] is the number of people with exactly d friends.
+   * Kept up to date by every method that changes a friend collection.
+   */
+  private int[] degreeCounts;
+  
+  /**
+   * Connected components, computed on the first component query and then kept
+   * up to date by every method that changes the graph. Null until then.
+   */
+  private ConnectedComponents components;
+  
+  /**
+   * Person of every Person ID in the graph, null for IDs that are not, so
+   * friend collections can store IDs. Sized by the highest ID added, which
+   * Person keeps near the most people alive at once by reusing IDs.
+   */
+  private Person[] persons;
+  
+  /**
+   * People being removed by removeNodes, by Person ID
+   */
+  private EpochBitSet removing;
   
   /*
    * Default no-argument constructor
    * 
-   * All this does is initialize the HashMap
+   * Stores friends in open addressing sets of friend IDs
    */
   public Graph() {
-    this.people = new HashMap<Person, List<Person>>();
+    this(AdjacencyStore.INT_HASH_SET);
+  }
+  
+  /**
+   * Constructor that chooses how each person's friends are stored
+   * 
+   * @param store the kind of collection to keep friends in
+   */
+  public Graph(AdjacencyStore store) {
+    this.people = new HashMap<Person, Collection<Person>>();
+    this.usernames = new HashMap<String, Person>();
+    this.store = store;
+    this.degreeCounts = new int[16];
+    this.persons = new Person[16];
   }
   
   /**
@@ -41,13 +100,24 @@ public class Graph implements GraphADT {
    */
   @Override
   public boolean addNode(Person person) {
-    // check if person is null or if person already exists
-    if (person == null || this.people.containsKey(person)) {
+    // check if person is null or if person (or their username) already exists
+    if (person == null || this.people.containsKey(person)
+        || this.usernames.containsKey(person.getUsername())) {
       return false;
     }
     
-    // add new person to HashMap
-    this.people.put(person, new LinkedList<Person>());
+    // add new person to HashMap and index their username
+    this.people.put(person, this.store.create(this));
+    this.usernames.put(person.getUsername(), person);
+    if (person.getId() >= this.persons.length) {
+      this.persons = Arrays.copyOf(this.persons,
+          Math.max(person.getId() + 1, this.persons.length * 2));
+    }
+    this.persons[person.getId()] = person;
+    this.degreeCounts[0]++;
+    if (this.components != null) {
+      this.components.nodeAdded(person);
+    }
     
     return true;
   }
@@ -66,16 +136,85 @@ public class Graph implements GraphADT {
       return false;
     }
 
-    // iterate through ALL nodes/keys and remove friendships with the specified person
-    for (Person p : this.people.keySet()) {
-      this.people.get(p).remove(p);
+    // friendships are undirected, so only the removed person's own friends
+    // can have an edge back to them
+    Collection<Person> friends = this.people.get(person);
+    for (Person friend : friends) {
+      if (friend != person) {
+        this.unlink(friend, person);
+      }
+    }
+    this.edgeCount -= friends.size();
+    
+    // one search over the former friends finds every split at once
+    if (this.components != null) {
+      this.components.nodeRemoved(person, friends);
     }
 
-    // remove vertex from graph
+    // remove vertex from graph and from the username index
     this.people.remove(person);
+    this.usernames.remove(person.getUsername());
+    this.persons[person.getId()] = null;
+    this.degreeCounts[friends.size()]--;
     
     return true;
   }
+  
+  /**
+   * Remove a batch of people and all associated friendships from the graph.
+   * 
+   * @param persons people to remove from graph
+   * 
+   * @return int the number of people that were removed
+   */
+  @Override
+  public int removeNodes(Collection<Person> persons) {
+    // collect the people that actually exist in the graph, marking them by ID
+    if (this.removing == null) {
+      this.removing = new EpochBitSet(this.persons.length);
+    }
+    this.removing.clear();
+    IntArrayList removed = new IntArrayList();
+    for (Person person : persons) {
+      if (person != null && this.people.containsKey(person)
+          && this.removing.set(person.getId())) {
+        removed.add(person.getId());
+      }
+    }
+    
+    // unlink reverse edges, skipping friends that are being removed as well
+    // since their whole friend collection is about to be dropped
+    int internalEdges = 0;
+    for (int i = 0; i < removed.size(); i++) {
+      Person person = this.persons[removed.get(i)];
+      for (Person friend : this.people.get(person)) {
+        if (!this.removing.get(friend.getId())) {
+          this.unlink(friend, person);
+          this.edgeCount--;
+        } else if (friend == person) {
+          this.edgeCount--;
+        } else {
+          // seen once from each end
+          internalEdges++;
+        }
+      }
+    }
+    this.edgeCount -= internalEdges / 2;
+    
+    // a batch can split components in too many ways to follow, recompute them
+    // on the next query instead
+    this.components = null;
+    
+    // remove vertices from graph and from the username index
+    for (int i = 0; i < removed.size(); i++) {
+      Person person = this.persons[removed.get(i)];
+      this.degreeCounts[this.people.remove(person).size()]--;
+      this.usernames.remove(person.getUsername());
+      this.persons[person.getId()] = null;
+    }
+    
+    return removed.size();
+  }
 
   /**
    * Add an edge (friendship) from person1 to person2 to this graph.
@@ -96,14 +235,16 @@ public class Graph implements GraphADT {
     // we need to add both friendship from person1 -> person2 and person2 -> person1
     // because it is an undirected graph
     
-    // check friendship person1 -> person2 and add if it does not exist
+    // check friendship person1 -> person2 and add both directions if it does not exist
     if (!this.people.get(person1).contains(person2)) {
-      this.people.get(person1).add(person2);
-    }
-    
-    // check friendship person2 -> person1 and add if it does not exist
-    if (!this.people.get(person2).contains(person1)) {
-      this.people.get(person2).add(person1);
+      this.link(person1, person2);
+      if (person1 != person2) {
+        this.link(person2, person1);
+      }
+      this.edgeCount++;
+      if (this.components != null) {
+        this.components.edgeAdded(person1, person2);
+      }
     }
     
     return true;
@@ -128,28 +269,238 @@ public class Graph implements GraphADT {
     // we need to remove both friendship from person1 -> person2 and person2 -> person1
     // because it is an undirected graph
     
-    // check friendship person1 -> person2 and remove if it exists
-    if (this.people.get(person1).contains(person2)) {
-      this.people.get(person1).remove(person2);
+    // remove friendship person1 -> person2 and person2 -> person1 if it exists
+    if (this.unlink(person1, person2)) {
+      if (person1 != person2) {
+        this.unlink(person2, person1);
+      }
+      this.edgeCount--;
+      if (this.components != null) {
+        this.components.edgeRemoved(person1, person2);
+      }
+    }
+    
+    return true;
+  }
+  
+  /**
+   * Adds friend to the friend collection of person and updates the degree histogram
+   * 
+   * @param person person whose friend collection is changed
+   * @param friend person to add
+   */
+  private void link(Person person, Person friend) {
+    Collection<Person> friends = this.people.get(person);
+    int degree = friends.size();
+    
+    friends.add(friend);
+    
+    // grow histogram if this is a new highest degree
+    if (degree + 1 == this.degreeCounts.length) {
+      this.degreeCounts = Arrays.copyOf(this.degreeCounts, this.degreeCounts.length * 2);
     }
+    this.degreeCounts[degree]--;
+    this.degreeCounts[degree + 1]++;
+  }
+  
+  /**
+   * Removes friend from the friend collection of person and updates the degree histogram
+   * 
+   * @param person person whose friend collection is changed
+   * @param friend person to remove
+   * 
+   * @return true if friend was in the collection, false if not
+   */
+  private boolean unlink(Person person, Person friend) {
+    Collection<Person> friends = this.people.get(person);
+    int degree = friends.size();
     
-    // check friendship person1 -> person2 and remove if it exists
-    if (this.people.get(person2).contains(person1)) {
-      this.people.get(person2).remove(person1);
+    if (!friends.remove(friend)) {
+      return false;
     }
     
+    this.degreeCounts[degree]--;
+    this.degreeCounts[degree - 1]++;
     return true;
   }
   
   /**
    * Returns the friends of a given user
    * 
+   * With a hash set store this is a read-only view of the person's friends that
+   * is not copied, so it reflects later changes to the graph. The LinkedList
+   * store has to copy its list into a set.
+   * 
    * @param person person to return friends for
    * 
-   * @return Set<Person> neighbors of person
+   * @return Set<Person> neighbors of person, or null if person is not in the graph
    */
+  @Override
   public Set<Person> getNeighbors(Person person) {
-    return new HashSet<Person>(this.people.get(person));
+    Collection<Person> friends = this.people.get(person);
+    if (friends == null) {
+      return null;
+    }
+    if (friends instanceof Set) {
+      return Collections.unmodifiableSet((Set<Person>) friends);
+    }
+    return new HashSet<Person>(friends);
+  }
+  
+  /**
+   * Returns the number of friends of a given user in O(1)
+   * 
+   * @param person person to return degree for
+   * 
+   * @return int number of friends, or -1 if person does not exist
+   */
+  @Override
+  public int degree(Person person) {
+    Collection<Person> friends = this.people.get(person);
+    return friends == null ? -1 : friends.size();
+  }
+  
+  /**
+   * Returns the friends two people have in common by looking up every friend
+   * of the one with fewer friends in the other's collection
+   * 
+   * @param person1 first person
+   * @param person2 second person
+   * 
+   * @return Set<Person> of mutual friends
+   */
+  @Override
+  public Set<Person> getMutualNeighbors(Person person1, Person person2) {
+    Set<Person> mutual = new LinkedHashSet<Person>();
+    Collection<Person> smaller = this.smallerFriends(person1, person2);
+    Collection<Person> larger = this.largerFriends(person1, person2);
+    for (Person friend : smaller) {
+      if (larger.contains(friend)) {
+        mutual.add(friend);
+      }
+    }
+    return mutual;
+  }
+  
+  /**
+   * Returns the number of friends two people have in common. Allocates nothing
+   * with a hash set store.
+   * 
+   * @param person1 first person
+   * @param person2 second person
+   * 
+   * @return int number of mutual friends
+   */
+  @Override
+  public int countMutualNeighbors(Person person1, Person person2) {
+    int count = 0;
+    Collection<Person> larger = this.largerFriends(person1, person2);
+    for (Person friend : this.smallerFriends(person1, person2)) {
+      if (larger.contains(friend)) {
+        count++;
+      }
+    }
+    return count;
+  }
+  
+  /**
+   * Returns the friend collection of whichever of two people has fewer friends
+   * 
+   * @param person1 first person
+   * @param person2 second person
+   * 
+   * @return Collection<Person> friends of the person with fewer friends
+   */
+  private Collection<Person> smallerFriends(Person person1, Person person2) {
+    Collection<Person> friends1 = this.people.get(person1);
+    Collection<Person> friends2 = this.people.get(person2);
+    return friends1.size() <= friends2.size() ? friends1 : friends2;
+  }
+  
+  /**
+   * Returns the friends of whichever of two people has more friends as a
+   * collection with fast contains, copying a LinkedList store into a set
+   * 
+   * @param person1 first person
+   * @param person2 second person
+   * 
+   * @return Collection<Person> friends of the person with more friends
+   */
+  private Collection<Person> largerFriends(Person person1, Person person2) {
+    Collection<Person> friends1 = this.people.get(person1);
+    Collection<Person> friends2 = this.people.get(person2);
+    Collection<Person> larger = friends1.size() <= friends2.size() ? friends2 : friends1;
+    return larger instanceof Set ? larger : new HashSet<Person>(larger);
+  }
+  
+  /**
+   * Returns the degree histogram of the graph. Entry d is the number of people with
+   * exactly d friends, the last entry is the highest degree in the graph.
+   * 
+   * @return int[] copy of the degree histogram
+   */
+  public int[] getDegreeHistogram() {
+    int maxDegree = this.degreeCounts.length - 1;
+    while (maxDegree > 0 && this.degreeCounts[maxDegree] == 0) {
+      maxDegree--;
+    }
+    return Arrays.copyOf(this.degreeCounts, maxDegree + 1);
+  }
+  
+  /**
+   * Returns the number of connected components, groups of people that are
+   * linked by chains of friendships. The first component query computes them
+   * in parallel, after that they are kept up to date and this is O(1).
+   * 
+   * @return int number of components
+   */
+  public int getComponentCount() {
+    return this.components().count();
+  }
+  
+  /**
+   * Returns the component of a person. Two people are connected by a chain of
+   * friendships exactly when their components are equal.
+   * 
+   * @param person person to return the component of
+   * 
+   * @return int component label, or -1 if person does not exist
+   */
+  public int getComponentOf(Person person) {
+    return this.components().componentOf(person);
+  }
+  
+  /**
+   * Returns the people of every connected component
+   * 
+   * @return Collection<Set<Person>> one set of people per component
+   */
+  public Collection<Set<Person>> getComponents() {
+    return this.components().components();
+  }
+  
+  /**
+   * Returns the connected components, computing them if they are not kept yet
+   * or if removals left too many unused IDs behind
+   * 
+   * @return ConnectedComponents of the graph
+   */
+  private ConnectedComponents components() {
+    if (this.components == null || this.components.isWasteful()) {
+      this.components = new ConnectedComponents(this, ForkJoinPool.commonPool());
+    }
+    return this.components;
+  }
+  
+  /**
+   * Returns the person in the graph with a Person ID
+   * 
+   * @param id Person ID
+   * 
+   * @return Person with that ID, or null if they are not in the graph
+   */
+  Person personOf(int id) {
+    return id < this.persons.length ? this.persons[id] : null;
   }
   
   /**
@@ -159,17 +510,10 @@ public class Graph implements GraphADT {
    * 
    * @return Person the person object of the node
    */
-  public Person getNode(String user) {    
-    // get person object from graph with specified username
-    // if they exist
-    for (Person p: this.people.keySet()) {
-      if (p.getUsername().equals(user)) {
-        return p;
-      }
-    }
-    
-    // return null if user/node does not exist
-    return null;
+  public Person getNode(String user) {
+    // look up person object in the username index
+    // returns null if user/node does not exist
+    return this.usernames.get(user);
   }
 
   /**
@@ -183,20 +527,14 @@ public class Graph implements GraphADT {
   }
 
   /**
-   * Returns the number of edges in this graph.
+   * Returns the number of edges in this graph. Every undirected friendship is
+   * counted once.
    * 
    * @return int the number of edges
    */
   @Override
   public int size() {
-    int edges = 0;
-    
-    // iterate through all vertices and sum the amount of edges for each
-    for (Person p: this.people.keySet()) {
-      edges += this.people.get(p).size();
-    }
-    
-    return edges;
+    return this.edgeCount;
   }
 
   /**
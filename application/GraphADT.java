@@ -1,5 +1,6 @@
 package application;
 
+import java.util.Collection;
 import java.util.Set;
 
 /** 
@@ -36,6 +37,20 @@ public interface GraphADT {
     public boolean removeNode(Person person);
 
     
+    /**
+     * Remove a batch of people and all associated 
+     * friendships from the graph.
+     * 
+     * People that are null or do not exist are skipped
+     * without throwing an exception.
+     *  
+     * @param persons the people to be removed
+     * 
+     * @return the number of people that were removed
+     */
+    public int removeNodes(Collection<Person> persons);
+
+    
     /**
      * Add the friendship from person1 to person2
      * to this graph. (edge is undirected and unweighted)
@@ -63,6 +78,8 @@ public interface GraphADT {
     public boolean removeEdge(Person person1, Person person2);
     
     /**
+     * Returns the friends of a person. The returned set
+     * may be a read-only view and must not be modified.
      * 
      * @param person to get neighbors for
      * 
@@ -70,6 +87,36 @@ public interface GraphADT {
      */
     public Set<Person> getNeighbors(Person person);
         
+    /**
+     * Returns the number of friends of a person
+     * 
+     * @param person to get degree for
+     * 
+     * @return number of friends, or -1 if person does not exist
+     */
+    public int degree(Person person);
+    
+    /**
+     * Returns the friends two people have in common
+     * 
+     * @param person1 first person
+     * @param person2 second person
+     * 
+     * @return Set<Person> of mutual friends
+     */
+    public Set<Person> getMutualNeighbors(Person person1, Person person2);
+    
+    /**
+     * Returns the number of friends two people have in common without
+     * building the set of them
+     * 
+     * @param person1 first person
+     * @param person2 second person
+     * 
+     * @return int number of mutual friends
+     */
+    public int countMutualNeighbors(Person person1, Person person2);
+        
     /**
      * Returns the Person object fora specified username if it exists
      * 
@@ -88,6 +135,7 @@ public interface GraphADT {
 
     /**
      * Returns the number of edges in this graph.
+     * Every undirected friendship is counted once.
      * 
      * @return number of edges in the graph.
      */
@@ -0,0 +1,1582 @@
+package application;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simple timing harness for the social network data structures.
+ *
+ * Run with the name of a benchmark followed by its arguments, e.g.
+ * "java application.GraphBenchmark load 100000 1000000 5000000"
+ *
+ * @author samsoncain
+ */
+public class GraphBenchmark {
+
+  /**
+   * Results of measured reads are stored here so the JIT cannot drop the reads
+   */
+  private static volatile long sink;
+
+  /**
+   * Runs the benchmark named by the first argument
+   *
+   * @param args benchmark name followed by its arguments
+   */
+  public static void main(String[] args) {
+    String name = args.length > 0 ? args[0] : "load";
+
+    switch (name) {
+      case "load":
+        loadUsers(sizes(args, 100_000, 1_000_000, 5_000_000));
+        break;
+      case "hub":
+        hubEdges(sizes(args, 10_000, 50_000));
+        break;
+      case "backend":
+        int[] backend = sizes(args, 1_000_000, 20_000_000);
+        compareBackends(backend[0], backend[1]);
+        break;
+      case "concurrent":
+        concurrentThroughput(sizes(args, 1, 4, 16, 64));
+        break;
+      case "alloc":
+        friendReadAllocation(sizes(args, 100_000)[0]);
+        break;
+      case "gc":
+        int[] gc = sizes(args, 1_000_000, 10_000_000);
+        gcPauses(gc[0], gc[1]);
+        break;
+      case "bulkload":
+        bulkLoad(sizes(args, 5_000_000)[0]);
+        break;
+      case "mapped":
+        mappedLoad(sizes(args, 2048)[0]);
+        break;
+      case "snapshot":
+        int[] snapshot = sizes(args, 1_000_000, 20_000_000);
+        snapshotSize(snapshot[0], snapshot[1]);
+        break;
+      case "open":
+        int[] open = sizes(args, 1_000_000, 10_000_000);
+        mappedOpen(open[0], open[1]);
+        break;
+      case "wal":
+        mutationLog(sizes(args, 0, 10, 100));
+        break;
+      case "path":
+        int[] path = sizes(args, 1_000_000, 10_000_000, 1_000);
+        pathLatency(path[0], path[1], path.length > 2 ? path[2] : 1_000);
+        break;
+      case "distances":
+        int[] distances = sizes(args, 1_000_000, 10_000_000, 100_000);
+        batchedDistances(distances[0], distances[1], distances.length > 2 ? distances[2] : 100_000);
+        break;
+      case "components":
+        int[] components = sizes(args, 1_000_000, 1_000_000);
+        componentMaintenance(components[0], components[1]);
+        break;
+      case "recommend":
+        int[] recommend = sizes(args, 200_000, 2_000_000);
+        recommendations(recommend[0], recommend[1]);
+        break;
+      case "mutual":
+        mutualFriends(sizes(args, 100_000)[0]);
+        break;
+      case "triangles":
+        int[] triangles = sizes(args, 1_000_000, 20_000_000);
+        triangleCount(triangles[0], triangles[1]);
+        break;
+      case "neighborhood":
+        int[] neighborhood = sizes(args, 1_000_000, 10_000_000);
+        neighborhoodLatency(neighborhood[0], neighborhood[1]);
+        break;
+      case "communities":
+        communityDetection(sizes(args, 1_000_000, 10_000_000));
+        break;
+      case "pagerank":
+        int[] pagerank = sizes(args, 1_000_000, 10_000_000);
+        influenceRanking(pagerank[0], pagerank[1]);
+        break;
+      case "compact":
+        int[] compact = sizes(args, 5_000_000, 100_000);
+        compactLog(compact[0], compact.length > 1 ? compact[1] : 100_000);
+        break;
+      default:
+        System.out.println("Unknown benchmark: " + name);
+    }
+  }
+
+  /**
+   * Adds n users through SocialNetwork.addUser for every requested n and prints
+   * the total and per-user time. With the username index the per-user time
+   * should stay flat as n grows (linear total), where the old getNode scan
+   * made it grow with n (quadratic total).
+   *
+   * @param sizes numbers of users to load
+   */
+  private static void loadUsers(int[] sizes) {
+    for (int n : sizes) {
+      SocialNetwork network = new SocialNetwork();
+
+      long start = System.nanoTime();
+      try {
+        for (int i = 0; i < n; i++) {
+          network.addUser("user" + i);
+        }
+      } catch (InvalidUsernameException | UserAlreadyExistsException e) {
+        System.out.println(e);
+        return;
+      }
+      long elapsed = System.nanoTime() - start;
+
+      System.out.printf("load %,d users: %,d ms (%.1f ns/user)%n", n, elapsed / 1_000_000,
+          (double) elapsed / n);
+    }
+  }
+
+  /**
+   * Gives one hub person n friends and then removes them again, once for every
+   * AdjacencyStore, and prints how long the adds and removes took.
+   *
+   * @param sizes numbers of friends to give the hub
+   */
+  private static void hubEdges(int[] sizes) {
+    for (int n : sizes) {
+      for (AdjacencyStore store : AdjacencyStore.values()) {
+        Graph graph = new Graph(store);
+        Person hub = Person.of("hub");
+        Person[] friends = new Person[n];
+
+        graph.addNode(hub);
+        for (int i = 0; i < n; i++) {
+          friends[i] = Person.of("user" + i);
+          graph.addNode(friends[i]);
+        }
+
+        long start = System.nanoTime();
+        for (Person friend : friends) {
+          graph.addEdge(hub, friend);
+        }
+        long added = System.nanoTime();
+        for (Person friend : friends) {
+          graph.removeEdge(hub, friend);
+        }
+        long removed = System.nanoTime();
+
+        System.out.printf("%s hub with %,d friends: add %,d ms, remove %,d ms%n", store, n,
+            (added - start) / 1_000_000, (removed - added) / 1_000_000);
+      }
+    }
+  }
+
+  /**
+   * Loads the same random graph into a Graph with hash set friends, a Graph
+   * with friend ID sets and a CompressedGraph and prints the heap each one
+   * retains and how fast getNeighbors reads from it.
+   *
+   * @param users number of users
+   * @param edges number of random friendships
+   */
+  private static void compareBackends(int users, int edges) {
+    // people are interned, create them up front so only the first backend
+    // would otherwise pay for them
+    for (int i = 0; i < users; i++) {
+      Person.of("user" + i);
+    }
+
+    // create each backend only when it is measured so the others are not
+    // counted in its heap usage
+    measureBackend("Graph LINKED_HASH_SET", new Graph(AdjacencyStore.LINKED_HASH_SET), users,
+        edges);
+    measureBackend("Graph INT_HASH_SET", new Graph(AdjacencyStore.INT_HASH_SET), users, edges);
+    measureBackend("CompressedGraph", new CompressedGraph(), users, edges);
+    measureBackend("OffHeapGraph", new OffHeapGraph(), users, edges);
+  }
+
+  /**
+   * Loads a random graph into one backend and prints its retained heap and
+   * getNeighbors throughput
+   *
+   * @param name  name to print
+   * @param graph empty backend to measure
+   * @param users number of users
+   * @param edges number of random friendships
+   */
+  private static void measureBackend(String name, GraphADT graph, int users, int edges) {
+    long before = usedHeap();
+
+    long start = System.nanoTime();
+    Person[] persons = randomGraph(graph, users, edges, 42);
+    if (graph instanceof CompressedGraph) {
+      ((CompressedGraph) graph).compact();
+    }
+    long loaded = System.nanoTime();
+
+    long retained = usedHeap() - before;
+
+    Random random = new Random(7);
+    long friends = 0;
+    long readStart = System.nanoTime();
+    for (int i = 0; i < users; i++) {
+      friends += graph.getNeighbors(persons[random.nextInt(users)]).size();
+    }
+    long readEnd = System.nanoTime();
+
+    System.out.printf("%s: load %,d ms, heap %,d MB (%.1f bytes/edge), %,.0f reads/s (%,d friends)%n",
+        name, (loaded - start) / 1_000_000, retained >> 20,
+        (double) retained / edges, users * 1e9 / (readEnd - readStart), friends);
+  }
+
+  /**
+   * Loads the same random graph into a Graph and an OffHeapGraph and, with each
+   * one loaded, times full collections and counts the collections and GC time
+   * of a read workload that allocates, printing both
+   *
+   * @param users number of users
+   * @param edges number of random friendships
+   */
+  private static void gcPauses(int users, int edges) {
+    for (int i = 0; i < users; i++) {
+      Person.of("user" + i);
+    }
+    measurePauses("Graph", new Graph(), users, edges);
+    measurePauses("OffHeapGraph", new OffHeapGraph(), users, edges);
+  }
+
+  /**
+   * Loads a random graph into one backend and prints its GC pauses, see
+   * gcPauses
+   *
+   * @param name  name to print
+   * @param graph empty backend to measure
+   * @param users number of users
+   * @param edges number of random friendships
+   */
+  private static void measurePauses(String name, GraphADT graph, int users, int edges) {
+    Person[] persons = randomGraph(graph, users, edges, 42);
+    long before = usedHeap();
+
+    long fullGc = Long.MAX_VALUE;
+    for (int i = 0; i < 5; i++) {
+      long start = System.nanoTime();
+      System.gc();
+      fullGc = Math.min(fullGc, System.nanoTime() - start);
+    }
+
+    List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    long collections = 0;
+    long gcMillis = 0;
+    for (GarbageCollectorMXBean collector : collectors) {
+      collections -= collector.getCollectionCount();
+      gcMillis -= collector.getCollectionTime();
+    }
+
+    // mutual friend sets and their iterators are short-lived garbage
+    Random random = new Random(7);
+    long start = System.nanoTime();
+    int reads = 2_000_000;
+    for (int i = 0; i < reads; i++) {
+      Person person1 = persons[random.nextInt(users)];
+      Person person2 = persons[random.nextInt(users)];
+      sink += graph.getMutualNeighbors(person1, person2).size();
+      for (Person friend : graph.getNeighbors(person1)) {
+        sink += friend.getUsername().length();
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+
+    for (GarbageCollectorMXBean collector : collectors) {
+      collections += collector.getCollectionCount();
+      gcMillis += collector.getCollectionTime();
+    }
+    System.out.printf("%s: heap %,d MB, full GC %,d ms, workload %,d ms with %d collections"
+        + " taking %,d ms (%.2f ms each)%n", name, before >> 20, fullGc / 1_000_000,
+        elapsed / 1_000_000, collections, gcMillis, (double) gcMillis / Math.max(1, collections));
+  }
+
+  /**
+   * Adds users people and edges random friendships to graph
+   *
+   * @param graph graph to fill
+   * @param users number of users
+   * @param edges number of random friendships
+   * @param seed  random seed
+   *
+   * @return Person[] every person that was added
+   */
+  private static Person[] randomGraph(GraphADT graph, int users, int edges, long seed) {
+    Random random = new Random(seed);
+    Person[] persons = new Person[users];
+
+    for (int i = 0; i < users; i++) {
+      persons[i] = Person.of("user" + i);
+      graph.addNode(persons[i]);
+    }
+    for (int i = 0; i < edges; i++) {
+      graph.addEdge(persons[random.nextInt(users)], persons[random.nextInt(users)]);
+    }
+
+    return persons;
+  }
+
+  /**
+   * Returns the heap in use after asking for a garbage collection
+   *
+   * @return long bytes of heap in use
+   */
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  /**
+   * Runs a mixed read/write workload against a ConcurrentSocialNetwork and
+   * against a SocialNetwork behind one global lock, at every thread count, and
+   * prints operations per second. Afterwards every friendship is checked to be
+   * symmetric, and the two deterministic stress checks are run at the same
+   * thread count.
+   *
+   * @param threadCounts numbers of threads to run with
+   */
+  private static void concurrentThroughput(int[] threadCounts) {
+    int users = 100_000;
+    long millis = 2_000;
+
+    for (int threads : threadCounts) {
+      SocialNetwork global = new SocialNetwork();
+      ConcurrentSocialNetwork striped = new ConcurrentSocialNetwork();
+      fillNetwork(global, users, users * 10);
+      fillNetwork(striped, users, users * 10);
+
+      double globalRate = runWorkload(global, true, users, threads, millis);
+      double stripedRate = runWorkload(striped, false, users, threads, millis);
+
+      System.out.printf("%d threads: global lock %,.0f ops/s, striped %,.0f ops/s, consistent %b%n",
+          threads, globalRate, stripedRate, symmetric(striped));
+      System.out.printf("%d threads: disjoint writes exact %b, removals clean %b%n",
+          threads, disjointWrites(threads), removalsClean(threads));
+    }
+  }
+
+  /**
+   * A stress check step run by every thread
+   */
+  private interface StressTask {
+    void run(int thread) throws UserNotFoundException;
+  }
+
+  /**
+   * Runs a task on several threads at once and waits for all of them
+   *
+   * @param threads number of threads
+   * @param task    task to run, gets the index of its thread
+   *
+   * @return true if no thread threw
+   */
+  private static boolean runConcurrently(int threads, StressTask task) {
+    AtomicLong failures = new AtomicLong();
+    Thread[] workers = new Thread[threads];
+
+    for (int t = 0; t < threads; t++) {
+      int thread = t;
+      workers[t] = new Thread(() -> {
+        try {
+          task.run(thread);
+        } catch (UserNotFoundException | RuntimeException e) {
+          failures.incrementAndGet();
+        }
+      });
+      workers[t].start();
+    }
+
+    for (Thread worker : workers) {
+      try {
+        worker.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    return failures.get() == 0;
+  }
+
+  /**
+   * Has every thread add its own share of a fixed list of distinct friendships
+   * to a ConcurrentSocialNetwork and remove every third of them again. The
+   * shares are disjoint but their users overlap, so the stripes are contended.
+   * Every add and remove must report a change, and afterwards every friend set
+   * must be exactly the expected one.
+   *
+   * @param threads number of threads
+   *
+   * @return true if the final friendships are exactly the expected ones
+   */
+  private static boolean disjointWrites(int threads) {
+    int users = 10_000;
+    int edges = 200_000;
+    ConcurrentSocialNetwork network = new ConcurrentSocialNetwork();
+    fillNetwork(network, users, 0);
+
+    // distinct random friendships, friendship i belongs to thread i % threads
+    Random random = new Random(7);
+    Set<Long> seen = new HashSet<Long>();
+    int[] from = new int[edges];
+    int[] to = new int[edges];
+    for (int i = 0; i < edges; i++) {
+      do {
+        from[i] = random.nextInt(users);
+        to[i] = random.nextInt(users);
+      } while (!seen.add((long) Math.min(from[i], to[i]) * users + Math.max(from[i], to[i])));
+    }
+
+    AtomicLong unchanged = new AtomicLong();
+    boolean ran = runConcurrently(threads, thread -> {
+      for (int i = thread; i < edges; i += threads) {
+        if (!network.addFriend("user" + from[i], "user" + to[i])) {
+          unchanged.incrementAndGet();
+        }
+      }
+      for (int i = thread; i < edges; i += threads * 3) {
+        if (!network.removeFriend("user" + from[i], "user" + to[i])) {
+          unchanged.incrementAndGet();
+        }
+      }
+    });
+
+    // friendship i is removed exactly when i % (threads * 3) < threads
+    List<Set<Person>> expected = new ArrayList<Set<Person>>();
+    for (int i = 0; i < users; i++) {
+      expected.add(new HashSet<Person>());
+    }
+    for (int i = 0; i < edges; i++) {
+      if (i % (threads * 3) >= threads) {
+        expected.get(from[i]).add(Person.of("user" + to[i]));
+        expected.get(to[i]).add(Person.of("user" + from[i]));
+      }
+    }
+
+    try {
+      for (int i = 0; i < users; i++) {
+        if (!expected.get(i).equals(network.getFriendsView("user" + i))) {
+          return false;
+        }
+      }
+    } catch (UserNotFoundException e) {
+      return false;
+    }
+    return ran && unchanged.get() == 0;
+  }
+
+  /**
+   * Removes a fixed set of users from a ConcurrentSocialNetwork while the other
+   * threads keep befriending those same users with random others. Afterwards
+   * the removed users must be gone and no friend set may still reference one
+   * of them.
+   *
+   * @param threads number of threads, one of them removes and the rest add
+   *
+   * @return true if no remaining friend set references a removed user
+   */
+  private static boolean removalsClean(int threads) {
+    int users = 10_000;
+    int victims = 1_000;
+    ConcurrentSocialNetwork network = new ConcurrentSocialNetwork();
+    fillNetwork(network, users, users * 10);
+
+    // the first victims users are removed, each gets befriended until it is gone
+    boolean ran = runConcurrently(Math.max(2, threads), thread -> {
+      if (thread == 0) {
+        for (int i = 0; i < victims; i++) {
+          network.removeUser("user" + i);
+        }
+        return;
+      }
+      Random random = new Random(thread);
+      for (int i = 0; i < victims; i++) {
+        try {
+          while (true) {
+            network.addFriend("user" + i, "user" + random.nextInt(users));
+          }
+        } catch (UserNotFoundException e) {
+          // the victim was removed, or the random other one was
+        }
+      }
+    });
+
+    Set<Person> removed = new HashSet<Person>();
+    for (int i = 0; i < victims; i++) {
+      removed.add(Person.of("user" + i));
+    }
+
+    try {
+      for (Person person : network.getAllUsers()) {
+        if (removed.contains(person)) {
+          return false;
+        }
+        for (Person friend : network.getFriendsView(person.getUsername())) {
+          if (removed.contains(friend)) {
+            return false;
+          }
+        }
+      }
+    } catch (UserNotFoundException e) {
+      return false;
+    }
+    return ran && network.getAllUsers().size() == users - victims && symmetric(network);
+  }
+
+  /**
+   * Runs the mixed workload on several threads for a fixed time
+   *
+   * @param network   network to run against
+   * @param serialize true to run every operation while holding the network's monitor
+   * @param users     number of users in the network
+   * @param threads   number of threads
+   * @param millis    how long to run
+   *
+   * @return double operations per second over all threads
+   */
+  private static double runWorkload(SocialNetworkADT network, boolean serialize, int users,
+      int threads, long millis) {
+    AtomicLong operations = new AtomicLong();
+    long deadline = System.nanoTime() + millis * 1_000_000;
+    Thread[] workers = new Thread[threads];
+
+    for (int t = 0; t < threads; t++) {
+      long seed = t;
+      workers[t] = new Thread(() -> {
+        Random random = new Random(seed);
+        long count = 0;
+        while (System.nanoTime() < deadline) {
+          if (serialize) {
+            synchronized (network) {
+              mixedOperation(network, random, users);
+            }
+          } else {
+            mixedOperation(network, random, users);
+          }
+          count++;
+        }
+        operations.addAndGet(count);
+      });
+      workers[t].start();
+    }
+
+    for (Thread worker : workers) {
+      try {
+        worker.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    return operations.get() * 1000.0 / millis;
+  }
+
+  /**
+   * Runs one random operation: mostly reads, some friendship changes and a few
+   * users removed and added back
+   *
+   * @param network network to run against
+   * @param random  random source of the calling thread
+   * @param users   number of users in the network
+   */
+  private static void mixedOperation(SocialNetworkADT network, Random random, int users) {
+    String user1 = "user" + random.nextInt(users);
+    String user2 = "user" + random.nextInt(users);
+    int op = random.nextInt(100);
+
+    try {
+      if (op < 50) {
+        network.getFriendsOf(user1);
+      } else if (op < 75) {
+        network.getMutualFriends(user1, user2);
+      } else if (op < 88) {
+        network.addFriend(user1, user2);
+      } else if (op < 98) {
+        network.removeFriend(user1, user2);
+      } else {
+        network.removeUser(user1);
+        network.addUser(user1);
+      }
+    } catch (UserNotFoundException | InvalidUsernameException | UserAlreadyExistsException e) {
+      // another thread removed or re-added the user first
+    }
+  }
+
+  /**
+   * Adds users users and edges random friendships to a network
+   *
+   * @param network network to fill
+   * @param users   number of users
+   * @param edges   number of random friendships
+   */
+  private static void fillNetwork(SocialNetworkADT network, int users, int edges) {
+    Random random = new Random(42);
+    try {
+      for (int i = 0; i < users; i++) {
+        network.addUser("user" + i);
+      }
+      for (int i = 0; i < edges; i++) {
+        network.addFriend("user" + random.nextInt(users), "user" + random.nextInt(users));
+      }
+    } catch (InvalidUsernameException | UserAlreadyExistsException | UserNotFoundException e) {
+      System.out.println(e);
+    }
+  }
+
+  /**
+   * Checks that every friendship in a network goes both ways
+   *
+   * @param network network to check
+   *
+   * @return true if all friendships are symmetric
+   */
+  private static boolean symmetric(SocialNetworkADT network) {
+    try {
+      for (Person person : network.getAllUsers()) {
+        for (Person friend : network.getFriendsOf(person.getUsername())) {
+          if (!network.getFriendsOf(friend.getUsername()).contains(person)) {
+            return false;
+          }
+        }
+      }
+    } catch (UserNotFoundException e) {
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Prints the bytes allocated per friend list read for the old copying path
+   * (LinkedList store, getNeighbors copy plus getFriendsOf copy), getFriendsOf
+   * and the zero-copy getFriendsView.
+   *
+   * @param users number of users, each gets about 20 friends
+   */
+  private static void friendReadAllocation(int users) {
+    SocialNetwork linkedList = new SocialNetwork(new Graph(AdjacencyStore.LINKED_LIST));
+    SocialNetwork hashSet = new SocialNetwork();
+    ConcurrentSocialNetwork concurrent = new ConcurrentSocialNetwork();
+    fillNetwork(linkedList, users, users * 10);
+    fillNetwork(hashSet, users, users * 10);
+    fillNetwork(concurrent, users, users * 10);
+
+    String[] names = new String[users];
+    for (int i = 0; i < users; i++) {
+      names[i] = "user" + i;
+    }
+
+    System.out.printf("LinkedList getFriendsOf: %.1f bytes/op%n",
+        bytesPerRead(names, user -> linkedList.getFriendsOf(user).size()));
+    System.out.printf("SocialNetwork getFriendsOf: %.1f bytes/op%n",
+        bytesPerRead(names, user -> hashSet.getFriendsOf(user).size()));
+    System.out.printf("SocialNetwork getFriendsView: %.1f bytes/op%n",
+        bytesPerRead(names, user -> hashSet.getFriendsView(user).size()));
+    System.out.printf("ConcurrentSocialNetwork getFriendsOf: %.1f bytes/op%n",
+        bytesPerRead(names, user -> concurrent.getFriendsOf(user).size()));
+    System.out.printf("ConcurrentSocialNetwork getFriendsView: %.1f bytes/op%n",
+        bytesPerRead(names, user -> concurrent.getFriendsView(user).size()));
+  }
+
+  /**
+   * A friend list read that returns the number of friends
+   */
+  private interface FriendRead {
+    int read(String user) throws UserNotFoundException;
+  }
+
+  /**
+   * Runs a read for every name a few times and returns the bytes the current
+   * thread allocated per read in the last round
+   *
+   * @param names usernames to read
+   * @param read  the read to measure
+   *
+   * @return double bytes allocated per read
+   */
+  private static double bytesPerRead(String[] names, FriendRead read) {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    long bytes = 0;
+    long friends = 0;
+
+    try {
+      // earlier rounds warm up the JIT so escape analysis is in effect
+      for (int round = 0; round < 5; round++) {
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (String name : names) {
+          friends += read.read(name);
+        }
+        bytes = threads.getThreadAllocatedBytes(threadId) - before;
+      }
+    } catch (UserNotFoundException e) {
+      System.out.println(e);
+    }
+
+    sink = friends;
+    return (double) bytes / names.length;
+  }
+
+  /**
+   * Writes a synthetic network file and loads it with loadNetworkFromFile and
+   * with the bulk loader, printing lines per second for both and whether they
+   * built the same graph
+   *
+   * @param lines number of lines in the file
+   */
+  private static void bulkLoad(int lines) {
+    try {
+      File file = File.createTempFile("network", ".txt");
+      file.deleteOnExit();
+      writeSyntheticNetwork(file, lines, Math.max(10, lines / 20), 42);
+
+      SocialNetwork sequential = new SocialNetwork();
+      long start = System.nanoTime();
+      sequential.loadNetworkFromFile(file);
+      long elapsed = System.nanoTime() - start;
+      System.out.printf("loadNetworkFromFile: %,.0f lines/s%n", lines * 1e9 / elapsed);
+
+      SocialNetwork bulk = new SocialNetwork();
+      System.out.printf("bulkLoadNetworkFromFile: %,.0f lines/s%n", bulk.bulkLoadNetworkFromFile(file));
+
+      System.out.println("same graph: " + sameNetwork(sequential, bulk));
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Writes a synthetic network file of about the given size and loads it with
+   * loadNetworkFromFile and with the memory-mapped loader, printing the time
+   * and lines per second of both
+   *
+   * @param megabytes approximate file size in MB
+   */
+  private static void mappedLoad(int megabytes) {
+    try {
+      File file = File.createTempFile("network", ".txt");
+      file.deleteOnExit();
+
+      // synthetic lines average a little over 20 bytes
+      long lines = megabytes * (1L << 20) / 20;
+      writeSyntheticNetwork(file, lines, (int) Math.max(10, Math.min(lines / 20, 10_000_000)), 42);
+      System.out.printf("file: %,d MB%n", file.length() >> 20);
+
+      SocialNetwork reader = new SocialNetwork();
+      long start = System.nanoTime();
+      reader.loadNetworkFromFile(file);
+      long elapsed = System.nanoTime() - start;
+      System.out.printf("loadNetworkFromFile: %,d ms, %,.0f lines/s%n", elapsed / 1_000_000,
+          lines * 1e9 / elapsed);
+      reader = null;
+
+      SocialNetwork mapped = new SocialNetwork();
+      start = System.nanoTime();
+      double rate = mapped.mappedLoadNetworkFromFile(file);
+      elapsed = System.nanoTime() - start;
+      System.out.printf("mappedLoadNetworkFromFile: %,d ms, %,.0f lines/s%n", elapsed / 1_000_000, rate);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Saves the same random network as a text file (one "a" line per user and per
+   * friendship) and as a binary snapshot, then prints both file sizes and load
+   * times
+   *
+   * @param users number of users
+   * @param edges number of random friendships
+   */
+  private static void snapshotSize(int users, int edges) {
+    try {
+      File text = File.createTempFile("network", ".txt");
+      File binary = File.createTempFile("network", ".snet");
+      text.deleteOnExit();
+      binary.deleteOnExit();
+
+      Graph graph = new Graph();
+      randomGraph(graph, users, edges, 42);
+      SocialNetwork original = new SocialNetwork(graph);
+      writeGraphAsText(graph, text);
+      original.saveSnapshot(binary);
+      original = null;
+      graph = null;
+
+      SocialNetwork fromText = new SocialNetwork();
+      long start = System.nanoTime();
+      fromText.bulkLoadNetworkFromFile(text);
+      long textTime = System.nanoTime() - start;
+
+      SocialNetwork fromSnapshot = new SocialNetwork();
+      start = System.nanoTime();
+      fromSnapshot.loadSnapshot(binary);
+      long snapshotTime = System.nanoTime() - start;
+
+      System.out.printf("text: %,d bytes, bulk load %,d ms%n", text.length(), textTime / 1_000_000);
+      System.out.printf("snapshot: %,d bytes, load %,d ms%n", binary.length(),
+          snapshotTime / 1_000_000);
+      System.out.println("same graph: " + sameNetwork(fromText, fromSnapshot));
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Saves the same random network as a binary snapshot and as a MappedGraph
+   * directory, then prints the time to load the snapshot, to open the mapped
+   * network and answer its first getFriendsOf, and to merge a batch of
+   * friendships into a new generation
+   *
+   * @param users number of users
+   * @param edges number of random friendships
+   */
+  private static void mappedOpen(int users, int edges) {
+    try {
+      File binary = File.createTempFile("network", ".snet");
+      File directory = new File(Files.createTempDirectory("network").toFile(), "mapped");
+      binary.deleteOnExit();
+
+      Graph graph = new Graph();
+      Person[] persons = randomGraph(graph, users, edges, 42);
+      SocialNetwork original = new SocialNetwork(graph);
+      original.saveSnapshot(binary);
+      original.saveMappedNetwork(directory);
+      String user = persons[users / 2].getUsername();
+
+      SocialNetwork fromSnapshot = new SocialNetwork();
+      long start = System.nanoTime();
+      fromSnapshot.loadSnapshot(binary);
+      fromSnapshot.getFriendsOf(user);
+      long snapshotTime = System.nanoTime() - start;
+      fromSnapshot = null;
+
+      start = System.nanoTime();
+      SocialNetwork mapped = SocialNetwork.openMappedNetwork(directory);
+      long openTime = System.nanoTime() - start;
+      sink += mapped.getFriendsOf(user).size();
+      long firstReadTime = System.nanoTime() - start - openTime;
+
+      Random random = new Random(7);
+      String[] pairs = new String[20_000];
+      for (int i = 0; i < pairs.length; i++) {
+        pairs[i] = persons[random.nextInt(users)].getUsername();
+      }
+      start = System.nanoTime();
+      for (int i = 0; i < pairs.length; i += 2) {
+        mapped.addFriend(pairs[i], pairs[i + 1]);
+      }
+      long mutateTime = System.nanoTime() - start;
+      for (int i = 0; i < pairs.length; i += 2) {
+        original.addFriend(pairs[i], pairs[i + 1]);
+      }
+      start = System.nanoTime();
+      mapped.close();
+      long mergeTime = System.nanoTime() - start;
+
+      System.out.printf("snapshot load + first read: %,d ms%n", snapshotTime / 1_000_000);
+      System.out.printf("mapped open: %.3f ms, first read %.3f ms%n", openTime / 1e6,
+          firstReadTime / 1e6);
+      System.out.printf("10,000 friendships into the delta: %,d ms, merge: %,d ms%n",
+          mutateTime / 1_000_000, mergeTime / 1_000_000);
+      System.out.println("same graph: " + sameNetwork(original, mapped));
+    } catch (IOException | UserNotFoundException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Runs friendship mutations against a durable SocialNetwork for every fsync
+   * interval and prints mutations per second, then recovers the network from
+   * its log directory and checks it matches
+   *
+   * @param intervals fsync intervals in milliseconds
+   */
+  private static void mutationLog(int[] intervals) {
+    int users = 10_000;
+    int mutations = 200_000;
+
+    for (int interval : intervals) {
+      try {
+        File directory = Files.createTempDirectory("network").toFile();
+        SocialNetwork durable = new SocialNetwork(new Graph(), directory, interval, 100_000);
+        Random random = new Random(42);
+
+        long start = System.nanoTime();
+        // fsync per mutation is slow, so run fewer of them
+        int count = interval == 0 ? mutations / 100 : mutations;
+        for (int i = 0; i < users; i++) {
+          durable.addUser("user" + i);
+        }
+        for (int i = 0; i < count; i++) {
+          String user1 = "user" + random.nextInt(users);
+          String user2 = "user" + random.nextInt(users);
+          if (random.nextInt(4) == 0) {
+            durable.removeFriend(user1, user2);
+          } else {
+            durable.addFriend(user1, user2);
+          }
+        }
+        durable.close();
+        long elapsed = System.nanoTime() - start;
+
+        SocialNetwork recovered = new SocialNetwork(new Graph(), directory, interval, 100_000);
+        recovered.close();
+
+        System.out.printf("fsync every %d ms: %,.0f mutations/s, recovered same graph: %b%n",
+            interval, (users + count) * 1e9 / elapsed, sameNetwork(durable, recovered));
+      } catch (IOException | InvalidUsernameException | UserAlreadyExistsException
+          | UserNotFoundException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+  /**
+   * Asks for the distances of random (source, target) pairs of a random
+   * network, with every source asked about many targets, and prints pairs per
+   * second of bit-parallel BFS (64 sources per pass) against one BFS per
+   * source, and whether both gave the same distances
+   *
+   * @param users number of users
+   * @param edges number of random friendships
+   * @param pairs number of pairs
+   */
+  private static void batchedDistances(int users, int edges, int pairs) {
+    Graph graph = new Graph();
+    Person[] persons = randomGraph(graph, users, edges, 42);
+    Random random = new Random(7);
+
+    // "distance from X to each of these Y", 100 targets per source
+    Person[] sources = new Person[pairs];
+    Person[] targets = new Person[pairs];
+    for (int i = 0; i < pairs; i++) {
+      sources[i] = i % 100 == 0 ? persons[random.nextInt(users)] : sources[i - 1];
+      targets[i] = persons[random.nextInt(users)];
+    }
+
+    long start = System.nanoTime();
+    int[] batched = new MultiSourceBfs(graph).distances(sources, targets);
+    long batchedTime = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    int[] sequential = new MultiSourceBfs(graph, 1).distances(sources, targets);
+    long sequentialTime = System.nanoTime() - start;
+
+    System.out.printf("64 sources per pass: %,.0f pairs/s%n", pairs * 1e9 / batchedTime);
+    System.out.printf("1 source per pass: %,.0f pairs/s%n", pairs * 1e9 / sequentialTime);
+    System.out.printf("speedup: %.1fx, same distances: %b%n", (double) sequentialTime / batchedTime,
+        Arrays.equals(batched, sequential));
+  }
+
+  /**
+   * Computes the connected components of a random network in parallel and with
+   * a plain sequential BFS, then times incremental updates for random
+   * friendship additions and removals and checks the count still matches a
+   * BFS
+   *
+   * @param users number of users
+   * @param edges number of random friendships
+   */
+  private static void componentMaintenance(int users, int edges) {
+    Graph graph = new Graph();
+    Person[] persons = randomGraph(graph, users, edges, 42);
+
+    long start = System.nanoTime();
+    int parallel = graph.getComponentCount();
+    long parallelTime = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    int sequential = countComponents(graph);
+    long sequentialTime = System.nanoTime() - start;
+    System.out.printf("parallel union-find: %,d components in %,d ms%n", parallel,
+        parallelTime / 1_000_000);
+    System.out.printf("sequential BFS: %,d components in %,d ms%n", sequential,
+        sequentialTime / 1_000_000);
+
+    Random random = new Random(7);
+    int updates = 10_000;
+    start = System.nanoTime();
+    for (int i = 0; i < updates; i++) {
+      graph.addEdge(persons[random.nextInt(users)], persons[random.nextInt(users)]);
+    }
+    long addTime = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    for (int i = 0; i < updates; i++) {
+      Person person = persons[random.nextInt(users)];
+      for (Person friend : graph.getNeighbors(person)) {
+        graph.removeEdge(person, friend);
+        break;
+      }
+    }
+    long removeTime = System.nanoTime() - start;
+
+    System.out.printf("addEdge: %,.0f ns, removeEdge: %,.0f ns per update%n",
+        (double) addTime / updates, (double) removeTime / updates);
+    System.out.println("count still matches BFS: "
+        + (graph.getComponentCount() == countComponents(graph)));
+  }
+
+  /**
+   * Counts connected components with a sequential BFS from every unseen person
+   *
+   * @param graph graph to count
+   *
+   * @return int number of components
+   */
+  private static int countComponents(GraphADT graph) {
+    Set<Person> seen = new HashSet<Person>();
+    int count = 0;
+    for (Person person : graph.getAllNodes()) {
+      if (!seen.add(person)) {
+        continue;
+      }
+      count++;
+      Queue<Person> queue = new ArrayDeque<Person>();
+      queue.add(person);
+      while (!queue.isEmpty()) {
+        for (Person friend : graph.getNeighbors(queue.poll())) {
+          if (seen.add(friend)) {
+            queue.add(friend);
+          }
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Recommends 10 people to random users of a random network with the
+   * FriendRecommender and with getFriendsOf plus getMutualFriends per
+   * candidate, printing queries per second of both, then times the parallel
+   * batch over all users
+   *
+   * @param users number of users
+   * @param edges number of random friendships
+   */
+  private static void recommendations(int users, int edges) {
+    Graph graph = new Graph();
+    randomGraph(graph, users, edges, 42);
+    SocialNetwork network = new SocialNetwork(graph);
+    Random random = new Random(7);
+    int queries = 2_000;
+
+    try {
+      long start = System.nanoTime();
+      for (int i = 0; i < queries; i++) {
+        sink += network.getRecommendations("user" + random.nextInt(users), 10).size();
+      }
+      long recommenderTime = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      for (int i = 0; i < queries; i++) {
+        String user = "user" + random.nextInt(users);
+        List<Person> friends = network.getFriendsOf(user);
+        Set<String> seen = new HashSet<String>();
+        for (Person friend : friends) {
+          for (Person candidate : network.getFriendsOf(friend.getUsername())) {
+            if (seen.add(candidate.getUsername())) {
+              sink += network.getMutualFriends(user, candidate.getUsername()).size();
+            }
+          }
+        }
+      }
+      long naiveTime = System.nanoTime() - start;
+
+      System.out.printf("FriendRecommender: %,.0f queries/s%n", queries * 1e9 / recommenderTime);
+      System.out.printf("getFriendsOf + getMutualFriends: %,.0f queries/s%n",
+          queries * 1e9 / naiveTime);
+    } catch (UserNotFoundException e) {
+      e.printStackTrace();
+    }
+
+    long start = System.nanoTime();
+    int computed = network.getAllRecommendations(10).size();
+    long batchTime = System.nanoTime() - start;
+    System.out.printf("getAllRecommendations: %,d users in %,d ms%n", computed,
+        batchTime / 1_000_000);
+  }
+
+  /**
+   * Finds the first 20 users within 3 hops of random users with the lazy
+   * getNeighborhood stream and by collecting each level through getFriendsOf,
+   * printing the average time per query of both
+   *
+   * @param users number of users
+   * @param edges number of random friendships
+   */
+  private static void neighborhoodLatency(int users, int edges) {
+    Graph graph = new Graph();
+    randomGraph(graph, users, edges, 42);
+    SocialNetwork network = new SocialNetwork(graph);
+    Random random = new Random(7);
+    int queries = 1_000;
+    int limit = 20;
+
+    try {
+      long start = System.nanoTime();
+      for (int i = 0; i < queries; i++) {
+        sink += network.getNeighborhood("user" + random.nextInt(users), 3).limit(limit).count();
+      }
+      long streamTime = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      for (int i = 0; i < queries; i++) {
+        String user = "user" + random.nextInt(users);
+        Set<String> seen = new HashSet<String>();
+        seen.add(user);
+        List<String> level = new ArrayList<String>();
+        level.add(user);
+        List<String> found = new ArrayList<String>();
+        for (int hop = 0; hop < 3; hop++) {
+          List<String> next = new ArrayList<String>();
+          for (String member : level) {
+            for (Person friend : network.getFriendsOf(member)) {
+              if (seen.add(friend.getUsername())) {
+                next.add(friend.getUsername());
+              }
+            }
+          }
+          found.addAll(next);
+          level = next;
+        }
+        sink += found.subList(0, Math.min(limit, found.size())).size();
+      }
+      long levelTime = System.nanoTime() - start;
+
+      System.out.printf("getNeighborhood limit %d: %.3f ms/query%n", limit,
+          streamTime / 1e6 / queries);
+      System.out.printf("getFriendsOf level by level: %.3f ms/query%n",
+          levelTime / 1e6 / queries);
+    } catch (UserNotFoundException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Counts the common elements of a sorted friend row of the given length and
+   * rows 1, 10, 100 and 1000 times shorter, printing nanoseconds per count for
+   * every SortedIntersection algorithm, the automatic choice and a HashSet
+   * retainAll
+   *
+   * @param length length of the longer row
+   */
+  private static void mutualFriends(int length) {
+    Random random = new Random(42);
+    int range = length * 4;
+    int[] longer = sortedSample(random, length, range);
+
+    for (int skew = 1; skew <= 1000 && length / skew > 0; skew *= 10) {
+      int[] shorter = sortedSample(random, length / skew, range);
+      Set<Integer> longerSet = new HashSet<Integer>();
+      for (int id : longer) {
+        longerSet.add(id);
+      }
+      int rounds = Math.max(10, 20_000_000 / (length + length / skew));
+
+      long[] times = new long[5];
+      for (int round = 0; round < rounds; round++) {
+        long start = System.nanoTime();
+        sink += SortedIntersection.merge(shorter, 0, shorter.length, longer, 0, length, null, 0);
+        long merged = System.nanoTime();
+        sink += SortedIntersection.gallop(shorter, 0, shorter.length, longer, 0, length, null, 0);
+        long galloped = System.nanoTime();
+        sink += SortedIntersection.blocks(shorter, 0, shorter.length, longer, 0, length, null, 0);
+        long blocked = System.nanoTime();
+        sink += SortedIntersection.count(shorter, 0, shorter.length, longer, 0, length);
+        long counted = System.nanoTime();
+        Set<Integer> mutual = new HashSet<Integer>();
+        for (int id : shorter) {
+          mutual.add(id);
+        }
+        mutual.retainAll(longerSet);
+        sink += mutual.size();
+        long hashed = System.nanoTime();
+
+        times[0] += merged - start;
+        times[1] += galloped - merged;
+        times[2] += blocked - galloped;
+        times[3] += counted - blocked;
+        times[4] += hashed - counted;
+      }
+
+      System.out.printf("%,d x %,d: merge %,d ns, gallop %,d ns, blocks %,d ns, "
+          + "count %,d ns, HashSet %,d ns%n", shorter.length, length, times[0] / rounds,
+          times[1] / rounds, times[2] / rounds, times[3] / rounds, times[4] / rounds);
+    }
+  }
+
+  /**
+   * Returns distinct random ints below range in ascending order
+   *
+   * @param random random source
+   * @param count  number of ints
+   * @param range  exclusive upper bound
+   *
+   * @return int[] sorted sample
+   */
+  private static int[] sortedSample(Random random, int count, int range) {
+    Set<Integer> sample = new HashSet<Integer>();
+    while (sample.size() < count) {
+      sample.add(random.nextInt(range));
+    }
+    int[] sorted = new int[count];
+    int i = 0;
+    for (int id : sample) {
+      sorted[i++] = id;
+    }
+    Arrays.sort(sorted);
+    return sorted;
+  }
+
+  /**
+   * Counts the triangles of a random network and prints the time, the count
+   * and the clustering coefficients
+   *
+   * @param users number of users
+   * @param edges number of random friendships
+   */
+  private static void triangleCount(int users, int edges) {
+    Graph graph = new Graph();
+    randomGraph(graph, users, edges, 42);
+    SocialNetwork network = new SocialNetwork(graph);
+
+    long start = System.nanoTime();
+    TriangleCounts counts = network.countTriangles();
+    long elapsed = System.nanoTime() - start;
+
+    System.out.printf("%,d triangles over %,d friendships in %,d ms on %d cores%n",
+        counts.getTriangleCount(), graph.size(), elapsed / 1_000_000,
+        Runtime.getRuntime().availableProcessors());
+    System.out.printf("average clustering %.6f, global clustering %.6f%n",
+        counts.getAverageClusteringCoefficient(), counts.getGlobalClusteringCoefficient());
+  }
+
+  /**
+   * Detects the communities of synthetic power-law networks with the given
+   * numbers of friendships, one user per ten friendships, printing the time,
+   * sweeps, number of communities and share of friendships inside a community
+   *
+   * @param edgeCounts numbers of friendships
+   */
+  private static void communityDetection(int[] edgeCounts) {
+    for (int edges : edgeCounts) {
+      int users = Math.max(1, edges / 10);
+      Graph graph = new Graph();
+      Person[] persons = powerLawGraph(graph, users, edges, 42);
+      SocialNetwork network = new SocialNetwork(graph);
+
+      long start = System.nanoTime();
+      Communities communities = network.detectCommunities();
+      long elapsed = System.nanoTime() - start;
+
+      long inside = 0;
+      long total = 0;
+      for (Person person : persons) {
+        int community = communities.getCommunityOf(person);
+        for (Person friend : graph.getNeighbors(person)) {
+          total++;
+          if (communities.getCommunityOf(friend) == community) {
+            inside++;
+          }
+        }
+      }
+      int largest = Arrays.stream(communities.getCommunitySizes()).max().orElse(0);
+      System.out.printf(
+          "%,d friendships: %,d ms, %d sweeps, %,d communities, largest %,d, %.1f%% inside%n",
+          edges, elapsed / 1_000_000, communities.getSweeps(), communities.getCommunityCount(),
+          largest, 100.0 * inside / Math.max(1, total));
+    }
+  }
+
+  /**
+   * Fills a graph with users and random friendships whose degrees follow a
+   * power law: low numbered users are picked far more often. Users form groups
+   * of 1000 and 80% of friendships stay inside a group, so there are
+   * communities to find.
+   *
+   * @param graph graph to fill
+   * @param users number of users, named user0 to user(users - 1)
+   * @param edges number of friendships to attempt
+   * @param seed  random seed
+   *
+   * @return Person[] the users, indexed by number
+   */
+  private static Person[] powerLawGraph(GraphADT graph, int users, int edges, long seed) {
+    Person[] persons = new Person[users];
+    for (int i = 0; i < users; i++) {
+      persons[i] = Person.of("user" + i);
+      graph.addNode(persons[i]);
+    }
+
+    Random random = new Random(seed);
+    int group = 1000;
+    for (int i = 0; i < edges; i++) {
+      // cubing a uniform number gives a Zipf-like tail
+      int from = (int) (users * Math.pow(random.nextDouble(), 3));
+      int to;
+      if (random.nextInt(10) < 8) {
+        int groupStart = from / group * group;
+        int groupSize = Math.min(group, users - groupStart);
+        to = groupStart + (int) (groupSize * Math.pow(random.nextDouble(), 3));
+      } else {
+        to = (int) (users * Math.pow(random.nextDouble(), 3));
+      }
+      graph.addEdge(persons[from], persons[to]);
+    }
+    return persons;
+  }
+
+  /**
+   * Ranks a random network by PageRank from uniform scores, then changes 0.1%
+   * of its friendships and ranks it again from the previous scores, printing
+   * the iterations and time of both
+   *
+   * @param users number of users
+   * @param edges number of random friendships
+   */
+  private static void influenceRanking(int users, int edges) {
+    Graph graph = new Graph();
+    Person[] persons = randomGraph(graph, users, edges, 42);
+    SocialNetwork network = new SocialNetwork(graph);
+
+    long start = System.nanoTime();
+    PageRank ranks = network.rankInfluence();
+    long elapsed = System.nanoTime() - start;
+    System.out.printf("cold start: %d iterations in %,d ms%n", ranks.getIterations(),
+        elapsed / 1_000_000);
+
+    Random random = new Random(7);
+    for (int i = 0; i < edges / 1000; i++) {
+      graph.addEdge(persons[random.nextInt(users)], persons[random.nextInt(users)]);
+    }
+
+    start = System.nanoTime();
+    network.rankInfluence();
+    elapsed = System.nanoTime() - start;
+    System.out.printf("warm start after %,d new friendships: %d iterations in %,d ms%n",
+        edges / 1000, ranks.getIterations(), elapsed / 1_000_000);
+  }
+
+  /**
+   * Writes a synthetic network file, compacts it offline with sort runs of the
+   * given size and prints the compaction ratio and lines per second, then loads
+   * both files and checks they build the same graph
+   *
+   * @param lines   number of lines in the file
+   * @param runSize records sorted in memory at once
+   */
+  private static void compactLog(int lines, int runSize) {
+    try {
+      File file = File.createTempFile("network", ".txt");
+      File compacted = File.createTempFile("network", ".txt");
+      file.deleteOnExit();
+      compacted.deleteOnExit();
+      writeSyntheticNetwork(file, lines, Math.max(10, lines / 20), 42);
+
+      CommandLogCompactor compactor =
+          new CommandLogCompactor(file.getAbsoluteFile().getParentFile(), runSize);
+      compactor.compact(file, compacted);
+      System.out.printf("%,d lines -> %,d lines, ratio %.1f, %,.0f lines/s%n",
+          compactor.getInputLines(), compactor.getOutputLines(), compactor.getCompactionRatio(),
+          compactor.getLinesPerSecond());
+
+      SocialNetwork original = new SocialNetwork();
+      original.bulkLoadNetworkFromFile(file);
+      SocialNetwork replayed = new SocialNetwork();
+      replayed.bulkLoadNetworkFromFile(compacted);
+      System.out.println("same graph: " + sameNetwork(original, replayed));
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Runs shortest path queries between random users of a random network with
+   * bidirectional BFS and with one-sided BFS, printing p50 and p99 latency of
+   * both and whether they always found paths of the same length
+   *
+   * @param users   number of users
+   * @param edges   number of random friendships
+   * @param queries number of queries
+   */
+  private static void pathLatency(int users, int edges, int queries) {
+    Graph graph = new Graph();
+    randomGraph(graph, users, edges, 42);
+    SocialNetwork network = new SocialNetwork(graph);
+    PathFinder finder = new PathFinder(network, graph::getNeighbors);
+    Random random = new Random(7);
+
+    long[] bidirectional = new long[queries];
+    long[] oneSided = new long[queries];
+    boolean sameLength = true;
+    try {
+      for (int i = 0; i < queries; i++) {
+        String user1 = "user" + random.nextInt(users);
+        String user2 = "user" + random.nextInt(users);
+
+        long start = System.nanoTime();
+        int length1 = finder.getShortestPath(user1, user2).size();
+        bidirectional[i] = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int length2 = finder.getShortestPathOneSided(user1, user2).size();
+        oneSided[i] = System.nanoTime() - start;
+
+        sameLength &= length1 == length2;
+        sink += length1 + length2;
+      }
+    } catch (UserNotFoundException e) {
+      e.printStackTrace();
+      return;
+    }
+
+    Arrays.sort(bidirectional);
+    Arrays.sort(oneSided);
+    System.out.printf("bidirectional BFS: p50 %,d us, p99 %,d us%n",
+        bidirectional[queries / 2] / 1000, bidirectional[queries * 99 / 100] / 1000);
+    System.out.printf("one-sided BFS: p50 %,d us, p99 %,d us%n", oneSided[queries / 2] / 1000,
+        oneSided[queries * 99 / 100] / 1000);
+    System.out.println("same path lengths: " + sameLength);
+  }
+
+  /**
+   * Writes a graph as a text network file with one "a" line per user and per
+   * friendship
+   *
+   * @param graph graph to write
+   * @param file  file to write to
+   *
+   * @throws IOException if the file cannot be written
+   */
+  private static void writeGraphAsText(GraphADT graph, File file) throws IOException {
+    try (Writer writer = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+      for (Person person : graph.getAllNodes()) {
+        writer.write("a " + person.getUsername() + "\n");
+      }
+      Set<Person> written = new HashSet<Person>();
+      for (Person person : graph.getAllNodes()) {
+        for (Person friend : graph.getNeighbors(person)) {
+          if (!written.contains(friend)) {
+            writer.write("a " + person.getUsername() + " " + friend.getUsername() + "\n");
+          }
+        }
+        written.add(person);
+      }
+    }
+  }
+
+  /**
+   * Writes a random but valid network file: users are only removed while they
+   * exist and single users are only added while they do not
+   *
+   * @param file  file to write
+   * @param lines number of lines
+   * @param users number of distinct usernames
+   * @param seed  random seed
+   *
+   * @throws IOException if the file cannot be written
+   */
+  static void writeSyntheticNetwork(File file, long lines, int users, long seed) throws IOException {
+    Random random = new Random(seed);
+    boolean[] exists = new boolean[users];
+
+    try (Writer writer = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+      for (long line = 0; line < lines; line++) {
+        int user1 = random.nextInt(users);
+        int user2 = random.nextInt(users);
+        int op = random.nextInt(100);
+
+        if (op < 10 && !exists[user1]) {
+          writer.write("a user" + user1 + "\n");
+          exists[user1] = true;
+        } else if (op < 13 && exists[user1]) {
+          writer.write("r user" + user1 + "\n");
+          exists[user1] = false;
+        } else if (op < 28 && exists[user1] && exists[user2]) {
+          writer.write("r user" + user1 + " user" + user2 + "\n");
+        } else {
+          writer.write("a user" + user1 + " user" + user2 + "\n");
+          exists[user1] = true;
+          exists[user2] = true;
+        }
+      }
+    }
+  }
+
+  /**
+   * Checks that two networks have the same users and friendships
+   *
+   * @param network1 first network
+   * @param network2 second network
+   *
+   * @return true if both hold the same graph
+   */
+  static boolean sameNetwork(SocialNetworkADT network1, SocialNetworkADT network2) {
+    if (network1.getAllUsers().size() != network2.getAllUsers().size()) {
+      return false;
+    }
+
+    try {
+      for (Person person : network1.getAllUsers()) {
+        Set<String> friends1 = new HashSet<String>();
+        Set<String> friends2 = new HashSet<String>();
+        for (Person friend : network1.getFriendsView(person.getUsername())) {
+          friends1.add(friend.getUsername());
+        }
+        for (Person friend : network2.getFriendsView(person.getUsername())) {
+          friends2.add(friend.getUsername());
+        }
+        if (!friends1.equals(friends2)) {
+          return false;
+        }
+      }
+    } catch (UserNotFoundException e) {
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Parses the sizes given after the benchmark name, or returns the defaults
+   *
+   * @param args program arguments
+   * @param defaults sizes to use when none are given
+   *
+   * @return int[] of sizes
+   */
+  private static int[] sizes(String[] args, int... defaults) {
+    if (args.length < 2) {
+      return defaults;
+    }
+
+    int[] sizes = new int[args.length - 1];
+    for (int i = 1; i < args.length; i++) {
+      sizes[i - 1] = Integer.parseInt(args[i]);
+    }
+    return sizes;
+  }
+
+}
@@ -0,0 +1,222 @@
+package application;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact binary snapshot of a graph's current state.
+ *
+ * Layout, all counts and IDs as unsigned LEB128 varints:
+ *
+ *   int    MAGIC ("SNET")
+ *   byte   VERSION
+ *   varint number of people n, number of friendships m
+ *   n x    varint username length, username bytes (ISO-8859-1)
+ *   n x    varint k, then k gaps: the person's friends with an ID at least
+ *          their own, sorted ascending, each written as the difference to the
+ *          previous one (the first as the difference to the person's own ID)
+ *
+ * People get IDs in the order they are written, so every friendship is stored
+ * once, on the person with the lower ID.
+ *
+ * @author samsoncain
+ */
+public class GraphSnapshot {
+
+  /**
+   * First four bytes of every snapshot, "SNET"
+   */
+  public static final int MAGIC = 0x534E4554;
+
+  /**
+   * Current format version
+   */
+  public static final byte VERSION = 1;
+
+  /**
+   * Writes a snapshot of a graph to a file
+   *
+   * @param graph graph to write
+   * @param file  file to write to
+   *
+   * @throws IOException if the file cannot be written
+   */
+  public static void write(GraphADT graph, File file) throws IOException {
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+      write(graph, out);
+    }
+  }
+
+  /**
+   * Writes a snapshot of a graph to a stream
+   *
+   * @param graph graph to write
+   * @param out   stream to write to, not closed
+   *
+   * @throws IOException if writing fails
+   */
+  public static void write(GraphADT graph, DataOutputStream out) throws IOException {
+    // number everybody in iteration order
+    Person[] persons = graph.getAllNodes().toArray(new Person[0]);
+    Map<Person, Integer> ids = new HashMap<Person, Integer>(persons.length * 2);
+    for (int id = 0; id < persons.length; id++) {
+      ids.put(persons[id], id);
+    }
+
+    out.writeInt(MAGIC);
+    out.writeByte(VERSION);
+    writeVarint(out, persons.length);
+    writeVarint(out, graph.size());
+
+    for (Person person : persons) {
+      byte[] name = person.getUsername().getBytes(StandardCharsets.ISO_8859_1);
+      writeVarint(out, name.length);
+      out.write(name);
+    }
+
+    int[] friends = new int[16];
+    for (int id = 0; id < persons.length; id++) {
+      // keep only friends with an ID at least our own, sorted for delta encoding
+      int count = 0;
+      for (Person friend : graph.getNeighbors(persons[id])) {
+        int friendId = ids.get(friend);
+        if (friendId >= id) {
+          if (count == friends.length) {
+            friends = Arrays.copyOf(friends, count * 2);
+          }
+          friends[count++] = friendId;
+        }
+      }
+      Arrays.sort(friends, 0, count);
+
+      writeVarint(out, count);
+      int previous = id;
+      for (int i = 0; i < count; i++) {
+        writeVarint(out, friends[i] - previous);
+        previous = friends[i];
+      }
+    }
+  }
+
+  /**
+   * Reads a snapshot from a file into a graph
+   *
+   * @param file  file to read from
+   * @param graph graph to add the people and friendships to
+   *
+   * @throws IOException if the file cannot be read or is not a valid snapshot
+   */
+  public static void read(File file, GraphADT graph) throws IOException {
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+      read(in, graph);
+    }
+  }
+
+  /**
+   * Reads a snapshot from a stream into a graph in time linear in its size.
+   * People that already exist in the graph are reused.
+   *
+   * @param in    stream to read from, not closed
+   * @param graph graph to add the people and friendships to
+   *
+   * @throws IOException if reading fails or the stream is not a valid snapshot
+   */
+  public static void read(DataInputStream in, GraphADT graph) throws IOException {
+    if (in.readInt() != MAGIC) {
+      throw new IOException("Not a social network snapshot");
+    }
+    int version = in.readByte();
+    if (version != VERSION) {
+      throw new IOException("Unsupported snapshot version " + version);
+    }
+
+    int order = readVarint(in);
+    readVarint(in); // number of friendships, not needed to rebuild
+
+    Person[] persons = new Person[order];
+    byte[] name = new byte[64];
+    for (int id = 0; id < order; id++) {
+      int length = readVarint(in);
+      if (length > name.length) {
+        name = new byte[Math.max(length, name.length * 2)];
+      }
+      in.readFully(name, 0, length);
+      String username = new String(name, 0, length, StandardCharsets.ISO_8859_1);
+
+      Person person = graph.getNode(username);
+      if (person == null) {
+        person = Person.of(username);
+        graph.addNode(person);
+      }
+      persons[id] = person;
+    }
+
+    for (int id = 0; id < order; id++) {
+      int count = readVarint(in);
+      int friend = id;
+      for (int i = 0; i < count; i++) {
+        friend += readVarint(in);
+        if (friend >= order) {
+          throw new IOException("Corrupt snapshot: friend ID " + friend + " out of range");
+        }
+        graph.addEdge(persons[id], persons[friend]);
+      }
+    }
+  }
+
+  /**
+   * Writes a non-negative int as an unsigned LEB128 varint
+   *
+   * @param out   stream to write to
+   * @param value value to write
+   *
+   * @throws IOException if writing fails
+   */
+  static void writeVarint(OutputStream out, int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  /**
+   * Reads an unsigned LEB128 varint
+   *
+   * @param in stream to read from
+   *
+   * @return int value read
+   *
+   * @throws IOException if reading fails or the varint is too long
+   */
+  static int readVarint(InputStream in) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      int b = in.read();
+      if (b < 0) {
+        throw new EOFException();
+      }
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Corrupt snapshot: varint too long");
+  }
+
+}
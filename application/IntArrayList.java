@@ -0,0 +1,102 @@
+package application;
+
+import java.util.Arrays;
+
+/**
+ * Growable array of ints, a List<Integer> without boxing.
+ *
+ * @author samsoncain
+ */
+class IntArrayList {
+
+  /**
+   * Elements, only the first size are in use
+   */
+  private int[] elements;
+
+  /**
+   * Number of elements
+   */
+  private int size;
+
+  /**
+   * Constructor for an empty list
+   */
+  IntArrayList() {
+    this(16);
+  }
+
+  /**
+   * Constructor for an empty list with room for some elements
+   *
+   * @param capacity elements to make room for
+   */
+  IntArrayList(int capacity) {
+    this.elements = new int[Math.max(1, capacity)];
+  }
+
+  /**
+   * Appends an element, doubling the array when it is full
+   *
+   * @param value element to append
+   */
+  void add(int value) {
+    if (this.size == this.elements.length) {
+      this.elements = Arrays.copyOf(this.elements, this.size * 2);
+    }
+    this.elements[this.size++] = value;
+  }
+
+  /**
+   * Returns an element
+   *
+   * @param index index of the element, below size
+   *
+   * @return int the element
+   */
+  int get(int index) {
+    if (index >= this.size) {
+      throw new IndexOutOfBoundsException(
+          "Index " + index + " out of bounds for size " + this.size);
+    }
+    return this.elements[index];
+  }
+
+  /**
+   * Removes and returns the last element
+   *
+   * @return int the last element
+   */
+  int removeLast() {
+    if (this.size == 0) {
+      throw new IndexOutOfBoundsException("List is empty");
+    }
+    return this.elements[--this.size];
+  }
+
+  /**
+   * Returns the number of elements
+   *
+   * @return int number of elements
+   */
+  int size() {
+    return this.size;
+  }
+
+  /**
+   * Removes every element, keeping the array
+   */
+  void clear() {
+    this.size = 0;
+  }
+
+  /**
+   * Copies the elements into an array of their own
+   *
+   * @return int[] the elements in order
+   */
+  int[] toArray() {
+    return Arrays.copyOf(this.elements, this.size);
+  }
+
+}
@@ -0,0 +1,224 @@
+package application;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Set of non-negative ints, such as Person IDs, in one open addressing int
+ * array.
+ *
+ * Elements are placed by a multiplicative hash and collisions probe the next
+ * slots (linear probing). Removal shifts the following elements of the probe
+ * run back instead of leaving tombstones, so lookups never slow down after
+ * many removals. The table is at most three quarters full, which costs about
+ * 5 to 11 bytes per element against roughly 40 for a HashSet entry and its
+ * boxed Integer or the LinkedHashSet entry of a Person.
+ *
+ * @author samsoncain
+ */
+class IntHashSet {
+
+  /**
+   * Marks an empty slot
+   */
+  private static final int FREE = -1;
+
+  /**
+   * Table shared by every empty set, so sets that never get an element cost
+   * no array
+   */
+  private static final int[] EMPTY = {};
+
+  /**
+   * Slots, FREE or an element
+   */
+  private int[] table;
+
+  /**
+   * Number of elements
+   */
+  private int size;
+
+  /**
+   * Constructor for an empty set
+   */
+  IntHashSet() {
+    this.table = EMPTY;
+  }
+
+  /**
+   * Adds an element
+   *
+   * @param value element to add, not negative
+   *
+   * @return true if it was not in the set yet
+   */
+  boolean add(int value) {
+    if (value < 0) {
+      throw new IllegalArgumentException("Negative element: " + value);
+    }
+    if (4 * (this.size + 1) > 3 * this.table.length) {
+      this.resize(Math.max(4, this.table.length * 2));
+    }
+
+    int mask = this.table.length - 1;
+    int slot = slotOf(value, mask);
+    while (this.table[slot] != FREE) {
+      if (this.table[slot] == value) {
+        return false;
+      }
+      slot = (slot + 1) & mask;
+    }
+    this.table[slot] = value;
+    this.size++;
+    return true;
+  }
+
+  /**
+   * Checks whether an element is in the set
+   *
+   * @param value the element
+   *
+   * @return true if it is in the set
+   */
+  boolean contains(int value) {
+    return this.find(value) >= 0;
+  }
+
+  /**
+   * Removes an element
+   *
+   * @param value element to remove
+   *
+   * @return true if it was in the set
+   */
+  boolean remove(int value) {
+    int slot = this.find(value);
+    if (slot < 0) {
+      return false;
+    }
+
+    // move later elements of the probe run into the gap when the gap lies
+    // between their home slot and where they are now
+    int mask = this.table.length - 1;
+    int gap = slot;
+    int next = (gap + 1) & mask;
+    while (this.table[next] != FREE) {
+      int home = slotOf(this.table[next], mask);
+      if (((next - home) & mask) >= ((next - gap) & mask)) {
+        this.table[gap] = this.table[next];
+        gap = next;
+      }
+      next = (next + 1) & mask;
+    }
+    this.table[gap] = FREE;
+    this.size--;
+
+    if (this.size == 0) {
+      this.table = EMPTY;
+    }
+    return true;
+  }
+
+  /**
+   * Returns the number of elements
+   *
+   * @return int number of elements
+   */
+  int size() {
+    return this.size;
+  }
+
+  /**
+   * Returns an iterator over the elements in table order. The set must not
+   * change while it is in use.
+   *
+   * @return PrimitiveIterator.OfInt over the elements
+   */
+  PrimitiveIterator.OfInt iterator() {
+    return new PrimitiveIterator.OfInt() {
+      private int[] table = IntHashSet.this.table;
+      private int slot = this.skip(0);
+
+      @Override
+      public boolean hasNext() {
+        return this.slot < this.table.length;
+      }
+
+      @Override
+      public int nextInt() {
+        if (!this.hasNext()) {
+          throw new NoSuchElementException();
+        }
+        int value = this.table[this.slot];
+        this.slot = this.skip(this.slot + 1);
+        return value;
+      }
+
+      private int skip(int slot) {
+        while (slot < this.table.length && this.table[slot] == FREE) {
+          slot++;
+        }
+        return slot;
+      }
+    };
+  }
+
+  /**
+   * Returns the slot of an element
+   *
+   * @param value the element
+   *
+   * @return int slot, or -1 if it is not in the set
+   */
+  private int find(int value) {
+    if (value < 0 || this.size == 0) {
+      return -1;
+    }
+    int mask = this.table.length - 1;
+    int slot = slotOf(value, mask);
+    while (this.table[slot] != FREE) {
+      if (this.table[slot] == value) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * Moves every element into a table of a new size
+   *
+   * @param capacity new number of slots, a power of two
+   */
+  private void resize(int capacity) {
+    int[] old = this.table;
+    this.table = new int[capacity];
+    Arrays.fill(this.table, FREE);
+    int mask = capacity - 1;
+    for (int value : old) {
+      if (value != FREE) {
+        int slot = slotOf(value, mask);
+        while (this.table[slot] != FREE) {
+          slot = (slot + 1) & mask;
+        }
+        this.table[slot] = value;
+      }
+    }
+  }
+
+  /**
+   * Returns the home slot of an element
+   *
+   * @param value the element
+   * @param mask  number of slots minus one
+   *
+   * @return int home slot
+   */
+  static int slotOf(int value, int mask) {
+    int hash = value * 0x9e3779b9;
+    return (hash ^ (hash >>> 16)) & mask;
+  }
+
+}
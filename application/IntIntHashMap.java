@@ -0,0 +1,195 @@
+package application;
+
+import java.util.Arrays;
+
+/**
+ * Map from non-negative ints, such as Person IDs, to ints, a Map<Integer,
+ * Integer> without boxing.
+ *
+ * Keys and values live in two parallel arrays with the same open addressing
+ * and back-shifting removal as IntHashSet.
+ *
+ * @author samsoncain
+ */
+class IntIntHashMap {
+
+  /**
+   * Marks an empty slot
+   */
+  private static final int FREE = -1;
+
+  /**
+   * Key of every slot, FREE if empty
+   */
+  private int[] keys;
+
+  /**
+   * Value of every used slot
+   */
+  private int[] values;
+
+  /**
+   * Number of keys
+   */
+  private int size;
+
+  /**
+   * Constructor for an empty map
+   */
+  IntIntHashMap() {
+    this(4);
+  }
+
+  /**
+   * Constructor for an empty map with room for some keys
+   *
+   * @param expected keys to make room for before growing
+   */
+  IntIntHashMap(int expected) {
+    int capacity = 4;
+    while (3 * capacity < 4 * expected) {
+      capacity *= 2;
+    }
+    this.keys = new int[capacity];
+    this.values = new int[capacity];
+    Arrays.fill(this.keys, FREE);
+  }
+
+  /**
+   * Returns the value of a key
+   *
+   * @param key     the key
+   * @param missing value to return if the key is not in the map
+   *
+   * @return int value of the key, or missing
+   */
+  int get(int key, int missing) {
+    int slot = this.find(key);
+    return slot < 0 ? missing : this.values[slot];
+  }
+
+  /**
+   * Checks whether a key is in the map
+   *
+   * @param key the key
+   *
+   * @return true if it is in the map
+   */
+  boolean containsKey(int key) {
+    return this.find(key) >= 0;
+  }
+
+  /**
+   * Sets the value of a key
+   *
+   * @param key   the key, not negative
+   * @param value its new value
+   */
+  void put(int key, int value) {
+    if (key < 0) {
+      throw new IllegalArgumentException("Negative key: " + key);
+    }
+    if (4 * (this.size + 1) > 3 * this.keys.length) {
+      this.resize(this.keys.length * 2);
+    }
+
+    int mask = this.keys.length - 1;
+    int slot = IntHashSet.slotOf(key, mask);
+    while (this.keys[slot] != FREE) {
+      if (this.keys[slot] == key) {
+        this.values[slot] = value;
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+    this.keys[slot] = key;
+    this.values[slot] = value;
+    this.size++;
+  }
+
+  /**
+   * Removes a key
+   *
+   * @param key the key
+   *
+   * @return true if it was in the map
+   */
+  boolean remove(int key) {
+    int slot = this.find(key);
+    if (slot < 0) {
+      return false;
+    }
+
+    int mask = this.keys.length - 1;
+    int gap = slot;
+    int next = (gap + 1) & mask;
+    while (this.keys[next] != FREE) {
+      int home = IntHashSet.slotOf(this.keys[next], mask);
+      if (((next - home) & mask) >= ((next - gap) & mask)) {
+        this.keys[gap] = this.keys[next];
+        this.values[gap] = this.values[next];
+        gap = next;
+      }
+      next = (next + 1) & mask;
+    }
+    this.keys[gap] = FREE;
+    this.size--;
+    return true;
+  }
+
+  /**
+   * Returns the number of keys
+   *
+   * @return int number of keys
+   */
+  int size() {
+    return this.size;
+  }
+
+  /**
+   * Returns the slot of a key
+   *
+   * @param key the key
+   *
+   * @return int slot, or -1 if it is not in the map
+   */
+  private int find(int key) {
+    if (key < 0) {
+      return -1;
+    }
+    int mask = this.keys.length - 1;
+    int slot = IntHashSet.slotOf(key, mask);
+    while (this.keys[slot] != FREE) {
+      if (this.keys[slot] == key) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * Moves every key into tables of a new size
+   *
+   * @param capacity new number of slots, a power of two
+   */
+  private void resize(int capacity) {
+    int[] oldKeys = this.keys;
+    int[] oldValues = this.values;
+    this.keys = new int[capacity];
+    this.values = new int[capacity];
+    Arrays.fill(this.keys, FREE);
+    int mask = capacity - 1;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != FREE) {
+        int slot = IntHashSet.slotOf(oldKeys[i], mask);
+        while (this.keys[slot] != FREE) {
+          slot = (slot + 1) & mask;
+        }
+        this.keys[slot] = oldKeys[i];
+        this.values[slot] = oldValues[i];
+      }
+    }
+  }
+
+}
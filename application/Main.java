@@ -1,6 +1,9 @@
 package application;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import javafx.application.Application;
 import javafx.event.ActionEvent;
@@ -25,8 +28,6 @@ import javafx.scene.paint.Color;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import javafx.stage.WindowEvent;
-import java.util.LinkedList;
-import java.util.Queue;
 
 /**
  * 
@@ -34,24 +35,44 @@ import java.util.Queue;
  */
 public class Main extends Application {
 
-	private static SocialNetwork socialNetwork = new SocialNetwork();
+	private static SocialNetwork socialNetwork;
+
+	// every change is logged here as it happens, so a crash loses at most
+	// FSYNC_INTERVAL_MILLIS of changes. The network is always resumed from this
+	// directory on start, the window title shows it; delete it to start empty.
+	private static final File LOG_DIRECTORY = new File(System.getProperty("user.home"), ".socialnetwork");
+	private static final long FSYNC_INTERVAL_MILLIS = 10;
+	private static final long CHECKPOINT_INTERVAL = 100_000;
 
 	private static final int WINDOW_WIDTH = 800;
 	private static final int WINDOW_HEIGHT = 500;
 	private static final String APP_TITLE = "Social Network Viewer";
 	private String currentUser; // TODO
 	private Stage firstStage;
-	private Queue<String> commandList;
 
+	/**
+	 * Recovers the social network from its log directory before the first window
+	 * opens
+	 */
+	@Override
+	public void init() throws Exception {
+		socialNetwork = new SocialNetwork(new Graph(), LOG_DIRECTORY, FSYNC_INTERVAL_MILLIS, CHECKPOINT_INTERVAL);
+	}
 
+	/**
+	 * Writes the last group commit of the log when the application exits
+	 */
 	@Override
-	public void start(Stage primaryStage) throws Exception {
-	    this.commandList = new LinkedList<String>();
+	public void stop() throws Exception {
+		socialNetwork.close();
+	}
 
+	@Override
+	public void start(Stage primaryStage) throws Exception {
 		firstStage = primaryStage; // TODO
 
 		// Set stage title
-		primaryStage.setTitle(APP_TITLE);
+		primaryStage.setTitle(APP_TITLE + " - " + LOG_DIRECTORY);
 
 		// Create Vertical box for main screen layout
 		VBox mainPane = createMainPane();
@@ -84,11 +105,25 @@ public class Main extends Application {
           File file = fileChooser.showSaveDialog(firstStage);
 
           if (file != null) {
-              socialNetwork.saveNetworkToFile(file, commandList);
+              exportNetwork(file);
           }		  
 		}
 	};
 
+	/**
+	 * Writes the current network as a command file, with the current user as the
+	 * central user
+	 * 
+	 * @param file the file to write to
+	 */
+	private void exportNetwork(File file) {
+		try {
+			socialNetwork.saveCompactNetworkToFile(file, currentUser);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
 	private VBox createMainPane() {
 		VBox main = new VBox();
 
@@ -158,7 +193,12 @@ public class Main extends Application {
 		clearGraphButton.setOnAction(new EventHandler<ActionEvent>() {
 			@Override
 			public void handle(ActionEvent arg0) { // TODO
-				socialNetwork = new SocialNetwork();
+				// remove users through the network so the log records the clear
+				List<String> users = new ArrayList<String>();
+				for (Person p : socialNetwork.getAllUsers()) {
+					users.add(p.getUsername());
+				}
+				socialNetwork.removeUsers(users);
 				currentUser = null;
 				mainStage.close();
 				try {
@@ -208,7 +248,7 @@ public class Main extends Application {
 				File file = fileChooser.showSaveDialog(mainStage);
 
 				if (file != null) {
-					socialNetwork.saveNetworkToFile(file, commandList);
+					exportNetwork(file);
 				}
 			}
 		});
@@ -358,7 +398,6 @@ public class Main extends Application {
 			public void handle(ActionEvent arg0) {
 				try {
 					socialNetwork.addUser(usernameTextField.getText());
-					commandList.add("a " + usernameTextField.getText());
 				} catch (InvalidUsernameException e) {
 					Alert alert = new Alert(AlertType.ERROR);
 					alert.setTitle("Error");
@@ -388,7 +427,6 @@ public class Main extends Application {
 					try {
 						socialNetwork.removeFriend(currentUser, usernameTextField.getText());
 						socialNetwork.removeUser(usernameTextField.getText());
-	                    commandList.add("r " + usernameTextField.getText());
 					} catch (UserNotFoundException e) {
 						Alert alert = new Alert(AlertType.ERROR);
 						alert.setTitle("Error");
@@ -423,7 +461,6 @@ public class Main extends Application {
 					alert.showAndWait();
 				} else {
 					currentUser = usernameTextField.getText();
-                    commandList.add("s " + usernameTextField.getText());
 					try {
 						start(firstStage);
 						mainStage.close();
@@ -484,7 +521,6 @@ public class Main extends Application {
 						&& !user2TextField.getText().isEmpty()) {
 					try {
 						socialNetwork.addFriend(user1TextField.getText(), user2TextField.getText());
-                        commandList.add("a " + user1TextField.getText() + " " + user2TextField.getText());
 					} catch (UserNotFoundException e) {
 						Alert alert = new Alert(AlertType.ERROR);
 						alert.setTitle("Error");
@@ -515,7 +551,6 @@ public class Main extends Application {
 						&& !user2TextField.getText().isEmpty()) {
 					try {
 						socialNetwork.removeFriend(user1TextField.getText(), user2TextField.getText());
-                        commandList.add("r " + user1TextField.getText() + " " + user2TextField.getText());
 					} catch (UserNotFoundException e) {
 						Alert alert = new Alert(AlertType.ERROR);
 						alert.setTitle("Error");
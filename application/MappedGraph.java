@@ -0,0 +1,1332 @@
+package application;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * GraphADT implementation that answers queries straight from a memory-mapped
+ * file, so opening it takes the same time whatever its size and pages are
+ * only read from disk once a query touches them.
+ *
+ * The directory holds generations graph.N. A generation is laid out so every
+ * lookup is a few reads at computed positions, all numbers big-endian:
+ *
+ *   int    MAGIC ("MNET"), VERSION, number of people n, hash table size t
+ *   long   number of row entries m, number of friendships
+ *   long   (n + 1) row offsets, friends of ID i are targets[offsets[i]] up to
+ *          targets[offsets[i + 1]]
+ *   int    m targets, every row sorted ascending
+ *   long   (n + 1) name offsets into the name bytes, after padding to 8 bytes
+ *   int    t hash table slots: ID + 1 of the username hashing there (linear
+ *          probing), 0 if empty
+ *   byte   UTF-8 usernames
+ *
+ * Changes never touch the file. They go to an in-memory delta that holds the
+ * complete current friends of every person a change touched, plus the
+ * removed people, so a person's friends are read from the delta if they are
+ * in it and from the file otherwise. Once the delta holds mergeThreshold
+ * people it is frozen and a background thread writes file plus frozen delta
+ * as the next generation while a fresh delta takes new changes. The new
+ * generation is then mapped in its place and older ones are deleted. If a
+ * merge fails, its delta stays frozen and readable, changes are refused with
+ * an UncheckedIOException and merge writes it again together with the newer
+ * changes.
+ *
+ * Changes are not written anywhere until a merge, wrap the graph in a durable
+ * SocialNetwork to survive crashes, and call close to merge what is left.
+ * Reads from several threads are safe, changes are not and must not overlap
+ * with reads.
+ *
+ * @author samsoncain
+ */
+public class MappedGraph implements GraphADT {
+
+  /**
+   * First four bytes of every generation, "MNET"
+   */
+  public static final int MAGIC = 0x4D4E4554;
+
+  /**
+   * Current format version
+   */
+  public static final int VERSION = 1;
+
+  /**
+   * File name prefix of generations
+   */
+  private static final String PREFIX = "graph.";
+
+  /**
+   * Bytes before the row offsets
+   */
+  private static final int HEADER = 32;
+
+  /**
+   * Default number of people in the delta that starts a merge
+   */
+  private static final int DEFAULT_MERGE_THRESHOLD = 1 << 16;
+
+  /**
+   * Directory holding the generations
+   */
+  private File directory;
+
+  /**
+   * Number of people in the delta that starts a merge
+   */
+  private int mergeThreshold;
+
+  /**
+   * Mapped generation and frozen delta, replaced as a whole by merges
+   */
+  private volatile State state;
+
+  /**
+   * Delta taking new changes
+   */
+  private Delta active;
+
+  /**
+   * Runs the merges
+   */
+  private ExecutorService merger;
+
+  /**
+   * Merge in progress, null if none
+   */
+  private Future<?> merging;
+
+  /**
+   * Failure of the last merge, rethrown on every change until a merge holding
+   * its delta succeeds
+   */
+  private volatile IOException failure;
+
+  /**
+   * Number of people
+   */
+  private int nodeCount;
+
+  /**
+   * Number of undirected friendships
+   */
+  private int edgeCount;
+
+  /**
+   * Opens the newest generation in a directory, creating the directory and an
+   * empty generation if there is none
+   *
+   * @param directory directory holding the generations
+   *
+   * @throws IOException if the directory or the newest generation cannot be
+   *                     opened
+   */
+  public MappedGraph(File directory) throws IOException {
+    this(directory, DEFAULT_MERGE_THRESHOLD);
+  }
+
+  /**
+   * Opens the newest generation in a directory with a custom merge threshold
+   *
+   * @param directory      directory holding the generations
+   * @param mergeThreshold number of people in the delta that starts a merge
+   *
+   * @throws IOException if the directory or the newest generation cannot be
+   *                     opened
+   */
+  public MappedGraph(File directory, int mergeThreshold) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Cannot create graph directory " + directory);
+    }
+    this.directory = directory;
+    this.mergeThreshold = mergeThreshold;
+
+    TreeSet<Long> generations = generations(directory);
+    if (generations.isEmpty()) {
+      create(new Graph(), directory);
+      generations = generations(directory);
+    }
+    Generation base = new Generation(file(directory, generations.last()), generations.last());
+    this.state = new State(base, null);
+    this.active = new Delta();
+    this.nodeCount = base.count;
+    this.edgeCount = base.edges;
+
+    this.merger = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "graph-merger");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Writes a graph as the first generation of a new directory, so it can be
+   * opened with the constructor
+   *
+   * @param graph     graph to write
+   * @param directory directory to write to, created if needed, must not hold
+   *                  generations yet
+   *
+   * @throws IOException if the directory cannot be written or already holds a
+   *                     generation
+   */
+  public static void create(GraphADT graph, File directory) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Cannot create graph directory " + directory);
+    }
+    if (!generations(directory).isEmpty()) {
+      throw new IOException("Directory already holds a graph: " + directory);
+    }
+
+    Person[] persons = graph.getAllNodes().toArray(new Person[0]);
+    IntIntHashMap ids = new IntIntHashMap(persons.length);
+    for (int id = 0; id < persons.length; id++) {
+      ids.put(persons[id].getId(), id);
+    }
+    write(new Source() {
+      @Override
+      public int count() {
+        return persons.length;
+      }
+
+      @Override
+      public byte[] name(int id) {
+        return persons[id].getUsername().getBytes(StandardCharsets.UTF_8);
+      }
+
+      @Override
+      public int[] row(int id) {
+        Set<Person> friends = graph.getNeighbors(persons[id]);
+        int[] row = new int[friends.size()];
+        int i = 0;
+        for (Person friend : friends) {
+          row[i++] = ids.get(friend.getId(), -1);
+        }
+        return row;
+      }
+    }, directory, 0);
+  }
+
+  /**
+   * Add new person to the graph.
+   *
+   * @param person person to add to graph
+   *
+   * @return true if node was added, false if not
+   */
+  @Override
+  public boolean addNode(Person person) {
+    this.checkFailure();
+    if (person == null || this.contains(this.state, person)) {
+      return false;
+    }
+
+    this.active.removed.remove(person);
+    this.active.rows.put(person, new HashSet<Person>());
+    this.nodeCount++;
+    this.mergeIfNeeded();
+    return true;
+  }
+
+  /**
+   * Remove a person and all associated friendships from the graph.
+   *
+   * @param person person to remove from graph
+   *
+   * @return true if node was removed, false if not
+   */
+  @Override
+  public boolean removeNode(Person person) {
+    this.checkFailure();
+    State state = this.state;
+    if (!this.contains(state, person)) {
+      return false;
+    }
+
+    // friendships are undirected, so only the person's own friends change
+    List<Person> friends = new ArrayList<Person>(this.friendsOf(state, person));
+    for (Person friend : friends) {
+      if (friend != person) {
+        this.mutableRow(state, friend).remove(person);
+      }
+    }
+    this.edgeCount -= friends.size();
+
+    this.active.rows.remove(person);
+    this.active.removed.add(person);
+    this.nodeCount--;
+    this.mergeIfNeeded();
+    return true;
+  }
+
+  /**
+   * Remove a batch of people and all associated friendships from the graph.
+   *
+   * @param persons people to remove from graph
+   *
+   * @return int the number of people that were removed
+   */
+  @Override
+  public int removeNodes(Collection<Person> persons) {
+    int count = 0;
+    for (Person person : persons) {
+      if (this.removeNode(person)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Add an edge (friendship) from person1 to person2 to this graph.
+   *
+   * @param person1 person to add friendship from
+   * @param person2 person to add friendship to
+   *
+   * @return true if edge was added or already existed, false if a person does
+   *         not exist
+   */
+  @Override
+  public boolean addEdge(Person person1, Person person2) {
+    this.checkFailure();
+    State state = this.state;
+    if (!this.contains(state, person1) || !this.contains(state, person2)) {
+      return false;
+    }
+
+    if (!this.friendsOf(state, person1).contains(person2)) {
+      this.mutableRow(state, person1).add(person2);
+      this.mutableRow(state, person2).add(person1);
+      this.edgeCount++;
+      this.mergeIfNeeded();
+    }
+    return true;
+  }
+
+  /**
+   * Remove the friendship from person1 to person2 from this graph.
+   *
+   * @param person1 person to remove friendship from
+   * @param person2 person to remove friendship of
+   *
+   * @return true if edge was removed or did not exist, false if a person does
+   *         not exist
+   */
+  @Override
+  public boolean removeEdge(Person person1, Person person2) {
+    this.checkFailure();
+    State state = this.state;
+    if (!this.contains(state, person1) || !this.contains(state, person2)) {
+      return false;
+    }
+
+    if (this.friendsOf(state, person1).contains(person2)) {
+      this.mutableRow(state, person1).remove(person2);
+      this.mutableRow(state, person2).remove(person1);
+      this.edgeCount--;
+      this.mergeIfNeeded();
+    }
+    return true;
+  }
+
+  /**
+   * Returns a read-only view of the friends of a given user. Friends that are
+   * only in the mapped file are read from it as the view is iterated.
+   *
+   * @param person person to return friends for
+   *
+   * @return Set<Person> neighbors of person, or null if person does not exist
+   */
+  @Override
+  public Set<Person> getNeighbors(Person person) {
+    State state = this.state;
+    return this.contains(state, person) ? this.friendsOf(state, person) : null;
+  }
+
+  /**
+   * Returns the number of friends of a given user
+   *
+   * @param person person to return degree for
+   *
+   * @return int number of friends, or -1 if person does not exist
+   */
+  @Override
+  public int degree(Person person) {
+    Set<Person> friends = this.getNeighbors(person);
+    return friends == null ? -1 : friends.size();
+  }
+
+  /**
+   * Returns the friends two people have in common. When neither has changed
+   * since the file was written, their sorted rows are intersected, see
+   * SortedIntersection.
+   *
+   * @param person1 first person
+   * @param person2 second person
+   *
+   * @return Set<Person> of mutual friends
+   */
+  @Override
+  public Set<Person> getMutualNeighbors(Person person1, Person person2) {
+    State state = this.state;
+    Set<Person> mutual = new LinkedHashSet<Person>();
+    if (!this.contains(state, person1) || !this.contains(state, person2)) {
+      return mutual;
+    }
+
+    int id1 = this.cleanId(state, person1);
+    int id2 = this.cleanId(state, person2);
+    if (id1 >= 0 && id2 >= 0) {
+      int[] row1 = state.base.row(id1);
+      int[] row2 = state.base.row(id2);
+      int[] common = new int[Math.min(row1.length, row2.length)];
+      int count = SortedIntersection.intersect(row1, 0, row1.length, row2, 0, row2.length, common);
+      for (int i = 0; i < count; i++) {
+        mutual.add(state.base.personAt(common[i]));
+      }
+      return mutual;
+    }
+
+    Set<Person> friends1 = this.friendsOf(state, person1);
+    Set<Person> friends2 = this.friendsOf(state, person2);
+    Set<Person> smaller = friends1.size() <= friends2.size() ? friends1 : friends2;
+    Set<Person> larger = smaller == friends1 ? friends2 : friends1;
+    for (Person friend : smaller) {
+      if (larger.contains(friend)) {
+        mutual.add(friend);
+      }
+    }
+    return mutual;
+  }
+
+  /**
+   * Returns the number of friends two people have in common
+   *
+   * @param person1 first person
+   * @param person2 second person
+   *
+   * @return int number of mutual friends
+   */
+  @Override
+  public int countMutualNeighbors(Person person1, Person person2) {
+    State state = this.state;
+    if (!this.contains(state, person1) || !this.contains(state, person2)) {
+      return 0;
+    }
+
+    int id1 = this.cleanId(state, person1);
+    int id2 = this.cleanId(state, person2);
+    if (id1 >= 0 && id2 >= 0) {
+      int[] row1 = state.base.row(id1);
+      int[] row2 = state.base.row(id2);
+      return SortedIntersection.count(row1, 0, row1.length, row2, 0, row2.length);
+    }
+    return this.getMutualNeighbors(person1, person2).size();
+  }
+
+  /**
+   * Returns the Person object for a specified node
+   *
+   * @param user the username of the node to get
+   *
+   * @return Person the person object of the node, or null if not in the graph
+   */
+  @Override
+  public Person getNode(String user) {
+    State state = this.state;
+    int id = user == null ? -1 : state.base.idOf(user);
+    Person person = id >= 0 ? state.base.personAt(id) : Person.lookup(user);
+    return this.contains(state, person) ? person : null;
+  }
+
+  /**
+   * Returns a read-only Set view of all the nodes in graph: the people of the
+   * mapped file that were not removed, then the people added since. Only
+   * iterating looks at the deltas, size is the running count of people.
+   *
+   * @return Set<Person> set of nodes
+   */
+  @Override
+  public Set<Person> getAllNodes() {
+    return new AbstractSet<Person>() {
+      @Override
+      public Iterator<Person> iterator() {
+        State state = MappedGraph.this.state;
+        Iterator<Person> rest = MappedGraph.this.addedPeople(state).iterator();
+        return new Iterator<Person>() {
+          private int next = this.advance(0);
+
+          private int advance(int from) {
+            while (from < state.base.count
+                && !MappedGraph.this.contains(state, state.base.personAt(from))) {
+              from++;
+            }
+            return from;
+          }
+
+          @Override
+          public boolean hasNext() {
+            return this.next < state.base.count || rest.hasNext();
+          }
+
+          @Override
+          public Person next() {
+            if (this.next < state.base.count) {
+              Person person = state.base.personAt(this.next);
+              this.next = this.advance(this.next + 1);
+              return person;
+            }
+            return rest.next();
+          }
+        };
+      }
+
+      @Override
+      public boolean contains(Object o) {
+        return o instanceof Person
+            && MappedGraph.this.contains(MappedGraph.this.state, (Person) o);
+      }
+
+      @Override
+      public int size() {
+        return MappedGraph.this.nodeCount;
+      }
+    };
+  }
+
+  /**
+   * Returns the number of edges in this graph. Every undirected friendship is
+   * counted once.
+   *
+   * @return int the number of edges
+   */
+  @Override
+  public int size() {
+    return this.edgeCount;
+  }
+
+  /**
+   * Returns the number of nodes in this graph.
+   *
+   * @return int the number of nodes
+   */
+  @Override
+  public int order() {
+    return this.nodeCount;
+  }
+
+  /**
+   * Returns the number of the mapped generation
+   *
+   * @return long generation number
+   */
+  public long getGeneration() {
+    return this.state.base.number;
+  }
+
+  /**
+   * Returns the number of people whose changes are not in the mapped file yet
+   *
+   * @return int number of people in the active and the frozen delta
+   */
+  public int getDeltaSize() {
+    State state = this.state;
+    return this.active.size() + (state.frozen == null ? 0 : state.frozen.size());
+  }
+
+  /**
+   * Writes every change so far into a new generation and waits for it to be
+   * mapped
+   *
+   * @throws IOException if the generation cannot be written
+   */
+  public void merge() throws IOException {
+    this.awaitMerge();
+    // a failed merge leaves its delta frozen, so retry even without new changes
+    if (this.active.size() > 0 || this.state.frozen != null) {
+      this.startMerge();
+      this.awaitMerge();
+    }
+    IOException failure = this.failure;
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Merges every change so far and stops the merge thread
+   *
+   * @throws IOException if the last generation cannot be written
+   */
+  public void close() throws IOException {
+    try {
+      this.merge();
+    } finally {
+      this.merger.shutdown();
+    }
+  }
+
+  /**
+   * Checks whether a person is in the graph, looking at the active delta, then
+   * the frozen one, then the file
+   *
+   * @param state current state
+   * @param person the person, may be null
+   *
+   * @return true if the person is in the graph
+   */
+  private boolean contains(State state, Person person) {
+    if (person == null) {
+      return false;
+    }
+    for (Delta delta : state.deltas(this.active)) {
+      if (delta.rows.containsKey(person)) {
+        return true;
+      }
+      if (delta.removed.contains(person)) {
+        return false;
+      }
+    }
+    return state.base.idOf(person.getUsername()) >= 0;
+  }
+
+  /**
+   * Collects the people in the graph that are not in the mapped file
+   *
+   * @param state current state
+   *
+   * @return Set<Person> people added since the file was written
+   */
+  private Set<Person> addedPeople(State state) {
+    Set<Person> added = new LinkedHashSet<Person>();
+    for (Delta delta : state.deltas(this.active)) {
+      for (Person person : delta.rows.keySet()) {
+        if (state.base.idOf(person.getUsername()) < 0 && this.contains(state, person)) {
+          added.add(person);
+        }
+      }
+    }
+    return added;
+  }
+
+  /**
+   * Returns the friends of a person in the graph, from the newest delta that
+   * has them or from the file
+   *
+   * @param state  current state
+   * @param person the person
+   *
+   * @return Set<Person> read-only friends
+   */
+  private Set<Person> friendsOf(State state, Person person) {
+    for (Delta delta : state.deltas(this.active)) {
+      Set<Person> row = delta.rows.get(person);
+      if (row != null) {
+        return Collections.unmodifiableSet(row);
+      }
+    }
+    return state.base.neighbors(state.base.idOf(person.getUsername()));
+  }
+
+  /**
+   * Returns the file ID of a person whose friends have not changed since the
+   * file was written
+   *
+   * @param state  current state
+   * @param person the person, in the graph
+   *
+   * @return int file ID, or -1 if the person is in a delta
+   */
+  private int cleanId(State state, Person person) {
+    for (Delta delta : state.deltas(this.active)) {
+      if (delta.rows.containsKey(person)) {
+        return -1;
+      }
+    }
+    return state.base.idOf(person.getUsername());
+  }
+
+  /**
+   * Returns the friends of a person in the active delta, copying them there
+   * first if needed
+   *
+   * @param state  current state
+   * @param person the person, in the graph
+   *
+   * @return Set<Person> friends that may be changed
+   */
+  private Set<Person> mutableRow(State state, Person person) {
+    Set<Person> row = this.active.rows.get(person);
+    if (row == null) {
+      row = new HashSet<Person>(this.friendsOf(state, person));
+      this.active.rows.put(person, row);
+    }
+    return row;
+  }
+
+  /**
+   * Starts a background merge once the active delta is big enough and no
+   * merge is running
+   */
+  private void mergeIfNeeded() {
+    if (this.active.size() >= this.mergeThreshold
+        && (this.merging == null || this.merging.isDone())) {
+      this.startMerge();
+    }
+  }
+
+  /**
+   * Freezes the active delta and merges it into a new generation in the
+   * background. No merge may be running. If the last merge failed, its frozen
+   * delta is still in the state and is merged again under the active one.
+   */
+  private void startMerge() {
+    State state = this.state;
+    Delta delta = state.frozen == null ? this.active : Delta.combine(state.frozen, this.active);
+    State frozen = new State(state.base, delta);
+    this.state = frozen;
+    this.active = new Delta();
+    this.merging = this.merger.submit(() -> {
+      try {
+        Generation next = this.writeGeneration(frozen);
+        // the new generation holds the frozen delta, the active one stays on top
+        this.state = new State(next, null);
+        this.failure = null;
+        for (long old : generations(this.directory).headSet(next.number)) {
+          file(this.directory, old).delete();
+        }
+      } catch (IOException e) {
+        this.failure = e;
+      } catch (RuntimeException e) {
+        this.failure = new IOException("Merge failed", e);
+      }
+    });
+  }
+
+  /**
+   * Waits for a running merge. A failure is kept in failure, not thrown.
+   *
+   * @throws IOException if interrupted while waiting
+   */
+  private void awaitMerge() throws IOException {
+    if (this.merging != null) {
+      try {
+        this.merging.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while merging", e);
+      } catch (ExecutionException e) {
+        this.failure = new IOException("Merge failed", e.getCause());
+      }
+      this.merging = null;
+    }
+  }
+
+  /**
+   * Rethrows the failure of the last merge, changes are refused until merge
+   * succeeds
+   */
+  private void checkFailure() {
+    IOException failure = this.failure;
+    if (failure != null) {
+      throw new UncheckedIOException("Background merge failed", failure);
+    }
+  }
+
+  /**
+   * Writes a generation holding a mapped generation with a frozen delta on
+   * top and maps it. The people of the old file keep their order, people
+   * removed since are dropped and people added since come last.
+   *
+   * @param state mapped generation and frozen delta
+   *
+   * @return Generation the new generation, mapped
+   *
+   * @throws IOException if the generation cannot be written
+   */
+  private Generation writeGeneration(State state) throws IOException {
+    Generation base = state.base;
+    Delta delta = state.frozen;
+
+    // rows from the delta by old file ID, and the people added since
+    Map<Integer, Set<Person>> changed = new HashMap<Integer, Set<Person>>();
+    List<Person> added = new ArrayList<Person>();
+    for (Map.Entry<Person, Set<Person>> entry : delta.rows.entrySet()) {
+      int id = base.idOf(entry.getKey().getUsername());
+      if (id >= 0) {
+        changed.put(id, entry.getValue());
+      } else {
+        added.add(entry.getKey());
+      }
+    }
+
+    // new IDs of the people of the old file, -1 if removed
+    int[] newIds = new int[base.count];
+    for (Person person : delta.removed) {
+      int id = base.idOf(person.getUsername());
+      if (id >= 0 && !delta.rows.containsKey(person)) {
+        newIds[id] = -1;
+      }
+    }
+    int kept = 0;
+    for (int id = 0; id < base.count; id++) {
+      newIds[id] = newIds[id] < 0 ? -1 : kept++;
+    }
+    int[] oldIds = new int[kept];
+    for (int id = 0; id < base.count; id++) {
+      if (newIds[id] >= 0) {
+        oldIds[newIds[id]] = id;
+      }
+    }
+    Map<Person, Integer> addedIds = new HashMap<Person, Integer>(added.size() * 2);
+    for (int i = 0; i < added.size(); i++) {
+      addedIds.put(added.get(i), kept + i);
+    }
+    int keptCount = kept;
+
+    return write(new Source() {
+      @Override
+      public int count() {
+        return keptCount + added.size();
+      }
+
+      @Override
+      public byte[] name(int id) {
+        return id < keptCount ? base.nameBytes(oldIds[id])
+            : added.get(id - keptCount).getUsername().getBytes(StandardCharsets.UTF_8);
+      }
+
+      @Override
+      public int[] row(int id) {
+        Set<Person> friends =
+            id < keptCount ? changed.get(oldIds[id]) : delta.rows.get(added.get(id - keptCount));
+        if (friends == null) {
+          int[] row = base.row(oldIds[id]);
+          for (int i = 0; i < row.length; i++) {
+            row[i] = newIds[row[i]];
+          }
+          return row;
+        }
+
+        int[] row = new int[friends.size()];
+        int i = 0;
+        for (Person friend : friends) {
+          int oldId = base.idOf(friend.getUsername());
+          row[i++] = oldId >= 0 && newIds[oldId] >= 0 ? newIds[oldId] : addedIds.get(friend);
+        }
+        return row;
+      }
+    }, this.directory, base.number + 1);
+  }
+
+  /**
+   * Writes a generation under a temporary name, moves it into place and maps
+   * it
+   *
+   * @param source     people and friendships to write
+   * @param directory  directory to write to
+   * @param generation number of the generation
+   *
+   * @return Generation the written generation, mapped
+   *
+   * @throws IOException if the generation cannot be written
+   */
+  private static Generation write(Source source, File directory, long generation)
+      throws IOException {
+    int count = source.count();
+    int tableSize = 2;
+    while (tableSize < 2 * count) {
+      tableSize *= 2;
+    }
+
+    // self-friendships are one row entry, every other friendship two
+    long[] offsets = new long[count + 1];
+    long selfFriends = 0;
+    for (int id = 0; id < count; id++) {
+      int[] row = source.row(id);
+      offsets[id + 1] = offsets[id] + row.length;
+      for (int friend : row) {
+        if (friend == id) {
+          selfFriends++;
+        }
+      }
+    }
+    long edges = offsets[count];
+
+    File temporary = new File(directory, PREFIX + generation + ".tmp");
+    try (FileOutputStream file = new FileOutputStream(temporary);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(count);
+      out.writeInt(tableSize);
+      out.writeLong(edges);
+      out.writeLong((edges - selfFriends) / 2 + selfFriends);
+      for (long offset : offsets) {
+        out.writeLong(offset);
+      }
+
+      for (int id = 0; id < count; id++) {
+        int[] row = source.row(id);
+        Arrays.sort(row);
+        for (int friend : row) {
+          out.writeInt(friend);
+        }
+      }
+      if (edges % 2 == 1) {
+        out.writeInt(0);
+      }
+
+      int[] table = new int[tableSize];
+      long nameOffset = 0;
+      out.writeLong(nameOffset);
+      for (int id = 0; id < count; id++) {
+        byte[] name = source.name(id);
+        nameOffset += name.length;
+        out.writeLong(nameOffset);
+
+        int slot = hash(name, 0, name.length) & (tableSize - 1);
+        while (table[slot] != 0) {
+          slot = (slot + 1) & (tableSize - 1);
+        }
+        table[slot] = id + 1;
+      }
+      for (int slot : table) {
+        out.writeInt(slot);
+      }
+
+      for (int id = 0; id < count; id++) {
+        out.write(source.name(id));
+      }
+      out.flush();
+      file.getFD().sync();
+    }
+
+    File target = file(directory, generation);
+    Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    return new Generation(target, generation);
+  }
+
+  /**
+   * Hashes username bytes (FNV-1a)
+   *
+   * @param bytes  array holding the bytes
+   * @param from   first byte
+   * @param length number of bytes
+   *
+   * @return int hash
+   */
+  private static int hash(byte[] bytes, int from, int length) {
+    int hash = 0x811c9dc5;
+    for (int i = from; i < from + length; i++) {
+      hash = (hash ^ (bytes[i] & 0xff)) * 0x01000193;
+    }
+    return hash ^ (hash >>> 16);
+  }
+
+  /**
+   * Returns the file of a generation
+   *
+   * @param directory  directory holding the generations
+   * @param generation generation number
+   *
+   * @return File of the generation
+   */
+  private static File file(File directory, long generation) {
+    return new File(directory, PREFIX + generation);
+  }
+
+  /**
+   * Lists the generations in a directory
+   *
+   * @param directory directory holding the generations
+   *
+   * @return TreeSet<Long> of generation numbers
+   */
+  private static TreeSet<Long> generations(File directory) {
+    TreeSet<Long> generations = new TreeSet<Long>();
+    String[] names = directory.list();
+    if (names == null) {
+      return generations;
+    }
+
+    for (String name : names) {
+      if (name.startsWith(PREFIX)) {
+        try {
+          generations.add(Long.parseLong(name.substring(PREFIX.length())));
+        } catch (NumberFormatException e) {
+          // temporary or unrelated file
+        }
+      }
+    }
+    return generations;
+  }
+
+  /**
+   * People and friendships to write as a generation, by new ID
+   */
+  private interface Source {
+    /**
+     * Returns the number of people
+     *
+     * @return int number of people, IDs run from 0 to count - 1
+     */
+    int count();
+
+    /**
+     * Returns the username of an ID
+     *
+     * @param id new ID
+     *
+     * @return byte[] UTF-8 username
+     */
+    byte[] name(int id);
+
+    /**
+     * Returns the friends of an ID, may be called more than once
+     *
+     * @param id new ID
+     *
+     * @return int[] new IDs of the friends, in any order
+     */
+    int[] row(int id);
+  }
+
+  /**
+   * Changes since the mapped generation: the complete friends of every person
+   * a change touched, and the people removed
+   */
+  private static class Delta {
+    /**
+     * Complete friends of every person a change touched
+     */
+    private Map<Person, Set<Person>> rows = new HashMap<Person, Set<Person>>();
+
+    /**
+     * People removed, never also in rows
+     */
+    private Set<Person> removed = new HashSet<Person>();
+
+    /**
+     * Returns the number of people in this delta
+     *
+     * @return int number of people with rows or removed
+     */
+    int size() {
+      return this.rows.size() + this.removed.size();
+    }
+
+    /**
+     * Stacks a newer delta on an older one
+     *
+     * @param older delta of a failed merge
+     * @param newer delta with the changes made since
+     *
+     * @return Delta holding both, the newer one wins for every person in it
+     */
+    static Delta combine(Delta older, Delta newer) {
+      Delta combined = new Delta();
+      combined.rows.putAll(older.rows);
+      combined.removed.addAll(older.removed);
+      for (Person person : newer.removed) {
+        combined.rows.remove(person);
+        combined.removed.add(person);
+      }
+      for (Map.Entry<Person, Set<Person>> entry : newer.rows.entrySet()) {
+        combined.removed.remove(entry.getKey());
+        combined.rows.put(entry.getKey(), entry.getValue());
+      }
+      return combined;
+    }
+  }
+
+  /**
+   * Mapped generation with the frozen delta being merged into the next one, if
+   * any
+   */
+  private static class State {
+    /**
+     * Mapped generation
+     */
+    private final Generation base;
+
+    /**
+     * Delta being merged into the next generation, null if none
+     */
+    private final Delta frozen;
+
+    State(Generation base, Delta frozen) {
+      this.base = base;
+      this.frozen = frozen;
+    }
+
+    /**
+     * Returns the deltas to look at before the file, newest first
+     *
+     * @param active the active delta
+     *
+     * @return List<Delta> active delta, then the frozen one if any
+     */
+    List<Delta> deltas(Delta active) {
+      return this.frozen == null ? Collections.singletonList(active)
+          : Arrays.asList(active, this.frozen);
+    }
+  }
+
+  /**
+   * One generation file, mapped in chunks of 1 GB. Every int and long in the
+   * file is aligned to its size, so none of them crosses a chunk boundary.
+   */
+  private static class Generation {
+    private static final int CHUNK_SHIFT = 30;
+    private static final int PAGE_SHIFT = 12;
+
+    private final long number;
+    private final MappedByteBuffer[] chunks;
+    private final int count;
+    private final int edges;
+    private final int tableMask;
+    private final long offsetsAt;
+    private final long targetsAt;
+    private final long nameOffsetsAt;
+    private final long tableAt;
+    private final long namesAt;
+
+    /**
+     * Person of every ID read so far, in pages allocated on first use
+     */
+    private final Person[][] persons;
+
+    Generation(File file, long number) throws IOException {
+      this.number = number;
+      try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+        long size = channel.size();
+        this.chunks = new MappedByteBuffer[(int) ((size >>> CHUNK_SHIFT) + 1)];
+        for (int chunk = 0; chunk < this.chunks.length; chunk++) {
+          long from = (long) chunk << CHUNK_SHIFT;
+          long length = Math.min(1L << CHUNK_SHIFT, size - from);
+          this.chunks[chunk] = channel.map(FileChannel.MapMode.READ_ONLY, from, length);
+        }
+      }
+
+      if (this.getInt(0) != MAGIC || this.getInt(4) != VERSION) {
+        throw new IOException("Not a graph generation: " + file);
+      }
+      this.count = this.getInt(8);
+      this.tableMask = this.getInt(12) - 1;
+      long directed = this.getLong(16);
+      this.edges = (int) this.getLong(24);
+      this.offsetsAt = HEADER;
+      this.targetsAt = this.offsetsAt + 8L * (this.count + 1);
+      this.nameOffsetsAt = this.targetsAt + 4 * (directed + directed % 2);
+      this.tableAt = this.nameOffsetsAt + 8L * (this.count + 1);
+      this.namesAt = this.tableAt + 4L * (this.tableMask + 1);
+      this.persons = new Person[(this.count >>> PAGE_SHIFT) + 1][];
+    }
+
+    /**
+     * Looks up the file ID of a username in the hash table
+     *
+     * @param username the username
+     *
+     * @return int file ID, or -1 if the username is not in the file
+     */
+    int idOf(String username) {
+      byte[] name = username.getBytes(StandardCharsets.UTF_8);
+      int slot = hash(name, 0, name.length) & this.tableMask;
+      while (true) {
+        int entry = this.getInt(this.tableAt + 4L * slot);
+        if (entry == 0) {
+          return -1;
+        }
+        if (this.nameEquals(entry - 1, name)) {
+          return entry - 1;
+        }
+        slot = (slot + 1) & this.tableMask;
+      }
+    }
+
+    /**
+     * Returns the Person of a file ID, interning it the first time
+     *
+     * @param id file ID
+     *
+     * @return Person with that username
+     */
+    Person personAt(int id) {
+      Person[] page = this.persons[id >>> PAGE_SHIFT];
+      if (page == null) {
+        // racing threads may each allocate a page, they hold the same people
+        page = new Person[1 << PAGE_SHIFT];
+        this.persons[id >>> PAGE_SHIFT] = page;
+      }
+      Person person = page[id & ((1 << PAGE_SHIFT) - 1)];
+      if (person == null) {
+        person = Person.of(new String(this.nameBytes(id), StandardCharsets.UTF_8));
+        page[id & ((1 << PAGE_SHIFT) - 1)] = person;
+      }
+      return person;
+    }
+
+    /**
+     * Returns the username bytes of a file ID
+     *
+     * @param id file ID
+     *
+     * @return byte[] UTF-8 username
+     */
+    byte[] nameBytes(int id) {
+      long from = this.getLong(this.nameOffsetsAt + 8L * id);
+      long to = this.getLong(this.nameOffsetsAt + 8L * (id + 1));
+      byte[] name = new byte[(int) (to - from)];
+      for (int i = 0; i < name.length; i++) {
+        name[i] = this.getByte(this.namesAt + from + i);
+      }
+      return name;
+    }
+
+    /**
+     * Copies the sorted row of a file ID
+     *
+     * @param id file ID
+     *
+     * @return int[] friend file IDs, sorted
+     */
+    int[] row(int id) {
+      long from = this.getLong(this.offsetsAt + 8L * id);
+      long to = this.getLong(this.offsetsAt + 8L * (id + 1));
+      int[] row = new int[(int) (to - from)];
+      for (int i = 0; i < row.length; i++) {
+        row[i] = this.getInt(this.targetsAt + 4 * (from + i));
+      }
+      return row;
+    }
+
+    /**
+     * Returns a read-only view of the friends of a file ID that reads the
+     * mapped row on every access
+     *
+     * @param id file ID
+     *
+     * @return Set<Person> friends
+     */
+    Set<Person> neighbors(int id) {
+      long from = this.getLong(this.offsetsAt + 8L * id);
+      long to = this.getLong(this.offsetsAt + 8L * (id + 1));
+      return new AbstractSet<Person>() {
+        @Override
+        public Iterator<Person> iterator() {
+          return new Iterator<Person>() {
+            private long next = from;
+
+            @Override
+            public boolean hasNext() {
+              return this.next < to;
+            }
+
+            @Override
+            public Person next() {
+              if (!this.hasNext()) {
+                throw new NoSuchElementException();
+              }
+              return personAt(getInt(targetsAt + 4 * this.next++));
+            }
+          };
+        }
+
+        @Override
+        public boolean contains(Object o) {
+          if (!(o instanceof Person)) {
+            return false;
+          }
+          int friend = idOf(((Person) o).getUsername());
+          long low = from;
+          long high = to - 1;
+          while (friend >= 0 && low <= high) {
+            long middle = (low + high) >>> 1;
+            int value = getInt(targetsAt + 4 * middle);
+            if (value < friend) {
+              low = middle + 1;
+            } else if (value > friend) {
+              high = middle - 1;
+            } else {
+              return true;
+            }
+          }
+          return false;
+        }
+
+        @Override
+        public int size() {
+          return (int) (to - from);
+        }
+      };
+    }
+
+    /**
+     * Compares the username of a file ID with username bytes
+     *
+     * @param id   file ID
+     * @param name UTF-8 username
+     *
+     * @return true if they are the same
+     */
+    private boolean nameEquals(int id, byte[] name) {
+      long from = this.getLong(this.nameOffsetsAt + 8L * id);
+      long to = this.getLong(this.nameOffsetsAt + 8L * (id + 1));
+      if (to - from != name.length) {
+        return false;
+      }
+      for (int i = 0; i < name.length; i++) {
+        if (this.getByte(this.namesAt + from + i) != name[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private int getInt(long position) {
+      return this.chunks[(int) (position >>> CHUNK_SHIFT)]
+          .getInt((int) (position & ((1L << CHUNK_SHIFT) - 1)));
+    }
+
+    private long getLong(long position) {
+      return this.chunks[(int) (position >>> CHUNK_SHIFT)]
+          .getLong((int) (position & ((1L << CHUNK_SHIFT) - 1)));
+    }
+
+    private byte getByte(long position) {
+      return this.chunks[(int) (position >>> CHUNK_SHIFT)]
+          .get((int) (position & ((1L << CHUNK_SHIFT) - 1)));
+    }
+  }
+
+}
@@ -0,0 +1,248 @@
+package application;
+
+import java.util.Arrays;
+
+/**
+ * Answers many hop distance queries at once with bit-parallel breadth first
+ * search.
+ *
+ * The graph is first copied into compressed adjacency arrays with dense int
+ * IDs. Queries are then grouped by source, and up to 64 sources are searched
+ * together: every vertex holds one long per state (seen, frontier, next) in
+ * which bit i belongs to the i-th source of the group. One pass over the
+ * frontier's edges advances all 64 searches by a level, at the cost of a few
+ * word operations per edge.
+ *
+ * The copy is taken when the object is built, later changes to the graph are
+ * not seen.
+ *
+ * @author samsoncain
+ */
+public class MultiSourceBfs {
+
+  /**
+   * Most sources searched in one pass, one per bit of a long
+   */
+  static final int MAX_SOURCES = 64;
+
+  /**
+   * Dense ID of every person, by Person ID
+   */
+  private IntIntHashMap ids;
+
+  /**
+   * Friends of vertex v are targets[offsets[v]] to targets[offsets[v + 1] - 1]
+   */
+  private int[] offsets;
+  private int[] targets;
+
+  /**
+   * Number of sources searched together
+   */
+  private int batchSize;
+
+  /**
+   * Copies a graph for searching
+   *
+   * @param graph graph to copy
+   */
+  public MultiSourceBfs(GraphADT graph) {
+    this(graph, MAX_SOURCES);
+  }
+
+  /**
+   * Copies a graph for searching with fewer sources per pass, 1 runs a plain
+   * BFS per source
+   *
+   * @param graph     graph to copy
+   * @param batchSize number of sources searched together, at most 64
+   */
+  MultiSourceBfs(GraphADT graph, int batchSize) {
+    this.batchSize = Math.max(1, Math.min(MAX_SOURCES, batchSize));
+
+    Person[] persons = graph.getAllNodes().toArray(new Person[0]);
+    this.ids = new IntIntHashMap(persons.length);
+    for (int id = 0; id < persons.length; id++) {
+      this.ids.put(persons[id].getId(), id);
+    }
+
+    this.offsets = new int[persons.length + 1];
+    int[] edges = new int[Math.max(16, persons.length)];
+    int count = 0;
+    for (int id = 0; id < persons.length; id++) {
+      for (Person friend : graph.getNeighbors(persons[id])) {
+        if (count == edges.length) {
+          edges = Arrays.copyOf(edges, count * 2);
+        }
+        edges[count++] = this.ids.get(friend.getId(), -1);
+      }
+      this.offsets[id + 1] = count;
+    }
+    this.targets = Arrays.copyOf(edges, count);
+  }
+
+  /**
+   * Returns the hop distance of every (source, target) pair
+   *
+   * @param sources source person of each pair
+   * @param targets target person of each pair, same length as sources
+   *
+   * @return int[] hops from sources[i] to targets[i], -1 if they are not
+   *         connected or either person is not in the graph
+   */
+  public int[] distances(Person[] sources, Person[] targets) {
+    int pairs = sources.length;
+    int[] distances = new int[pairs];
+    Arrays.fill(distances, -1);
+
+    // group the pairs by source ID so every source is searched once
+    int[] sourceIds = new int[pairs];
+    int[] targetIds = new int[pairs];
+    long[] keys = new long[pairs];
+    int valid = 0;
+    for (int i = 0; i < pairs; i++) {
+      int source = sources[i] == null ? -1 : this.ids.get(sources[i].getId(), -1);
+      int target = targets[i] == null ? -1 : this.ids.get(targets[i].getId(), -1);
+      if (source >= 0 && target >= 0) {
+        sourceIds[i] = source;
+        targetIds[i] = target;
+        keys[valid++] = (long) source << 32 | i;
+      }
+    }
+    Arrays.sort(keys, 0, valid);
+    int[] order = new int[valid];
+    for (int k = 0; k < valid; k++) {
+      order[k] = (int) keys[k];
+    }
+
+    int vertices = this.offsets.length - 1;
+    long[] seen = new long[vertices];
+    long[] frontier = new long[vertices];
+    long[] next = new long[vertices];
+    int[] bitOf = new int[valid];
+    int[] active = new int[16];
+    int[] reached = new int[16];
+    int[] touched = new int[16];
+
+    int first = 0;
+    while (first < valid) {
+      // take the pairs of the next batchSize distinct sources, each gets a bit
+      int last = first;
+      int bit = -1;
+      while (last < valid) {
+        boolean newSource = last == first || sourceIds[order[last]] != sourceIds[order[last - 1]];
+        if (newSource && bit == this.batchSize - 1) {
+          break;
+        }
+        if (newSource) {
+          bit++;
+        }
+        bitOf[last++] = bit;
+      }
+
+      // the sources are the first frontier
+      int activeCount = 0;
+      for (int i = first; i < last; i++) {
+        int source = sourceIds[order[i]];
+        if (seen[source] == 0) {
+          if (activeCount == active.length) {
+            active = Arrays.copyOf(active, activeCount * 2);
+          }
+          active[activeCount++] = source;
+        }
+        seen[source] |= 1L << bitOf[i];
+        frontier[source] = seen[source];
+      }
+      if (touched.length < activeCount) {
+        touched = Arrays.copyOf(touched, active.length);
+      }
+      System.arraycopy(active, 0, touched, 0, activeCount);
+      int touchedCount = activeCount;
+
+      int pending = this.resolve(first, last, order, targetIds, bitOf, seen, distances, 0);
+      for (int level = 1; pending > 0 && activeCount > 0; level++) {
+        // push every frontier bit one hop, keeping only bits new to the friend
+        int reachedCount = 0;
+        for (int a = 0; a < activeCount; a++) {
+          int vertex = active[a];
+          long bits = frontier[vertex];
+          frontier[vertex] = 0;
+          for (int e = this.offsets[vertex]; e < this.offsets[vertex + 1]; e++) {
+            int friend = this.targets[e];
+            long fresh = bits & ~seen[friend] & ~next[friend];
+            if (fresh != 0) {
+              if (next[friend] == 0) {
+                if (reachedCount == reached.length) {
+                  reached = Arrays.copyOf(reached, reachedCount * 2);
+                }
+                reached[reachedCount++] = friend;
+              }
+              next[friend] |= fresh;
+            }
+          }
+        }
+
+        // the newly reached bits become the next frontier
+        for (int r = 0; r < reachedCount; r++) {
+          int vertex = reached[r];
+          if (seen[vertex] == 0) {
+            if (touchedCount == touched.length) {
+              touched = Arrays.copyOf(touched, touchedCount * 2);
+            }
+            touched[touchedCount++] = vertex;
+          }
+          seen[vertex] |= next[vertex];
+          frontier[vertex] = next[vertex];
+          next[vertex] = 0;
+        }
+        int[] swap = active;
+        active = reached;
+        reached = swap;
+        activeCount = reachedCount;
+
+        pending = this.resolve(first, last, order, targetIds, bitOf, frontier, distances, level);
+      }
+
+      // reset only the vertices this group reached
+      for (int t = 0; t < touchedCount; t++) {
+        seen[touched[t]] = 0;
+        frontier[touched[t]] = 0;
+      }
+      first = last;
+    }
+    return distances;
+  }
+
+  /**
+   * Records the distance of every unresolved pair in a group whose target got
+   * its source's bit in this level
+   *
+   * @param first       first pair of the group in order
+   * @param last        end of the group in order
+   * @param order       pair indices sorted by source
+   * @param targetIds   target ID of each pair
+   * @param bitOf       source bit of each position in order
+   * @param reachedBits bits that reached each vertex in this level
+   * @param distances   distances found so far, -1 if none yet
+   * @param level       current level
+   *
+   * @return int number of pairs still unresolved
+   */
+  private int resolve(int first, int last, int[] order, int[] targetIds, int[] bitOf,
+      long[] reachedBits, int[] distances, int level) {
+    int pending = 0;
+    for (int i = first; i < last; i++) {
+      int pair = order[i];
+      if (distances[pair] >= 0) {
+        continue;
+      }
+      if ((reachedBits[targetIds[pair]] >>> bitOf[i] & 1) != 0) {
+        distances[pair] = level;
+      } else {
+        pending++;
+      }
+    }
+    return pending;
+  }
+
+}
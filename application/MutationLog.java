@@ -0,0 +1,494 @@
+package application;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable, append-only log of social network mutations with periodic
+ * checkpoints.
+ *
+ * Every mutation is appended as a line in the network file format ("a user",
+ * "r user", "a user1 user2", "r user1 user2") to log.N in the log directory.
+ * Appends are collected in memory and written and fsynced together (group
+ * commit) by a background thread every fsync interval, or on every append if
+ * the interval is 0.
+ *
+ * A checkpoint starts a new log generation log.N+1, writes a GraphSnapshot of
+ * the graph as snapshot.N+1 and then deletes everything older. Recovery loads
+ * the newest snapshot.K and replays every log.N with N >= K in order, so a
+ * crash at any point of a checkpoint still recovers the same graph.
+ *
+ * A background checkpoint only starts the new generation on the calling
+ * thread. A checkpointer thread then rebuilds the graph as of log.N from the
+ * files, the newest snapshot plus the closed logs, and writes that as the
+ * snapshot, so the caller neither waits for the snapshot nor has to keep the
+ * graph unchanged. Checkpoints run one at a time.
+ *
+ * @author samsoncain
+ */
+public class MutationLog {
+
+  /**
+   * File name prefix of log generations
+   */
+  private static final String LOG_PREFIX = "log.";
+
+  /**
+   * File name prefix of snapshots
+   */
+  private static final String SNAPSHOT_PREFIX = "snapshot.";
+
+  /**
+   * Pending bytes that make an append flush right away instead of waiting for
+   * the flusher
+   */
+  private static final int MAX_PENDING = 1 << 20;
+
+  /**
+   * Directory holding logs and snapshots
+   */
+  private File directory;
+
+  /**
+   * Milliseconds between group commits, 0 to fsync every append
+   */
+  private long fsyncIntervalMillis;
+
+  /**
+   * Current log generation
+   */
+  private long generation;
+
+  /**
+   * Open log generation appends are written to
+   */
+  private FileChannel channel;
+
+  /**
+   * Appended commands not yet written to the log
+   */
+  private StringBuilder pending;
+
+  /**
+   * Orders writes to the channel, always taken before the log's monitor
+   */
+  private final Object writeLock = new Object();
+
+  /**
+   * Runs the group commits
+   */
+  private ScheduledExecutorService flusher;
+
+  /**
+   * Runs the background checkpoints
+   */
+  private ExecutorService checkpointer;
+
+  /**
+   * Held while a checkpoint writes a snapshot and deletes older files
+   */
+  private final Object checkpointLock = new Object();
+
+  /**
+   * Failure of a background flush or checkpoint, rethrown on the next append
+   */
+  private IOException failure;
+
+  /**
+   * Number of commands appended since the last checkpoint
+   */
+  private long records;
+
+  /**
+   * Opens a log directory, creating it if needed. Call recover before
+   * appending.
+   *
+   * @param directory           directory holding logs and snapshots
+   * @param fsyncIntervalMillis milliseconds between group commits, 0 to fsync
+   *                            every append
+   *
+   * @throws IOException if the directory cannot be created
+   */
+  public MutationLog(File directory, long fsyncIntervalMillis) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Cannot create log directory " + directory);
+    }
+
+    this.directory = directory;
+    this.fsyncIntervalMillis = fsyncIntervalMillis;
+    this.pending = new StringBuilder();
+  }
+
+  /**
+   * Rebuilds a graph from the newest snapshot and the logs written after it,
+   * then opens the newest log for appending
+   *
+   * @param graph empty graph to rebuild into
+   *
+   * @throws IOException if a file cannot be read or a log cannot be replayed
+   */
+  public void recover(GraphADT graph) throws IOException {
+    TreeSet<Long> snapshots = this.generations(SNAPSHOT_PREFIX);
+    TreeSet<Long> logs = this.generations(LOG_PREFIX);
+
+    long base = snapshots.isEmpty() ? 0 : snapshots.last();
+    if (!logs.isEmpty()) {
+      // only the newest log can end in a line torn by a crash
+      truncateTornLine(this.file(LOG_PREFIX, logs.last()));
+    }
+    this.replay(graph, snapshots.isEmpty() ? -1 : base, logs.tailSet(base));
+
+    this.generation = logs.isEmpty() ? base : Math.max(base, logs.last());
+    this.channel = this.openLog(this.generation);
+    this.deleteOlderThan(base);
+
+    if (this.fsyncIntervalMillis > 0) {
+      this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mutation-log-flusher");
+        thread.setDaemon(true);
+        return thread;
+      });
+      this.flusher.scheduleWithFixedDelay(this::backgroundFlush, this.fsyncIntervalMillis,
+          this.fsyncIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+    this.checkpointer = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "mutation-log-checkpointer");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Appends a command to the log. It is durable after the next group commit,
+   * or before this returns if the fsync interval is 0.
+   *
+   * @param command command line without line terminator
+   *
+   * @throws IOException if an earlier background flush or this write failed
+   */
+  public void append(String command) throws IOException {
+    boolean flushNow;
+    synchronized (this) {
+      if (this.failure != null) {
+        throw this.failure;
+      }
+      this.pending.append(command).append('\n');
+      this.records++;
+      flushNow = this.fsyncIntervalMillis == 0 || this.pending.length() >= MAX_PENDING;
+    }
+
+    if (flushNow) {
+      this.sync();
+    }
+  }
+
+  /**
+   * Writes and fsyncs everything appended so far
+   *
+   * @throws IOException if writing fails
+   */
+  public void sync() throws IOException {
+    synchronized (this.writeLock) {
+      String batch;
+      synchronized (this) {
+        if (this.pending.length() == 0) {
+          return;
+        }
+        batch = this.pending.toString();
+        this.pending.setLength(0);
+      }
+
+      ByteBuffer bytes = ByteBuffer.wrap(batch.getBytes(StandardCharsets.ISO_8859_1));
+      while (bytes.hasRemaining()) {
+        this.channel.write(bytes);
+      }
+      this.channel.force(false);
+    }
+  }
+
+  /**
+   * Checkpoints the graph into a snapshot and drops the logs it covers. The
+   * graph must not change while this runs.
+   *
+   * @param graph graph holding every mutation appended so far
+   *
+   * @throws IOException if a file cannot be written
+   */
+  public void checkpoint(GraphADT graph) throws IOException {
+    synchronized (this.checkpointLock) {
+      // everything in the graph is in the closed generation or older
+      this.writeSnapshot(graph, this.startGeneration());
+    }
+  }
+
+  /**
+   * Starts a new log generation and has the checkpointer thread write the
+   * snapshot of everything logged before it. Returns once the new generation
+   * is open, the graph is not needed and may keep changing. A failure is
+   * rethrown on the next append.
+   *
+   * @throws IOException if the new generation cannot be started
+   */
+  public void checkpointInBackground() throws IOException {
+    long next = this.startGeneration();
+    this.checkpointer.execute(() -> {
+      try {
+        synchronized (this.checkpointLock) {
+          this.rebuildSnapshot(next);
+        }
+      } catch (IOException | RuntimeException e) {
+        synchronized (this) {
+          this.failure = e instanceof IOException ? (IOException) e
+              : new IOException("Background checkpoint failed in " + this.directory, e);
+        }
+      }
+    });
+  }
+
+  /**
+   * Returns the number of commands appended since the last checkpoint
+   *
+   * @return long number of commands
+   */
+  public synchronized long getRecordsSinceCheckpoint() {
+    return this.records;
+  }
+
+  /**
+   * Flushes everything appended and closes the log
+   *
+   * @throws IOException if writing fails
+   */
+  public void close() throws IOException {
+    if (this.flusher != null) {
+      this.flusher.shutdown();
+    }
+    if (this.checkpointer != null) {
+      // let a running checkpoint finish, its logs are kept until it does anyway
+      this.checkpointer.shutdown();
+      try {
+        this.checkpointer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    if (this.channel != null) {
+      this.sync();
+      this.channel.close();
+    }
+  }
+
+  /**
+   * Closes the current log generation and opens the next one
+   *
+   * @return long the new generation, everything appended so far is in older ones
+   *
+   * @throws IOException if the current generation cannot be written or the next
+   *                     one cannot be opened
+   */
+  private long startGeneration() throws IOException {
+    synchronized (this.writeLock) {
+      this.sync();
+      this.channel.close();
+      long next = this.generation + 1;
+      this.channel = this.openLog(next);
+      this.generation = next;
+      synchronized (this) {
+        this.records = 0;
+      }
+      return next;
+    }
+  }
+
+  /**
+   * Writes a graph as the snapshot of a generation and deletes everything the
+   * snapshot covers. Must be called holding checkpointLock.
+   *
+   * @param graph      graph holding everything logged before generation
+   * @param generation generation of the snapshot
+   *
+   * @throws IOException if the snapshot cannot be written
+   */
+  private void writeSnapshot(GraphADT graph, long generation) throws IOException {
+    // write the snapshot under a temporary name so a crash never leaves a partial one
+    File temporary = new File(this.directory, SNAPSHOT_PREFIX + generation + ".tmp");
+    try (FileOutputStream file = new FileOutputStream(temporary);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+      GraphSnapshot.write(graph, out);
+      out.flush();
+      file.getFD().sync();
+    }
+    Files.move(temporary.toPath(), this.file(SNAPSHOT_PREFIX, generation).toPath(),
+        StandardCopyOption.ATOMIC_MOVE);
+
+    this.deleteOlderThan(generation);
+  }
+
+  /**
+   * Rebuilds the graph as of a generation from the newest snapshot and the
+   * closed logs after it, and writes it as that generation's snapshot. Does
+   * nothing if a newer checkpoint already covers it. Must be called holding
+   * checkpointLock.
+   *
+   * @param generation generation of the snapshot, every older log is closed
+   *
+   * @throws IOException if a file cannot be read or written
+   */
+  private void rebuildSnapshot(long generation) throws IOException {
+    TreeSet<Long> snapshots = this.generations(SNAPSHOT_PREFIX);
+    long base = snapshots.isEmpty() ? 0 : snapshots.last();
+    if (base >= generation) {
+      return;
+    }
+
+    Graph graph = new Graph();
+    this.replay(graph, snapshots.isEmpty() ? -1 : base,
+        this.generations(LOG_PREFIX).subSet(base, generation));
+    this.writeSnapshot(graph, generation);
+  }
+
+  /**
+   * Loads a snapshot into a graph and replays logs on top of it
+   *
+   * @param graph    empty graph to load into
+   * @param snapshot generation of the snapshot, -1 for none
+   * @param logs     generations of the logs to replay, in order
+   *
+   * @throws IOException if a file cannot be read or a log cannot be replayed
+   */
+  private void replay(GraphADT graph, long snapshot, SortedSet<Long> logs) throws IOException {
+    if (snapshot >= 0) {
+      GraphSnapshot.read(this.file(SNAPSHOT_PREFIX, snapshot), graph);
+    }
+
+    BulkNetworkLoader loader = new BulkNetworkLoader(graph, 1);
+    try {
+      for (long log : logs) {
+        loader.load(this.file(LOG_PREFIX, log));
+      }
+    } catch (InvalidUsernameException | UserAlreadyExistsException | UserNotFoundException e) {
+      throw new IOException("Cannot replay mutation log in " + this.directory, e);
+    } finally {
+      loader.shutdown();
+    }
+  }
+
+  /**
+   * Group commit run by the flusher thread
+   */
+  private void backgroundFlush() {
+    try {
+      this.sync();
+    } catch (IOException e) {
+      synchronized (this) {
+        this.failure = e;
+      }
+    }
+  }
+
+  /**
+   * Opens a log generation for appending, creating it if needed
+   *
+   * @param generation log generation
+   *
+   * @return FileChannel positioned at the end of the log
+   *
+   * @throws IOException if the file cannot be opened
+   */
+  private FileChannel openLog(long generation) throws IOException {
+    return FileChannel.open(this.file(LOG_PREFIX, generation).toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+  }
+
+  /**
+   * Returns the file of a log or snapshot generation
+   *
+   * @param prefix     LOG_PREFIX or SNAPSHOT_PREFIX
+   * @param generation generation number
+   *
+   * @return File in the log directory
+   */
+  private File file(String prefix, long generation) {
+    return new File(this.directory, prefix + generation);
+  }
+
+  /**
+   * Lists the generations of all files with a prefix
+   *
+   * @param prefix LOG_PREFIX or SNAPSHOT_PREFIX
+   *
+   * @return TreeSet<Long> of generation numbers
+   */
+  private TreeSet<Long> generations(String prefix) {
+    TreeSet<Long> generations = new TreeSet<Long>();
+    String[] names = this.directory.list();
+    if (names == null) {
+      return generations;
+    }
+
+    for (String name : names) {
+      if (name.startsWith(prefix)) {
+        try {
+          generations.add(Long.parseLong(name.substring(prefix.length())));
+        } catch (NumberFormatException e) {
+          // temporary or unrelated file
+        }
+      }
+    }
+    return generations;
+  }
+
+  /**
+   * Deletes logs and snapshots older than a generation
+   *
+   * @param generation oldest generation to keep
+   */
+  private void deleteOlderThan(long generation) {
+    for (long old : this.generations(LOG_PREFIX).headSet(generation)) {
+      this.file(LOG_PREFIX, old).delete();
+    }
+    for (long old : this.generations(SNAPSHOT_PREFIX).headSet(generation)) {
+      this.file(SNAPSHOT_PREFIX, old).delete();
+    }
+  }
+
+  /**
+   * Cuts a log back to its last complete line
+   *
+   * @param file log file
+   *
+   * @throws IOException if the file cannot be changed
+   */
+  private static void truncateTornLine(File file) throws IOException {
+    try (FileChannel log = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+        StandardOpenOption.WRITE)) {
+      ByteBuffer one = ByteBuffer.allocate(1);
+      long end = log.size();
+      while (end > 0) {
+        one.clear();
+        log.read(one, end - 1);
+        if (one.get(0) == '\n') {
+          break;
+        }
+        end--;
+      }
+      log.truncate(end);
+    }
+  }
+
+}
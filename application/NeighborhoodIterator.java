@@ -0,0 +1,197 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazily walks the people within a number of friendship hops of a person,
+ * nearest first.
+ *
+ * This is a breadth first search that only runs as far as the caller reads:
+ * every call to next reads friends of the level being expanded until it finds
+ * one not seen yet, and people on the last level are never expanded. Stopping
+ * after the first few people (a limit, or the first one matching a predicate)
+ * therefore costs only the friend lists read so far, not the whole
+ * neighborhood.
+ *
+ * People seen so far are marked in a bitmap indexed by Person ID. The bitmap
+ * is split into pages of 4096 IDs that are only allocated once an ID in them
+ * is marked, so a short walk does not pay for the bits of everybody.
+ *
+ * The graph must not change while an iterator is in use.
+ *
+ * @author samsoncain
+ */
+public class NeighborhoodIterator implements Iterator<Person> {
+
+  /**
+   * IDs per bitmap page, as a shift
+   */
+  private static final int PAGE_SHIFT = 12;
+
+  /**
+   * Graph to walk
+   */
+  private GraphADT graph;
+
+  /**
+   * Most hops from the start
+   */
+  private int hops;
+
+  /**
+   * Bitmap pages of the people returned so far and the start, null until
+   * something in them is marked. The page table covers Person.idCount(),
+   * which grows with the most people alive at once since IDs are reused.
+   */
+  private long[][] seen;
+
+  /**
+   * People of the level being expanded, and of the level after it
+   */
+  private List<Person> level;
+  private List<Person> nextLevel;
+
+  /**
+   * Index in level of the next person to expand
+   */
+  private int index;
+
+  /**
+   * Hops from the start to the level being expanded
+   */
+  private int depth;
+
+  /**
+   * Friends of the person being expanded still to read
+   */
+  private Iterator<Person> friends;
+
+  /**
+   * Person found by hasNext but not returned yet, or null
+   */
+  private Person pending;
+
+  /**
+   * Hops from the start to the last returned person
+   */
+  private int lastDepth;
+
+  /**
+   * Constructor
+   *
+   * @param graph graph to walk
+   * @param start person to start from, not returned itself
+   * @param hops  most hops from start
+   */
+  public NeighborhoodIterator(GraphADT graph, Person start, int hops) {
+    this.graph = graph;
+    this.hops = hops;
+    this.seen = new long[(Person.idCount() >>> PAGE_SHIFT) + 1][];
+    this.mark(start);
+    this.level = hops > 0 ? Collections.singletonList(start) : Collections.emptyList();
+    this.nextLevel = new ArrayList<Person>();
+    this.friends = Collections.emptyIterator();
+  }
+
+  /**
+   * Checks whether another person is within reach, reading friend lists until
+   * one is found
+   *
+   * @return true if next will return a person
+   */
+  @Override
+  public boolean hasNext() {
+    return this.pending != null || this.advance();
+  }
+
+  /**
+   * Returns the next nearest person not returned yet
+   *
+   * @return Person next person
+   */
+  @Override
+  public Person next() {
+    if (!this.hasNext()) {
+      throw new NoSuchElementException();
+    }
+    Person person = this.pending;
+    this.pending = null;
+    this.lastDepth = this.depth + 1;
+    return person;
+  }
+
+  /**
+   * Returns the number of hops between the start and the last returned person
+   *
+   * @return int hops, 0 before the first call to next
+   */
+  public int getDepth() {
+    return this.lastDepth;
+  }
+
+  /**
+   * Marks a person as seen
+   *
+   * @param person the person
+   *
+   * @return true if the person was not seen before
+   */
+  private boolean mark(Person person) {
+    int id = person.getId();
+    int page = id >>> PAGE_SHIFT;
+    if (page >= this.seen.length) {
+      this.seen = Arrays.copyOf(this.seen, Math.max(page + 1, this.seen.length * 2));
+    }
+    if (this.seen[page] == null) {
+      this.seen[page] = new long[1 << (PAGE_SHIFT - 6)];
+    }
+    long[] bits = this.seen[page];
+    int word = (id >>> 6) & ((1 << (PAGE_SHIFT - 6)) - 1);
+    long bit = 1L << id;
+    if ((bits[word] & bit) != 0) {
+      return false;
+    }
+    bits[word] |= bit;
+    return true;
+  }
+
+  /**
+   * Reads friends until one not seen yet is found and keeps it as pending
+   *
+   * @return true if a person was found, false if the neighborhood is exhausted
+   */
+  private boolean advance() {
+    while (true) {
+      while (this.friends.hasNext()) {
+        Person friend = this.friends.next();
+        if (this.mark(friend)) {
+          // the last level is returned but never expanded
+          if (this.depth + 1 < this.hops) {
+            this.nextLevel.add(friend);
+          }
+          this.pending = friend;
+          return true;
+        }
+      }
+
+      if (this.index < this.level.size()) {
+        this.friends = this.graph.getNeighbors(this.level.get(this.index++)).iterator();
+        continue;
+      }
+
+      if (this.nextLevel.isEmpty()) {
+        return false;
+      }
+      this.level = this.nextLevel;
+      this.nextLevel = new ArrayList<Person>();
+      this.index = 0;
+      this.depth++;
+    }
+  }
+
+}
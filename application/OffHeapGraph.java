@@ -0,0 +1,744 @@
+package application;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * GraphADT implementation that keeps all friendships outside of the Java heap,
+ * so the garbage collector never has to trace them.
+ *
+ * People are addressed by their Person ID. Every person's friend IDs are one
+ * sorted block of ints in direct ByteBuffers ("slabs"), and a directory, also
+ * off-heap, holds the address, size class and degree of every ID. The heap
+ * only holds one Person reference per ID, usernames are looked up through the
+ * Person registry.
+ *
+ * Blocks come from a slab allocator with power-of-two size classes from 4
+ * ints up. A person whose block is full moves to a block of the next class,
+ * and one whose block drops to a quarter full moves to the previous class.
+ * Freed blocks go to a free list per class (the next free block's address is
+ * written into the freed block itself) and are handed out again before the
+ * current slab is carved further. Slabs start small and double up to 64 MB.
+ *
+ * Rows are sorted, so membership is a binary search and adds and removes
+ * shift the rest of the row. Reads from several threads are safe, changes are
+ * not and must not overlap with reads.
+ *
+ * @author samsoncain
+ */
+public class OffHeapGraph implements GraphADT {
+
+  /**
+   * Ints per full-size slab, as a shift. Addresses are slab << SLAB_SHIFT |
+   * offset in ints.
+   */
+  private static final int SLAB_SHIFT = 24;
+
+  /**
+   * Ints of the first slab
+   */
+  private static final int FIRST_SLAB = 1 << 14;
+
+  /**
+   * Ints of the smallest block, as a shift
+   */
+  private static final int MIN_BLOCK_SHIFT = 2;
+
+  /**
+   * Number of size classes, the largest block fills a whole slab
+   */
+  private static final int CLASSES = SLAB_SHIFT - MIN_BLOCK_SHIFT + 1;
+
+  /**
+   * Directory ints per ID: address high, address low, size class, degree
+   */
+  private static final int ENTRY = 4;
+
+  /**
+   * Size class of a person without a block, degree of an ID not in the graph
+   */
+  private static final int NONE = -1;
+
+  /**
+   * Address of no block, ends the free lists
+   */
+  private static final long NULL = -1;
+
+  /**
+   * Address, size class and degree of every ID, see ENTRY. Grows to the
+   * highest ID added, which Person keeps near the most people alive at once.
+   */
+  private IntBuffer directory;
+
+  /**
+   * Slabs blocks are carved from
+   */
+  private IntBuffer[] slabs;
+  private int slabCount;
+
+  /**
+   * Next address to carve a block from in the last slab
+   */
+  private long top;
+
+  /**
+   * First free block of every size class, or NULL
+   */
+  private long[] freeLists;
+
+  /**
+   * Person of every ID in the graph, null for IDs that are not
+   */
+  private Person[] persons;
+
+  /**
+   * Number of people
+   */
+  private int nodeCount;
+
+  /**
+   * Number of undirected friendships
+   */
+  private int edgeCount;
+
+  /**
+   * Default no-argument constructor
+   */
+  public OffHeapGraph() {
+    this.directory = newDirectory(16);
+    this.slabs = new IntBuffer[16];
+    this.freeLists = new long[CLASSES];
+    Arrays.fill(this.freeLists, NULL);
+    this.persons = new Person[16];
+  }
+
+  /**
+   * Add new person to the graph.
+   *
+   * @param person person to add to graph
+   *
+   * @return true if node was added, false if not
+   */
+  @Override
+  public boolean addNode(Person person) {
+    if (person == null || this.contains(person)) {
+      return false;
+    }
+
+    int id = person.getId();
+    if (id >= this.persons.length) {
+      int capacity = Math.max(id + 1, this.persons.length * 2);
+      this.persons = Arrays.copyOf(this.persons, capacity);
+      IntBuffer grown = newDirectory(capacity);
+      IntBuffer old = this.directory.duplicate();
+      old.clear();
+      grown.put(old);
+      grown.clear();
+      this.directory = grown;
+    }
+    this.persons[id] = person;
+    this.setEntry(id, NULL, NONE, 0);
+    this.nodeCount++;
+    return true;
+  }
+
+  /**
+   * Remove a person and all associated friendships from the graph.
+   *
+   * @param person person to remove from graph
+   *
+   * @return true if node was removed, false if not
+   */
+  @Override
+  public boolean removeNode(Person person) {
+    if (!this.contains(person)) {
+      return false;
+    }
+
+    int id = person.getId();
+    int[] friends = this.row(id);
+    for (int friend : friends) {
+      if (friend != id) {
+        this.delete(friend, id);
+      }
+    }
+    this.edgeCount -= friends.length;
+
+    int sizeClass = this.directory.get(id * ENTRY + 2);
+    if (sizeClass != NONE) {
+      this.free(this.address(id), sizeClass);
+    }
+    this.setEntry(id, NULL, NONE, NONE);
+    this.persons[id] = null;
+    this.nodeCount--;
+    return true;
+  }
+
+  /**
+   * Remove a batch of people and all associated friendships from the graph.
+   *
+   * @param persons people to remove from graph
+   *
+   * @return int the number of people that were removed
+   */
+  @Override
+  public int removeNodes(Collection<Person> persons) {
+    int count = 0;
+    for (Person person : persons) {
+      if (this.removeNode(person)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Add an edge (friendship) from person1 to person2 to this graph.
+   *
+   * @param person1 person to add friendship from
+   * @param person2 person to add friendship to
+   *
+   * @return true if edge was added or already existed, false if a person does
+   *         not exist
+   */
+  @Override
+  public boolean addEdge(Person person1, Person person2) {
+    if (!this.contains(person1) || !this.contains(person2)) {
+      return false;
+    }
+
+    int id1 = person1.getId();
+    int id2 = person2.getId();
+    if (this.insert(id1, id2)) {
+      if (id1 != id2) {
+        this.insert(id2, id1);
+      }
+      this.edgeCount++;
+    }
+    return true;
+  }
+
+  /**
+   * Remove the friendship from person1 to person2 from this graph.
+   *
+   * @param person1 person to remove friendship from
+   * @param person2 person to remove friendship of
+   *
+   * @return true if edge was removed or did not exist, false if a person does
+   *         not exist
+   */
+  @Override
+  public boolean removeEdge(Person person1, Person person2) {
+    if (!this.contains(person1) || !this.contains(person2)) {
+      return false;
+    }
+
+    int id1 = person1.getId();
+    int id2 = person2.getId();
+    if (this.delete(id1, id2)) {
+      if (id1 != id2) {
+        this.delete(id2, id1);
+      }
+      this.edgeCount--;
+    }
+    return true;
+  }
+
+  /**
+   * Returns a read-only view of the friends of a given user, in ID order. The
+   * view reads the off-heap row on every access, so it reflects later changes
+   * but must not be iterated while the graph changes.
+   *
+   * @param person person to return friends for
+   *
+   * @return Set<Person> neighbors of person, or null if person does not exist
+   */
+  @Override
+  public Set<Person> getNeighbors(Person person) {
+    if (!this.contains(person)) {
+      return null;
+    }
+
+    int id = person.getId();
+    return new AbstractSet<Person>() {
+      @Override
+      public Iterator<Person> iterator() {
+        return new Iterator<Person>() {
+          private int index;
+
+          @Override
+          public boolean hasNext() {
+            return this.index < degreeOf(id);
+          }
+
+          @Override
+          public Person next() {
+            if (!this.hasNext()) {
+              throw new NoSuchElementException();
+            }
+            return persons[read(address(id) + this.index++)];
+          }
+        };
+      }
+
+      @Override
+      public boolean contains(Object o) {
+        return o instanceof Person && OffHeapGraph.this.contains((Person) o)
+            && find(id, ((Person) o).getId()) >= 0;
+      }
+
+      @Override
+      public int size() {
+        return Math.max(0, degreeOf(id));
+      }
+    };
+  }
+
+  /**
+   * Returns the number of friends of a given user in O(1)
+   *
+   * @param person person to return degree for
+   *
+   * @return int number of friends, or -1 if person does not exist
+   */
+  @Override
+  public int degree(Person person) {
+    return this.contains(person) ? this.degreeOf(person.getId()) : -1;
+  }
+
+  /**
+   * Returns the friends two people have in common by intersecting copies of
+   * their sorted rows, see SortedIntersection
+   *
+   * @param person1 first person
+   * @param person2 second person
+   *
+   * @return Set<Person> of mutual friends, in ID order
+   */
+  @Override
+  public Set<Person> getMutualNeighbors(Person person1, Person person2) {
+    Set<Person> result = new LinkedHashSet<Person>();
+    if (!this.contains(person1) || !this.contains(person2)) {
+      return result;
+    }
+
+    int[] row1 = this.row(person1.getId());
+    int[] row2 = this.row(person2.getId());
+    int[] mutual = new int[Math.min(row1.length, row2.length)];
+    int count = SortedIntersection.intersect(row1, 0, row1.length, row2, 0, row2.length, mutual);
+    for (int i = 0; i < count; i++) {
+      result.add(this.persons[mutual[i]]);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the number of friends two people have in common
+   *
+   * @param person1 first person
+   * @param person2 second person
+   *
+   * @return int number of mutual friends
+   */
+  @Override
+  public int countMutualNeighbors(Person person1, Person person2) {
+    if (!this.contains(person1) || !this.contains(person2)) {
+      return 0;
+    }
+
+    int[] row1 = this.row(person1.getId());
+    int[] row2 = this.row(person2.getId());
+    return SortedIntersection.count(row1, 0, row1.length, row2, 0, row2.length);
+  }
+
+  /**
+   * Returns the Person object for a specified node
+   *
+   * @param user the username of the node to get
+   *
+   * @return Person the person object of the node, or null if not in the graph
+   */
+  @Override
+  public Person getNode(String user) {
+    Person person = Person.lookup(user);
+    return this.contains(person) ? person : null;
+  }
+
+  /**
+   * Returns a read-only Set view of all the nodes in graph
+   *
+   * @return Set<Person> set of nodes
+   */
+  @Override
+  public Set<Person> getAllNodes() {
+    return new AbstractSet<Person>() {
+      @Override
+      public Iterator<Person> iterator() {
+        return new Iterator<Person>() {
+          private int next = advance(0);
+
+          private int advance(int from) {
+            while (from < persons.length && persons[from] == null) {
+              from++;
+            }
+            return from;
+          }
+
+          @Override
+          public boolean hasNext() {
+            return this.next < persons.length;
+          }
+
+          @Override
+          public Person next() {
+            if (!this.hasNext()) {
+              throw new NoSuchElementException();
+            }
+            Person person = persons[this.next];
+            this.next = this.advance(this.next + 1);
+            return person;
+          }
+        };
+      }
+
+      @Override
+      public boolean contains(Object o) {
+        return o instanceof Person && OffHeapGraph.this.contains((Person) o);
+      }
+
+      @Override
+      public int size() {
+        return nodeCount;
+      }
+    };
+  }
+
+  /**
+   * Returns the number of edges in this graph. Every undirected friendship is
+   * counted once.
+   *
+   * @return int the number of edges
+   */
+  @Override
+  public int size() {
+    return this.edgeCount;
+  }
+
+  /**
+   * Returns the number of nodes in this graph.
+   *
+   * @return int the number of nodes
+   */
+  @Override
+  public int order() {
+    return this.nodeCount;
+  }
+
+  /**
+   * Returns the off-heap memory reserved by the directory and the slabs
+   *
+   * @return long bytes reserved outside the heap
+   */
+  public long getOffHeapBytes() {
+    long ints = this.directory.capacity();
+    for (int slab = 0; slab < this.slabCount; slab++) {
+      ints += this.slabs[slab].capacity();
+    }
+    return ints * Integer.BYTES;
+  }
+
+  /**
+   * Checks whether a person is in the graph
+   *
+   * @param person the person, may be null
+   *
+   * @return true if the person was added and not removed since
+   */
+  private boolean contains(Person person) {
+    return person != null && person.getId() < this.persons.length
+        && this.persons[person.getId()] == person;
+  }
+
+  /**
+   * Adds a friend ID to a row, keeping it sorted and growing its block if full
+   *
+   * @param id     ID whose row changes
+   * @param friend ID to add
+   *
+   * @return true if it was not in the row yet
+   */
+  private boolean insert(int id, int friend) {
+    int position = this.find(id, friend);
+    if (position >= 0) {
+      return false;
+    }
+    position = -position - 1;
+
+    int degree = this.degreeOf(id);
+    int sizeClass = this.directory.get(id * ENTRY + 2);
+    if (sizeClass == NONE) {
+      this.move(id, 0);
+    } else if (degree == blockSize(sizeClass)) {
+      this.move(id, sizeClass + 1);
+    }
+
+    long address = this.address(id);
+    for (int i = degree; i > position; i--) {
+      this.write(address + i, this.read(address + i - 1));
+    }
+    this.write(address + position, friend);
+    this.directory.put(id * ENTRY + 3, degree + 1);
+    return true;
+  }
+
+  /**
+   * Removes a friend ID from a row, shrinking its block once it is a quarter
+   * full and freeing it once empty
+   *
+   * @param id     ID whose row changes
+   * @param friend ID to remove
+   *
+   * @return true if it was in the row
+   */
+  private boolean delete(int id, int friend) {
+    int position = this.find(id, friend);
+    if (position < 0) {
+      return false;
+    }
+
+    int degree = this.degreeOf(id) - 1;
+    long address = this.address(id);
+    for (int i = position; i < degree; i++) {
+      this.write(address + i, this.read(address + i + 1));
+    }
+    this.directory.put(id * ENTRY + 3, degree);
+
+    int sizeClass = this.directory.get(id * ENTRY + 2);
+    if (degree == 0) {
+      this.free(address, sizeClass);
+      this.setEntry(id, NULL, NONE, 0);
+    } else if (sizeClass > 0 && degree <= blockSize(sizeClass) / 4) {
+      this.move(id, sizeClass - 1);
+    }
+    return true;
+  }
+
+  /**
+   * Binary searches a row for a friend ID
+   *
+   * @param id     ID whose row is searched
+   * @param friend ID to search for
+   *
+   * @return int index of friend in the row, or -(insertion point) - 1
+   */
+  private int find(int id, int friend) {
+    long address = this.address(id);
+    int low = 0;
+    int high = this.degreeOf(id) - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int value = this.read(address + middle);
+      if (value < friend) {
+        low = middle + 1;
+      } else if (value > friend) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -low - 1;
+  }
+
+  /**
+   * Copies a row to the heap
+   *
+   * @param id ID whose row to copy
+   *
+   * @return int[] friend IDs, sorted
+   */
+  private int[] row(int id) {
+    int degree = Math.max(0, this.degreeOf(id));
+    int[] friends = new int[degree];
+    if (degree > 0) {
+      long address = this.address(id);
+      IntBuffer slab = this.slabs[(int) (address >>> SLAB_SHIFT)].duplicate();
+      slab.position((int) (address & ((1 << SLAB_SHIFT) - 1)));
+      slab.get(friends);
+    }
+    return friends;
+  }
+
+  /**
+   * Moves a row into a new block of another size class
+   *
+   * @param id        ID whose row moves
+   * @param sizeClass new size class
+   */
+  private void move(int id, int sizeClass) {
+    int oldClass = this.directory.get(id * ENTRY + 2);
+    long oldAddress = this.address(id);
+    long address = this.allocate(sizeClass);
+    int degree = this.degreeOf(id);
+    for (int i = 0; i < degree; i++) {
+      this.write(address + i, this.read(oldAddress + i));
+    }
+    if (oldClass != NONE) {
+      this.free(oldAddress, oldClass);
+    }
+    this.setEntry(id, address, sizeClass, degree);
+  }
+
+  /**
+   * Hands out a block, from the free list of its class if possible, otherwise
+   * carved from the last slab or a new one
+   *
+   * @param sizeClass size class of the block
+   *
+   * @return long address of the block
+   */
+  private long allocate(int sizeClass) {
+    if (sizeClass >= CLASSES) {
+      throw new IllegalStateException("Row longer than a slab: " + blockSize(sizeClass) + " ints");
+    }
+
+    long address = this.freeLists[sizeClass];
+    if (address != NULL) {
+      this.freeLists[sizeClass] =
+          (long) this.read(address) << 32 | (this.read(address + 1) & 0xffffffffL);
+      return address;
+    }
+
+    int size = blockSize(sizeClass);
+    if (this.slabCount == 0 || this.top + size
+        > ((long) (this.slabCount - 1) << SLAB_SHIFT) + this.slabs[this.slabCount - 1].capacity()) {
+      // the rest of the last slab is left unused, slabs double up to the full
+      // size, computed in long so the doubling cannot overflow
+      long doubled = (long) FIRST_SLAB << Math.min(this.slabCount, SLAB_SHIFT);
+      int capacity = (int) Math.max(size, Math.min(1 << SLAB_SHIFT, doubled));
+      assert this.slabCount == 0 || capacity >= this.slabs[this.slabCount - 1].capacity()
+          : "Slab " + this.slabCount + " shrank to " + capacity + " ints";
+      if (this.slabCount == this.slabs.length) {
+        this.slabs = Arrays.copyOf(this.slabs, this.slabCount * 2);
+      }
+      this.slabs[this.slabCount] = ByteBuffer.allocateDirect(capacity * Integer.BYTES)
+          .order(ByteOrder.nativeOrder()).asIntBuffer();
+      this.top = (long) this.slabCount << SLAB_SHIFT;
+      this.slabCount++;
+    }
+    address = this.top;
+    this.top += size;
+    return address;
+  }
+
+  /**
+   * Puts a block on the free list of its class
+   *
+   * @param address   address of the block
+   * @param sizeClass size class of the block
+   */
+  private void free(long address, int sizeClass) {
+    long next = this.freeLists[sizeClass];
+    this.write(address, (int) (next >>> 32));
+    this.write(address + 1, (int) next);
+    this.freeLists[sizeClass] = address;
+  }
+
+  /**
+   * Returns the number of ints in a block of a size class
+   *
+   * @param sizeClass the size class
+   *
+   * @return int block size in ints
+   */
+  private static int blockSize(int sizeClass) {
+    return 1 << (MIN_BLOCK_SHIFT + sizeClass);
+  }
+
+  /**
+   * Returns the degree of an ID from the directory
+   *
+   * @param id the ID
+   *
+   * @return int degree, or -1 if the ID is not in the graph
+   */
+  private int degreeOf(int id) {
+    return this.directory.get(id * ENTRY + 3);
+  }
+
+  /**
+   * Returns the block address of an ID from the directory
+   *
+   * @param id the ID
+   *
+   * @return long address, NULL if the ID has no block
+   */
+  private long address(int id) {
+    int base = id * ENTRY;
+    return (long) this.directory.get(base) << 32 | (this.directory.get(base + 1) & 0xffffffffL);
+  }
+
+  /**
+   * Writes the directory entry of an ID
+   *
+   * @param id        the ID
+   * @param address   address of its block
+   * @param sizeClass size class of its block
+   * @param degree    its degree
+   */
+  private void setEntry(int id, long address, int sizeClass, int degree) {
+    int base = id * ENTRY;
+    this.directory.put(base, (int) (address >>> 32));
+    this.directory.put(base + 1, (int) address);
+    this.directory.put(base + 2, sizeClass);
+    this.directory.put(base + 3, degree);
+  }
+
+  /**
+   * Reads the int at an address
+   *
+   * @param address the address
+   *
+   * @return int value
+   */
+  private int read(long address) {
+    return this.slabs[(int) (address >>> SLAB_SHIFT)]
+        .get((int) (address & ((1 << SLAB_SHIFT) - 1)));
+  }
+
+  /**
+   * Writes the int at an address
+   *
+   * @param address the address
+   * @param value   value to write
+   */
+  private void write(long address, int value) {
+    this.slabs[(int) (address >>> SLAB_SHIFT)]
+        .put((int) (address & ((1 << SLAB_SHIFT) - 1)), value);
+  }
+
+  /**
+   * Allocates a directory for a number of IDs with every ID not in the graph
+   *
+   * @param capacity number of IDs
+   *
+   * @return IntBuffer directory
+   */
+  private static IntBuffer newDirectory(int capacity) {
+    IntBuffer directory = ByteBuffer.allocateDirect(capacity * ENTRY * Integer.BYTES)
+        .order(ByteOrder.nativeOrder()).asIntBuffer();
+    for (int base = 0; base < capacity * ENTRY; base += ENTRY) {
+      directory.put(base + 2, NONE);
+      directory.put(base + 3, NONE);
+    }
+    return directory;
+  }
+
+}
@@ -0,0 +1,267 @@
+package application;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * PageRank influence scores of the people in a graph.
+ *
+ * Every computation copies the graph into compressed adjacency arrays over
+ * int IDs and iterates on double arrays. Updates are pull-based: each person
+ * sums the contributions (score / degree) of their own friends, so every
+ * score is written by exactly one task and ranges of people can be updated in
+ * parallel without locks or atomics. Iteration stops once the scores move by
+ * less than the tolerance in total (L1 norm) or after the iteration limit.
+ *
+ * The scores of the last computation are kept. The next computation starts
+ * from them (warm start) instead of from uniform scores, so after a few
+ * friendship changes it converges in a few iterations.
+ *
+ * @author samsoncain
+ */
+public class PageRank {
+
+  /**
+   * People per task
+   */
+  private static final int CHUNK = 1 << 13;
+
+  /**
+   * Probability of following a friendship rather than jumping to anybody
+   */
+  private double damping;
+
+  /**
+   * Total score change below which iteration stops
+   */
+  private double tolerance;
+
+  /**
+   * Most iterations per computation
+   */
+  private int maxIterations;
+
+  /**
+   * ID of every person in the last computation
+   */
+  private Map<Person, Integer> ids;
+
+  /**
+   * Person of every ID in the last computation
+   */
+  private Person[] persons;
+
+  /**
+   * Score of every ID in the last computation, summing to 1
+   */
+  private double[] scores;
+
+  /**
+   * Iterations the last computation took
+   */
+  private int iterations;
+
+  /**
+   * Constructor with the usual damping of 0.85, tolerance 1e-6 and at most 100
+   * iterations
+   */
+  public PageRank() {
+    this(0.85, 1e-6, 100);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param damping       probability of following a friendship, below 1
+   * @param tolerance     total score change below which iteration stops
+   * @param maxIterations most iterations per computation
+   */
+  public PageRank(double damping, double tolerance, int maxIterations) {
+    this.damping = damping;
+    this.tolerance = tolerance;
+    this.maxIterations = maxIterations;
+    this.ids = new HashMap<Person, Integer>();
+    this.persons = new Person[0];
+    this.scores = new double[0];
+  }
+
+  /**
+   * Computes the scores of everybody in a graph, starting from the scores of
+   * the last computation for people that were in it
+   *
+   * @param graph graph to score, must not change while this runs
+   * @param pool  pool to run in
+   *
+   * @return int number of iterations taken
+   */
+  public int compute(GraphADT graph, ForkJoinPool pool) {
+    Person[] persons = graph.getAllNodes().toArray(new Person[0]);
+    int order = persons.length;
+    Map<Person, Integer> ids = new HashMap<Person, Integer>(order * 2);
+    for (int id = 0; id < order; id++) {
+      ids.put(persons[id], id);
+    }
+
+    int[] offsets = new int[order + 1];
+    int[] targets = new int[Math.max(16, order)];
+    for (int id = 0; id < order; id++) {
+      int position = offsets[id];
+      for (Person friend : graph.getNeighbors(persons[id])) {
+        if (position == targets.length) {
+          targets = Arrays.copyOf(targets, position * 2);
+        }
+        targets[position++] = ids.get(friend);
+      }
+      offsets[id + 1] = position;
+    }
+
+    // warm start from the last scores, newcomers start at the average
+    double[] scores = new double[order];
+    double sum = 0;
+    for (int id = 0; id < order; id++) {
+      Integer previous = this.ids.get(persons[id]);
+      scores[id] = previous != null ? this.scores[previous] : 1.0 / order;
+      sum += scores[id];
+    }
+    for (int id = 0; id < order; id++) {
+      scores[id] /= sum;
+    }
+
+    double[] contributions = new double[order];
+    double[] next = new double[order];
+    int iteration = 0;
+    while (iteration < this.maxIterations && order > 0) {
+      iteration++;
+
+      // people without friends spread their score over everybody
+      double dangling = 0;
+      for (int id = 0; id < order; id++) {
+        int degree = offsets[id + 1] - offsets[id];
+        if (degree == 0) {
+          dangling += scores[id];
+          contributions[id] = 0;
+        } else {
+          contributions[id] = scores[id] / degree;
+        }
+      }
+      double base = (1 - this.damping + this.damping * dangling) / order;
+
+      double change = pool.invoke(new PullTask(offsets, targets, contributions, scores, next,
+          this.damping, base, 0, order));
+      double[] swap = scores;
+      scores = next;
+      next = swap;
+      if (change < this.tolerance) {
+        break;
+      }
+    }
+
+    this.ids = ids;
+    this.persons = persons;
+    this.scores = scores;
+    this.iterations = iteration;
+    return iteration;
+  }
+
+  /**
+   * Returns the score of a person from the last computation
+   *
+   * @param person the person
+   *
+   * @return double score, all scores sum to 1, or 0 if the person was not
+   *         scored
+   */
+  public double getScore(Person person) {
+    Integer id = this.ids.get(person);
+    return id == null ? 0 : this.scores[id];
+  }
+
+  /**
+   * Returns the k highest scoring people of the last computation
+   *
+   * @param k number of people
+   *
+   * @return Person[] of up to k people, highest score first
+   */
+  public Person[] getTop(int k) {
+    Integer[] order = new Integer[this.persons.length];
+    for (int id = 0; id < order.length; id++) {
+      order[id] = id;
+    }
+    Arrays.sort(order, (a, b) -> Double.compare(this.scores[b], this.scores[a]));
+
+    Person[] top = new Person[Math.min(Math.max(k, 0), order.length)];
+    for (int i = 0; i < top.length; i++) {
+      top[i] = this.persons[order[i]];
+    }
+    return top;
+  }
+
+  /**
+   * Returns the number of iterations the last computation took
+   *
+   * @return int number of iterations
+   */
+  public int getIterations() {
+    return this.iterations;
+  }
+
+  /**
+   * Pulls the new scores of a range of people from their friends'
+   * contributions, returning the total change
+   */
+  private static class PullTask extends RecursiveTask<Double> {
+    private static final long serialVersionUID = 1L;
+
+    private int[] offsets;
+    private int[] targets;
+    private double[] contributions;
+    private double[] scores;
+    private double[] next;
+    private double damping;
+    private double base;
+    private int from;
+    private int to;
+
+    PullTask(int[] offsets, int[] targets, double[] contributions, double[] scores,
+        double[] next, double damping, double base, int from, int to) {
+      this.offsets = offsets;
+      this.targets = targets;
+      this.contributions = contributions;
+      this.scores = scores;
+      this.next = next;
+      this.damping = damping;
+      this.base = base;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected Double compute() {
+      if (this.to - this.from > CHUNK) {
+        int middle = (this.from + this.to) >>> 1;
+        PullTask left = new PullTask(this.offsets, this.targets, this.contributions, this.scores,
+            this.next, this.damping, this.base, this.from, middle);
+        left.fork();
+        double right = new PullTask(this.offsets, this.targets, this.contributions, this.scores,
+            this.next, this.damping, this.base, middle, this.to).compute();
+        return left.join() + right;
+      }
+
+      double change = 0;
+      for (int id = this.from; id < this.to; id++) {
+        double sum = 0;
+        for (int e = this.offsets[id]; e < this.offsets[id + 1]; e++) {
+          sum += this.contributions[this.targets[e]];
+        }
+        this.next[id] = this.base + this.damping * sum;
+        change += Math.abs(this.next[id] - this.scores[id]);
+      }
+      return change;
+    }
+  }
+
+}
@@ -0,0 +1,366 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds shortest friendship paths in a social network with bidirectional
+ * breadth first search.
+ *
+ * Every person the search touches gets a slot, and all visit state lives in
+ * int arrays indexed by slot. A slot counts as visited only if its stamp
+ * equals the current query's epoch, so starting a new query is just
+ * incrementing the epoch and nothing has to be cleared. Slots are kept between
+ * queries so the arrays are reused.
+ *
+ * Friend sets are read by Person straight from the network's storage through
+ * a Friends source, so expanding a person costs no username lookup.
+ *
+ * A PathFinder is not thread-safe, give every thread its own one so concurrent
+ * queries never share visit state.
+ *
+ * @author samsoncain
+ */
+public class PathFinder {
+
+  /**
+   * Initial number of slots
+   */
+  private static final int INITIAL_SLOTS = 1 << 10;
+
+  /**
+   * Network to search, used to look up the two users and count people
+   */
+  private SocialNetworkADT network;
+
+  /**
+   * Friend sets of the network's people
+   */
+  private Friends friends;
+
+  /**
+   * Slot of every person touched so far, by Person ID
+   */
+  private IntIntHashMap slots;
+
+  /**
+   * Person of every slot
+   */
+  private Person[] persons;
+
+  /**
+   * Epoch in which each slot was reached from the start, or from the end
+   */
+  private int[] forwardStamp;
+  private int[] backwardStamp;
+
+  /**
+   * Slot each slot was reached from, valid while its stamp is current
+   */
+  private int[] forwardParent;
+  private int[] backwardParent;
+
+  /**
+   * Hops from the start, or to the end, valid while its stamp is current
+   */
+  private int[] forwardDistance;
+  private int[] backwardDistance;
+
+  /**
+   * Current query's epoch
+   */
+  private int epoch;
+
+  /**
+   * Read access to the friend sets of a network by Person
+   */
+  interface Friends {
+
+    /**
+     * Returns the friends of a person without copying them
+     *
+     * @param person the person
+     *
+     * @return read-only Set<Person> of friends, or null if the person is not
+     *         in the network
+     */
+    Set<Person> of(Person person);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param network network to search
+   * @param friends friend sets of the people in network
+   */
+  PathFinder(SocialNetworkADT network, Friends friends) {
+    this.network = network;
+    this.friends = friends;
+    this.reset();
+  }
+
+  /**
+   * Finds a shortest path between two users by searching from both ends and
+   * always expanding the side with the smaller frontier
+   *
+   * @param user1 the first user
+   * @param user2 the second user
+   *
+   * @return List<Person> of the people on the path from user1 to user2, both
+   *         included, or an empty list if they are not connected
+   *
+   * @throws UserNotFoundException if a user does not exist
+   */
+  public List<Person> getShortestPath(String user1, String user2) throws UserNotFoundException {
+    Person start = this.personOf(user1);
+    Person end = this.personOf(user2);
+    if (start == end) {
+      return Collections.singletonList(start);
+    }
+
+    this.nextEpoch();
+    int startSlot = this.slotOf(start);
+    int endSlot = this.slotOf(end);
+    this.visit(this.forwardStamp, this.forwardParent, this.forwardDistance, startSlot, -1, 0);
+    this.visit(this.backwardStamp, this.backwardParent, this.backwardDistance, endSlot, -1, 0);
+
+    int[] forward = {startSlot};
+    int forwardSize = 1;
+    int[] backward = {endSlot};
+    int backwardSize = 1;
+
+    while (forwardSize > 0 && backwardSize > 0) {
+      // expand one whole level of the smaller side, the first level that meets
+      // the other side holds a shortest path
+      boolean fromStart = forwardSize <= backwardSize;
+      int[] frontier = fromStart ? forward : backward;
+      int size = fromStart ? forwardSize : backwardSize;
+      int[] stamp = fromStart ? this.forwardStamp : this.backwardStamp;
+      int[] parent = fromStart ? this.forwardParent : this.backwardParent;
+      int[] distance = fromStart ? this.forwardDistance : this.backwardDistance;
+
+      int[] next = new int[Math.max(16, size)];
+      int nextSize = 0;
+      int best = Integer.MAX_VALUE;
+      int meetFrom = -1;
+      int meetAt = -1;
+
+      for (int i = 0; i < size; i++) {
+        int slot = frontier[i];
+        for (Person friend : this.friendsOf(this.persons[slot])) {
+          int friendSlot = this.slotOf(friend);
+          // slotOf may have grown the arrays
+          stamp = fromStart ? this.forwardStamp : this.backwardStamp;
+          parent = fromStart ? this.forwardParent : this.backwardParent;
+          distance = fromStart ? this.forwardDistance : this.backwardDistance;
+          int[] otherStamp = fromStart ? this.backwardStamp : this.forwardStamp;
+          int[] otherDistance = fromStart ? this.backwardDistance : this.forwardDistance;
+
+          if (otherStamp[friendSlot] == this.epoch) {
+            int length = distance[slot] + 1 + otherDistance[friendSlot];
+            if (length < best) {
+              best = length;
+              meetFrom = slot;
+              meetAt = friendSlot;
+            }
+          }
+          if (stamp[friendSlot] != this.epoch) {
+            this.visit(stamp, parent, distance, friendSlot, slot, distance[slot] + 1);
+            if (nextSize == next.length) {
+              next = Arrays.copyOf(next, nextSize * 2);
+            }
+            next[nextSize++] = friendSlot;
+          }
+        }
+      }
+
+      if (meetAt >= 0) {
+        return fromStart ? this.path(meetFrom, meetAt) : this.path(meetAt, meetFrom);
+      }
+
+      if (fromStart) {
+        forward = next;
+        forwardSize = nextSize;
+      } else {
+        backward = next;
+        backwardSize = nextSize;
+      }
+    }
+    return Collections.emptyList();
+  }
+
+  /**
+   * Finds a shortest path between two users with plain breadth first search
+   * from the first user only. Used to compare against getShortestPath.
+   *
+   * @param user1 the first user
+   * @param user2 the second user
+   *
+   * @return List<Person> of the people on the path from user1 to user2, both
+   *         included, or an empty list if they are not connected
+   *
+   * @throws UserNotFoundException if a user does not exist
+   */
+  List<Person> getShortestPathOneSided(String user1, String user2) throws UserNotFoundException {
+    Person start = this.personOf(user1);
+    Person end = this.personOf(user2);
+    if (start == end) {
+      return Collections.singletonList(start);
+    }
+
+    this.nextEpoch();
+    int startSlot = this.slotOf(start);
+    int endSlot = this.slotOf(end);
+    this.visit(this.forwardStamp, this.forwardParent, this.forwardDistance, startSlot, -1, 0);
+    this.visit(this.backwardStamp, this.backwardParent, this.backwardDistance, endSlot, -1, 0);
+
+    int[] queue = new int[16];
+    queue[0] = startSlot;
+    int head = 0;
+    int tail = 1;
+    while (head < tail) {
+      int slot = queue[head++];
+      for (Person friend : this.friendsOf(this.persons[slot])) {
+        int friendSlot = this.slotOf(friend);
+        if (this.forwardStamp[friendSlot] == this.epoch) {
+          continue;
+        }
+        this.visit(this.forwardStamp, this.forwardParent, this.forwardDistance, friendSlot, slot,
+            this.forwardDistance[slot] + 1);
+        if (friendSlot == endSlot) {
+          return this.path(slot, endSlot);
+        }
+        if (tail == queue.length) {
+          queue = Arrays.copyOf(queue, tail * 2);
+        }
+        queue[tail++] = friendSlot;
+      }
+    }
+    return Collections.emptyList();
+  }
+
+  /**
+   * Builds the path through an edge where the two searches met
+   *
+   * @param forwardSlot  slot reached from the start
+   * @param backwardSlot slot reached from the end, a friend of forwardSlot
+   *
+   * @return List<Person> from the start to the end
+   */
+  private List<Person> path(int forwardSlot, int backwardSlot) {
+    List<Person> path = new ArrayList<Person>();
+    for (int slot = forwardSlot; slot >= 0; slot = this.forwardParent[slot]) {
+      path.add(this.persons[slot]);
+    }
+    Collections.reverse(path);
+    for (int slot = backwardSlot; slot >= 0; slot = this.backwardParent[slot]) {
+      path.add(this.persons[slot]);
+    }
+    return path;
+  }
+
+  /**
+   * Marks a slot visited in the current epoch
+   *
+   * @param stamp    stamp array of the search side
+   * @param parent   parent array of the search side
+   * @param distance distance array of the search side
+   * @param slot     slot to mark
+   * @param from     slot it was reached from, -1 for the side's root
+   * @param hops     distance from the side's root
+   */
+  private void visit(int[] stamp, int[] parent, int[] distance, int slot, int from, int hops) {
+    stamp[slot] = this.epoch;
+    parent[slot] = from;
+    distance[slot] = hops;
+  }
+
+  /**
+   * Starts a new query. Once the epoch would overflow, or too many people that
+   * have since been removed hold slots, all state is dropped and rebuilt.
+   */
+  private void nextEpoch() {
+    if (this.epoch == Integer.MAX_VALUE
+        || this.slots.size() > 2 * this.network.getAllUsers().size() + INITIAL_SLOTS) {
+      this.reset();
+    }
+    this.epoch++;
+  }
+
+  /**
+   * Drops all slots and visit state
+   */
+  private void reset() {
+    this.slots = new IntIntHashMap();
+    this.persons = new Person[INITIAL_SLOTS];
+    this.forwardStamp = new int[INITIAL_SLOTS];
+    this.backwardStamp = new int[INITIAL_SLOTS];
+    this.forwardParent = new int[INITIAL_SLOTS];
+    this.backwardParent = new int[INITIAL_SLOTS];
+    this.forwardDistance = new int[INITIAL_SLOTS];
+    this.backwardDistance = new int[INITIAL_SLOTS];
+    this.epoch = 0;
+  }
+
+  /**
+   * Returns the slot of a person, assigning the next free one the first time
+   *
+   * @param person the person
+   *
+   * @return int slot
+   */
+  private int slotOf(Person person) {
+    int slot = this.slots.get(person.getId(), -1);
+    if (slot >= 0) {
+      return slot;
+    }
+
+    int next = this.slots.size();
+    if (next == this.persons.length) {
+      int capacity = next * 2;
+      this.persons = Arrays.copyOf(this.persons, capacity);
+      this.forwardStamp = Arrays.copyOf(this.forwardStamp, capacity);
+      this.backwardStamp = Arrays.copyOf(this.backwardStamp, capacity);
+      this.forwardParent = Arrays.copyOf(this.forwardParent, capacity);
+      this.backwardParent = Arrays.copyOf(this.backwardParent, capacity);
+      this.forwardDistance = Arrays.copyOf(this.forwardDistance, capacity);
+      this.backwardDistance = Arrays.copyOf(this.backwardDistance, capacity);
+    }
+    this.slots.put(person.getId(), next);
+    this.persons[next] = person;
+    return next;
+  }
+
+  /**
+   * Returns the friends of a person without copying them
+   *
+   * @param person the person
+   *
+   * @return Set<Person> of friends, empty if the person was removed
+   */
+  private Set<Person> friendsOf(Person person) {
+    Set<Person> friends = this.friends.of(person);
+    return friends == null ? Collections.<Person>emptySet() : friends;
+  }
+
+  /**
+   * Looks up a user
+   *
+   * @param user the username
+   *
+   * @return Person of the user
+   *
+   * @throws UserNotFoundException if user does not exist
+   */
+  private Person personOf(String user) throws UserNotFoundException {
+    Person person = user == null ? null : this.network.getPersonByName(user);
+    if (person == null) {
+      throw new UserNotFoundException("User " + "'" + user + "'" + " does not exist");
+    }
+    return person;
+  }
+
+}
@@ -1,34 +1,159 @@
 package application;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Represents a person used in the social network
- * 
+ *
+ * Persons are interned: Person.of returns the same object for the same
+ * username as long as anything still refers to it, so there is exactly one
+ * live Person per username and equality is identity. Every Person also gets a
+ * dense int ID, which int-indexed structures can use instead of hash maps, and
+ * its hash code is computed once up front.
+ *
+ * The registry only holds its people weakly. Once nothing refers to a Person
+ * any more, for example after it was removed from every network, its entry
+ * is dropped and its ID is handed to the next new Person. IDs therefore stay
+ * below the largest number of people alive at once, not the number of
+ * usernames ever seen, and arrays indexed by ID stay that small too. A
+ * username that comes back after being forgotten may get a different ID.
+ *
  * @author samsoncain
  */
-public class Person {
-  
+public final class Person {
+
+  /**
+   * Weak reference to every live Person by username
+   */
+  private static final ConcurrentHashMap<String, Entry> REGISTRY =
+      new ConcurrentHashMap<String, Entry>();
+
+  /**
+   * Registry entries whose Person was collected, their IDs can be handed out again
+   */
+  private static final ReferenceQueue<Person> COLLECTED = new ReferenceQueue<Person>();
+
+  /**
+   * IDs of collected people, handed out before new ones. Guarded by its own monitor.
+   */
+  private static final IntArrayList FREE_IDS = new IntArrayList();
+
+  /**
+   * Next never used ID
+   */
+  private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
   /**
    * Person objects username
    */
-  private String username;
-  
+  private final String username;
+
   /**
-   * Person objects visited status
+   * Dense ID, unique among all live Person objects
    */
-  private Boolean visited;
-  
+  private final int id;
+
+  /**
+   * Hash code, spread from the ID so consecutive IDs fill hash tables evenly
+   */
+  private final int hash;
+
   /**
-   * Only constructor. Takes the username as a String.
-   * 
+   * Only constructor, called by of when a username has no live Person
+   *
    * @param username username for the Person
+   * @param id       ID for the Person
    */
-  public Person(String username) {
+  private Person(String username, int id) {
     this.username = username;
+    this.id = id;
+    int spread = id * 0x9e3779b9;
+    this.hash = spread ^ (spread >>> 16);
+  }
+
+  /**
+   * Returns the Person of a username, creating it if there is no live one
+   *
+   * @param username username of the Person
+   *
+   * @return the one Person with this username
+   */
+  public static Person of(String username) {
+    Person person = lookup(username);
+    if (person != null) {
+      return person;
+    }
+
+    releaseCollected();
+    Person[] found = new Person[1];
+    REGISTRY.compute(username, (name, entry) -> {
+      Person live = entry == null ? null : entry.get();
+      if (live == null) {
+        // a cleared entry is replaced here, its ID is released once it is queued
+        live = new Person(name, nextId());
+        entry = new Entry(live);
+      }
+      found[0] = live;
+      return entry;
+    });
+    return found[0];
   }
-  
+
+  /**
+   * Returns the Person of a username without creating it
+   *
+   * @param username username to look up
+   *
+   * @return the live Person with this username, or null if there is none
+   */
+  public static Person lookup(String username) {
+    Entry entry = REGISTRY.get(username);
+    return entry == null ? null : entry.get();
+  }
+
+  /**
+   * Returns one more than the highest ID handed out, every live ID is below
+   * it. Since IDs are reused this grows with the most people alive at once.
+   *
+   * @return int bound on the IDs of all live Person objects
+   */
+  public static int idCount() {
+    return NEXT_ID.get();
+  }
+
+  /**
+   * Returns an ID for a new Person, reusing the ID of a collected one if any
+   *
+   * @return int unused ID
+   */
+  private static int nextId() {
+    synchronized (FREE_IDS) {
+      if (FREE_IDS.size() > 0) {
+        return FREE_IDS.removeLast();
+      }
+    }
+    return NEXT_ID.getAndIncrement();
+  }
+
+  /**
+   * Drops the registry entries of collected people and frees their IDs
+   */
+  private static void releaseCollected() {
+    Entry entry;
+    while ((entry = (Entry) COLLECTED.poll()) != null) {
+      REGISTRY.remove(entry.username, entry);
+      synchronized (FREE_IDS) {
+        FREE_IDS.add(entry.id);
+      }
+    }
+  }
+
   /**
    * Returns this Person objects username
-   * 
+   *
    * @return objects username
    */
   public String getUsername() {
@@ -36,21 +161,73 @@ public class Person {
   }
 
   /**
-   * Get visited status
-   * 
-   * @return true if visited, false if not
+   * Returns this Person objects dense ID
+   *
+   * @return int ID between 0 and idCount() - 1, kept for this object's lifetime
+   */
+  public int getId() {
+    return this.id;
+  }
+
+  /**
+   * Persons are interned, so two of them are equal exactly when they are the
+   * same object, which is when their IDs are equal
+   *
+   * @param o object to compare to
+   *
+   * @return true if o is this Person
+   */
+  @Override
+  public boolean equals(Object o) {
+    return this == o || (o instanceof Person && ((Person) o).id == this.id);
+  }
+
+  /**
+   * Returns the hash code computed when this Person was created
+   *
+   * @return int hash code
+   */
+  @Override
+  public int hashCode() {
+    return this.hash;
+  }
+
+  /**
+   * Returns the username
+   *
+   * @return String username
    */
-  public Boolean getVisited() {
-    return visited;
+  @Override
+  public String toString() {
+    return this.username;
   }
 
   /**
-   * Set visited status
-   * 
-   * @param visited
+   * Registry entry, a weak reference to a Person that remembers what it needs
+   * to clean up after the Person was collected
    */
-  public void setVisited(Boolean visited) {
-    this.visited = visited;
+  private static final class Entry extends WeakReference<Person> {
+
+    /**
+     * Username the entry is registered under
+     */
+    private final String username;
+
+    /**
+     * ID of the Person
+     */
+    private final int id;
+
+    /**
+     * Constructor
+     *
+     * @param person the Person to refer to
+     */
+    Entry(Person person) {
+      super(person, COLLECTED);
+      this.username = person.username;
+      this.id = person.id;
+    }
   }
 
 }
@@ -7,10 +7,22 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.NoSuchFileException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * 
@@ -21,13 +33,86 @@ public class SocialNetwork implements SocialNetworkADT {
   /**
    * Graph object for the social network
    */
-  private Graph network;
+  private GraphADT network;
+  
+  /**
+   * Durable log of every mutation, null if the network is only kept in memory
+   */
+  private MutationLog log;
+  
+  /**
+   * Number of logged mutations after which the log is checkpointed
+   */
+  private long checkpointInterval;
+  
+  /**
+   * Path search state of each thread, reused between queries
+   */
+  private ThreadLocal<PathFinder> pathFinders = ThreadLocal.withInitial(
+      () -> new PathFinder(this, person -> this.network.getNeighbors(person)));
+  
+  /**
+   * Recommendation state of each thread, reused between queries
+   */
+  private ThreadLocal<FriendRecommender> recommenders =
+      ThreadLocal.withInitial(() -> new FriendRecommender(this.network));
+  
+  /**
+   * Influence scores of the last rankInfluence call, the next call starts from them
+   */
+  private PageRank influence = new PageRank();
+  
+  /**
+   * Communities of the last detectCommunities call, null before the first
+   */
+  private Communities communities;
+  
+  /**
+   * Compressed copy of the network searched by getDistances, dropped on every
+   * change and rebuilt by the next call
+   */
+  private MultiSourceBfs distances;
   
   /**
    * Default no-arg constructor to instantiate new Graph object
    */
   public SocialNetwork() {
-    this.network = new Graph();
+    this(new Graph());
+  }
+  
+  /**
+   * Constructor that picks the graph backend, e.g. a CompressedGraph for
+   * read-heavy workloads
+   * 
+   * @param network empty graph to store the social network in
+   */
+  public SocialNetwork(GraphADT network) {
+    this.network = network;
+  }
+  
+  /**
+   * Constructor for a durable social network kept in a log directory
+   * 
+   * Recovers the network from the directory, then appends every addUser,
+   * removeUser, addFriend and removeFriend to a MutationLog there. The log is
+   * checkpointed into a snapshot and truncated every checkpointInterval
+   * mutations, on the log's checkpointer thread so the mutation that triggers
+   * it does not wait for the snapshot. Call close when done so the last group
+   * commit and any running checkpoint are written.
+   * 
+   * @param network empty graph to store the social network in
+   * @param directory directory holding the log and snapshots
+   * @param fsyncIntervalMillis milliseconds between group commits, 0 to fsync every mutation
+   * @param checkpointInterval number of mutations between checkpoints
+   * 
+   * @throws IOException if the network cannot be recovered
+   */
+  public SocialNetwork(GraphADT network, File directory, long fsyncIntervalMillis,
+      long checkpointInterval) throws IOException {
+    this.network = network;
+    this.log = new MutationLog(directory, fsyncIntervalMillis);
+    this.log.recover(network);
+    this.checkpointInterval = checkpointInterval;
   }
 
   /**
@@ -39,13 +124,32 @@ public class SocialNetwork implements SocialNetworkADT {
    * @return true if username is valid, false if not
    * @throws InvalidUsernameException 
    */
-  private boolean validateUsername(String user) throws InvalidUsernameException {
+  static boolean validateUsername(String user) throws InvalidUsernameException {
     // make sure username provided is not null
     if (user == null || user == "") {
       throw new InvalidUsernameException("Username cannot be blank");
     }
 
-    return user.matches("^[a-zA-Z0-9_']*$");
+    return isValidUsername(user);
+  }
+  
+  /**
+   * Checks that a username only uses letters, numbers, underscores, and apostrophes.
+   * Same as matching "^[a-zA-Z0-9_']*$" without going through a regex.
+   * 
+   * @param user username to check
+   * 
+   * @return true if every character is allowed
+   */
+  static boolean isValidUsername(CharSequence user) {
+    for (int i = 0; i < user.length(); i++) {
+      char c = user.charAt(i);
+      if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+          || c == '_' || c == '\'')) {
+        return false;
+      }
+    }
+    return true;
   }
   
   /**
@@ -66,8 +170,12 @@ public class SocialNetwork implements SocialNetworkADT {
     }
     
     // make sure username is valid and add it
-    if (this.validateUsername(user)) {
-      return this.network.addNode(new Person(user));
+    if (validateUsername(user)) {
+      boolean changed = this.network.addNode(Person.of(user));
+      if (changed) {
+        this.logMutation("a " + user);
+      }
+      return changed;
     } else { // throw invalid username if username is bad
       throw new InvalidUsernameException("Username can only contain letters, digits, underscores, and apostrophes.");
     }
@@ -92,7 +200,36 @@ public class SocialNetwork implements SocialNetworkADT {
     }
         
     // remove it
-    return this.network.removeNode(person);
+    boolean changed = this.network.removeNode(person);
+    if (changed) {
+      this.logMutation("r " + user);
+    }
+    return changed;
+  }
+
+  /**
+   * Remove a batch of users from the social network in one pass
+   * 
+   * Usernames that do not exist are skipped.
+   * 
+   * @param users the usernames to be removed
+   * 
+   * @return int the number of users that were removed
+   */
+  public int removeUsers(Collection<String> users) {
+    Set<Person> persons = new LinkedHashSet<Person>();
+    for (String user : users) {
+      Person person = this.network.getNode(user);
+      if (person != null) {
+        persons.add(person);
+      }
+    }
+    
+    int removed = this.network.removeNodes(persons);
+    for (Person person : persons) {
+      this.logMutation("r " + person.getUsername());
+    }
+    return removed;
   }
 
   /**
@@ -121,7 +258,11 @@ public class SocialNetwork implements SocialNetworkADT {
     }
     
     // add friendship
-    return this.network.addEdge(person1, person2);
+    boolean changed = this.network.addEdge(person1, person2);
+    if (changed) {
+      this.logMutation("a " + user1 + " " + user2);
+    }
+    return changed;
   }
 
   /**
@@ -151,9 +292,69 @@ public class SocialNetwork implements SocialNetworkADT {
     }
     
     // remove friendship
-    return this.network.removeEdge(person1, person2);
+    boolean changed = this.network.removeEdge(person1, person2);
+    if (changed) {
+      this.logMutation("r " + user1 + " " + user2);
+    }
+    return changed;
   }
 
+  /**
+   * Drops the copy searched by getDistances, then appends a mutation to the
+   * durable log, if there is one, and starts a background checkpoint once
+   * enough mutations have been logged
+   * 
+   * @param command the mutation in network file format
+   */
+  private void logMutation(String command) {
+    this.distances = null;
+    if (this.log == null) {
+      return;
+    }
+    
+    try {
+      this.log.append(command);
+      if (this.log.getRecordsSinceCheckpoint() >= this.checkpointInterval) {
+        this.log.checkpointInBackground();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot log mutation '" + command + "'", e);
+    }
+  }
+  
+  /**
+   * Drops the copy searched by getDistances and checkpoints the durable log
+   * right away, used after loads that change the graph without going through
+   * logMutation
+   */
+  private void checkpointLog() {
+    this.distances = null;
+    if (this.log == null) {
+      return;
+    }
+    
+    try {
+      this.log.checkpoint(this.network);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot checkpoint mutation log", e);
+    }
+  }
+  
+  /**
+   * Writes any pending group commit and closes the durable log, and merges
+   * the pending changes of a MappedGraph into a new generation
+   * 
+   * @throws IOException if the log cannot be written
+   */
+  public void close() throws IOException {
+    if (this.log != null) {
+      this.log.close();
+    }
+    if (this.network instanceof MappedGraph) {
+      ((MappedGraph) this.network).close();
+    }
+  }
+  
   /**
    * Returns a Set that contains all the users in network
    * 
@@ -164,16 +365,16 @@ public class SocialNetwork implements SocialNetworkADT {
     return this.network.getAllNodes();
   }
   
-  public Person getPersonByName(String name) { // TODO
-      Person returnPerson = null;
-      Object[] peopleArray =  getAllUsers().toArray();
-      for (int i = 0; i < peopleArray.length; i++) {
-          returnPerson = (Person) peopleArray[i];
-          if (returnPerson.getUsername().equals(name)) {
-              return returnPerson;
-          }
-      }
-      return null;
+  /**
+   * Returns the Person object for a specified username
+   * 
+   * @param name the username to look up
+   * 
+   * @return Person object of the user, or null if user does not exist
+   */
+  @Override
+  public Person getPersonByName(String name) {
+    return this.network.getNode(name);
   }
 
   /**
@@ -195,6 +396,69 @@ public class SocialNetwork implements SocialNetworkADT {
     // return linked list of specified users friends
     return new LinkedList<Person>(this.network.getNeighbors(person));
   }
+  
+  /**
+   * Get a read-only view of the friends of a user without copying them
+   * 
+   * @param user the specified user
+   * 
+   * @return a read-only Set<Person> of all the friends of the specified person
+   * 
+   * @throws UserNotFoundException if user does not exist
+   */
+  @Override
+  public Set<Person> getFriendsView(String user) throws UserNotFoundException {
+    Person person = this.network.getNode(user);
+    if (person == null) {
+      throw new UserNotFoundException("User " + "'" + user + "'" + " does not exist");
+    }
+    
+    return Collections.unmodifiableSet(this.network.getNeighbors(person));
+  }
+
+  /**
+   * Get a lazy iterator over the users within a number of friendship hops of a
+   * user, nearest first. Friend lists are only read as far as the iterator is
+   * advanced, and getDepth tells the hops to the last returned user. The
+   * network must not change while the iterator is in use.
+   * 
+   * @param user the specified user
+   * @param hops most hops from the user, 1 for friends only
+   * 
+   * @return NeighborhoodIterator over everybody within hops of the user, the
+   *         user excluded, each once
+   * 
+   * @throws UserNotFoundException if user does not exist
+   */
+  public NeighborhoodIterator getNeighborhoodIterator(String user, int hops)
+      throws UserNotFoundException {
+    Person person = this.network.getNode(user);
+    if (person == null) {
+      throw new UserNotFoundException("User " + "'" + user + "'" + " does not exist");
+    }
+    
+    return new NeighborhoodIterator(this.network, person, hops);
+  }
+  
+  /**
+   * Get a lazy stream of the users within a number of friendship hops of a
+   * user, nearest first. Short-circuiting operations such as limit, findFirst
+   * or anyMatch stop the search as soon as they are satisfied. The network must
+   * not change while the stream is in use.
+   * 
+   * @param user the specified user
+   * @param hops most hops from the user, 1 for friends only
+   * 
+   * @return Stream<Person> of everybody within hops of the user, the user
+   *         excluded, each once
+   * 
+   * @throws UserNotFoundException if user does not exist
+   */
+  public Stream<Person> getNeighborhood(String user, int hops) throws UserNotFoundException {
+    Iterator<Person> iterator = this.getNeighborhoodIterator(user, hops);
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+        Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+  }
 
   /** 
    * Get all of the mutual friends between two users
@@ -220,17 +484,199 @@ public class SocialNetwork implements SocialNetworkADT {
       throw new UserNotFoundException("User " + "'" + user2 + "'" + " does not exist");
     }
     
-    // store both persons friend list in sets
-    Set<Person> person1Friends = this.network.getNeighbors(person1);
-    Set<Person> person2Friends = this.network.getNeighbors(person2);
+    // the graph intersects the two friend collections the cheapest way it can
+    return this.network.getMutualNeighbors(person1, person2);
+  }
+
+  /**
+   * Get the number of mutual friends between two users without building the
+   * set of them
+   * 
+   * @param user1 the first user
+   * @param user2 the second user
+   * 
+   * @return int number of mutual friends
+   * 
+   * @throws UserNotFoundException if a user does not exist
+   */
+  public int countMutualFriends(String user1, String user2) throws UserNotFoundException {
+    Person person1 = this.network.getNode(user1);
+    if (person1 == null) {
+      throw new UserNotFoundException("User " + "'" + user1 + "'" + " does not exist");
+    }
     
-    // removes all users from person1Friends that are not also in person2Friends
-    // equivalent to "person1Friends AND person2Friends"
-    person1Friends.retainAll(person2Friends);
+    Person person2 = this.network.getNode(user2);
+    if (person2 == null) {
+      throw new UserNotFoundException("User " + "'" + user2 + "'" + " does not exist");
+    }
     
-    return person1Friends;
+    return this.network.countMutualNeighbors(person1, person2);
   }
 
+  /**
+   * Get a shortest chain of friendships connecting two users
+   * 
+   * Searches from both users at once with the calling thread's PathFinder.
+   * 
+   * @param user1 the first user
+   * @param user2 the second user
+   * 
+   * @return List<Person> of the people on the path from user1 to user2, both
+   *         included, or an empty list if they are not connected
+   * 
+   * @throws UserNotFoundException if a user does not exist
+   */
+  @Override
+  public List<Person> getShortestPath(String user1, String user2) throws UserNotFoundException {
+    return this.pathFinders.get().getShortestPath(user1, user2);
+  }
+  
+  /**
+   * Get the number of friendship hops between many pairs of users at once
+   * 
+   * Pairs are grouped by source and up to 64 sources are searched together
+   * with bit-parallel BFS over a compressed copy of the network, so batching
+   * many pairs into one call is much faster than asking for them one by one.
+   * The copy is built by the first call and reused until the network changes.
+   * 
+   * @param sources the first user of each pair
+   * @param targets the second user of each pair, same length as sources
+   * 
+   * @return int[] hops between sources[i] and targets[i], -1 if they are not
+   *         connected
+   * 
+   * @throws UserNotFoundException if a user does not exist
+   */
+  public int[] getDistances(String[] sources, String[] targets) throws UserNotFoundException {
+    if (sources.length != targets.length) {
+      throw new IllegalArgumentException("Need as many targets as sources");
+    }
+    
+    Person[] sourcePersons = new Person[sources.length];
+    Person[] targetPersons = new Person[targets.length];
+    for (int i = 0; i < sources.length; i++) {
+      sourcePersons[i] = this.network.getNode(sources[i]);
+      if (sourcePersons[i] == null) {
+        throw new UserNotFoundException("User " + "'" + sources[i] + "'" + " does not exist");
+      }
+      targetPersons[i] = this.network.getNode(targets[i]);
+      if (targetPersons[i] == null) {
+        throw new UserNotFoundException("User " + "'" + targets[i] + "'" + " does not exist");
+      }
+    }
+    MultiSourceBfs distances = this.distances;
+    if (distances == null) {
+      distances = new MultiSourceBfs(this.network);
+      this.distances = distances;
+    }
+    return distances.distances(sourcePersons, targetPersons);
+  }
+  
+  /**
+   * Get "people you may know" recommendations for a user: friends of their
+   * friends, most mutual friends first
+   * 
+   * @param user the specified user
+   * @param k the most recommendations to return
+   * 
+   * @return List<Person> of up to k people who are not friends of user yet
+   * 
+   * @throws UserNotFoundException if user does not exist
+   */
+  public List<Person> getRecommendations(String user, int k) throws UserNotFoundException {
+    Person person = this.network.getNode(user);
+    if (person == null) {
+      throw new UserNotFoundException("User " + "'" + user + "'" + " does not exist");
+    }
+    return this.recommenders.get().recommend(person, k);
+  }
+  
+  /**
+   * Precomputes the recommendations of every user on all cores. The network
+   * must not change while this runs.
+   * 
+   * @param k the most recommendations per user
+   * 
+   * @return Map<Person, List<Person>> recommendations of every user
+   */
+  public Map<Person, List<Person>> getAllRecommendations(int k) {
+    return FriendRecommender.recommendAll(this.network, k, ForkJoinPool.commonPool());
+  }
+  
+  /**
+   * Groups the users into communities of densely connected friends with label
+   * propagation on all cores. The result is kept for getCommunityOf and
+   * getCommunitySizes until the next call. The network must not change while
+   * this runs.
+   * 
+   * @return Communities of the network
+   */
+  public Communities detectCommunities() {
+    this.communities = new Communities(this.network, ForkJoinPool.commonPool());
+    return this.communities;
+  }
+  
+  /**
+   * Get the community of a user from the last detectCommunities call, detecting
+   * communities first if that never ran
+   * 
+   * @param user the specified user
+   * 
+   * @return int community of the user, or -1 if the user was added after the
+   *         communities were detected
+   * 
+   * @throws UserNotFoundException if user does not exist
+   */
+  public int getCommunityOf(String user) throws UserNotFoundException {
+    Person person = this.network.getNode(user);
+    if (person == null) {
+      throw new UserNotFoundException("User " + "'" + user + "'" + " does not exist");
+    }
+    
+    if (this.communities == null) {
+      this.detectCommunities();
+    }
+    return this.communities.getCommunityOf(person);
+  }
+  
+  /**
+   * Get the number of users in every community from the last detectCommunities
+   * call, detecting communities first if that never ran
+   * 
+   * @return int[] size of every community, indexed by community
+   */
+  public int[] getCommunitySizes() {
+    if (this.communities == null) {
+      this.detectCommunities();
+    }
+    return this.communities.getCommunitySizes();
+  }
+  
+  /**
+   * Counts the triangles of the network (groups of three users who are all
+   * friends with each other) on all cores. The network must not change while
+   * this runs.
+   * 
+   * @return TriangleCounts with the triangles and clustering coefficients of
+   *         every user and of the whole network
+   */
+  public TriangleCounts countTriangles() {
+    return new TriangleCounts(this.network, ForkJoinPool.commonPool());
+  }
+  
+  /**
+   * Ranks users by influence with PageRank on all cores. Every call after the
+   * first starts from the previous scores, so after a few changes to the
+   * network it only takes a few iterations. The network must not change while
+   * this runs.
+   * 
+   * @return PageRank holding the score of every user
+   */
+  public PageRank rankInfluence() {
+    this.influence.compute(this.network, ForkJoinPool.commonPool());
+    return this.influence;
+  }
+  
   /** 
    * Loads a file and constructs a social network from the file
    * 
@@ -238,7 +684,77 @@ public class SocialNetwork implements SocialNetworkADT {
    */
   @Override
   public void loadNetworkFromFile(File file) {
-    // TODO Auto-generated method stub
+    loadNetworkFromFile(file, this);
+  }
+  
+  /** 
+   * Loads a file with the parallel bulk loader
+   * 
+   * Builds the same network as loadNetworkFromFile, but tokenizes the file on
+   * all cores and adds people and friendships to the graph directly.
+   * 
+   * @param file the file to load from
+   * 
+   * @return double lines loaded per second
+   */
+  public double bulkLoadNetworkFromFile(File file) {
+    BulkNetworkLoader loader =
+        new BulkNetworkLoader(this.network, Runtime.getRuntime().availableProcessors());
+    
+    try {
+      loader.load(file);
+    } catch (FileNotFoundException e) {
+
+    } catch (IOException | InvalidUsernameException | UserAlreadyExistsException
+        | UserNotFoundException e) {
+      e.printStackTrace();
+    } finally {
+      loader.shutdown();
+      this.checkpointLog();
+    }
+    
+    return loader.getLinesPerSecond();
+  }
+  
+  /** 
+   * Loads a file by memory-mapping it
+   * 
+   * Builds the same network as loadNetworkFromFile, but scans the mapped file
+   * as bytes so lines and usernames are not decoded into Strings. Meant for
+   * very large files.
+   * 
+   * @param file the file to load from
+   * 
+   * @return double lines loaded per second
+   */
+  public double mappedLoadNetworkFromFile(File file) {
+    BulkNetworkLoader loader = new BulkNetworkLoader(this.network, 1);
+    
+    try {
+      loader.loadMapped(file);
+    } catch (FileNotFoundException | NoSuchFileException e) {
+
+    } catch (IOException | InvalidUsernameException | UserAlreadyExistsException
+        | UserNotFoundException e) {
+      e.printStackTrace();
+    } finally {
+      loader.shutdown();
+      this.checkpointLog();
+    }
+    
+    return loader.getLinesPerSecond();
+  }
+  
+  /** 
+   * Replays the commands in a file against any social network
+   * 
+   * Shared by the SocialNetworkADT implementations so they all read the
+   * same file format the same way.
+   * 
+   * @param file the file to load from
+   * @param target the social network to replay the commands against
+   */
+  static void loadNetworkFromFile(File file, SocialNetworkADT target) {
 	  try {
 			BufferedReader saveFile = new BufferedReader(new FileReader(file));
 			String reader;
@@ -249,30 +765,26 @@ public class SocialNetwork implements SocialNetworkADT {
 				String[] splitstr = reader.split("\\s+");
 				if (reader.charAt(0) == 'a') {// add
 					if (splitstr.length == 2) {// add one user
-						if (addUser(splitstr[1])) {
+						if (target.addUser(splitstr[1])) {
 							continue;
 						}
 					}
 					if (splitstr.length == 3) {// add two users and friendship
-						if (this.network.getNode(splitstr[1]) == null) {
-							addUser(splitstr[1]);
-						}
-						if (this.network.getNode(splitstr[2]) == null) {
-							addUser(splitstr[2]);
-						}
-						if (addFriend(splitstr[1], splitstr[2])) {
+						addUserIfAbsent(target, splitstr[1]);
+						addUserIfAbsent(target, splitstr[2]);
+						if (target.addFriend(splitstr[1], splitstr[2])) {
 							continue;
 						}
 					}
 				}
 				if (reader.charAt(0) == 'r') {// remove
 					if (splitstr.length == 2) {// remove one user
-						if (removeUser(splitstr[1])) {
+						if (target.removeUser(splitstr[1])) {
 							continue;
 						}
 					}
 					if (splitstr.length == 3) {// remove two users and friendship
-						if (removeFriend(splitstr[1], splitstr[2])) {
+						if (target.removeFriend(splitstr[1], splitstr[2])) {
 							continue;
 						}
 					}
@@ -294,6 +806,94 @@ public class SocialNetwork implements SocialNetworkADT {
 			e.printStackTrace();
 		}
   }
+  
+  /**
+   * Adds a user to a social network unless they already exist
+   * 
+   * @param target the social network to add to
+   * @param user the user to be added
+   * 
+   * @throws InvalidUsernameException if username is invalid
+   */
+  private static void addUserIfAbsent(SocialNetworkADT target, String user)
+      throws InvalidUsernameException {
+    try {
+      target.addUser(user);
+    } catch (UserAlreadyExistsException e) {
+      // user is already in the network, nothing to add
+    }
+  }
+
+  /**
+   * Saves the current state of the social network as a binary snapshot
+   * 
+   * Unlike saveNetworkToFile this writes the users and friendships themselves,
+   * not the commands that created them.
+   * 
+   * @param file the file to save to
+   * 
+   * @throws IOException if the file cannot be written
+   */
+  public void saveSnapshot(File file) throws IOException {
+    GraphSnapshot.write(this.network, file);
+  }
+  
+  /**
+   * Loads a binary snapshot written by saveSnapshot into the social network
+   * 
+   * @param file the file to load from
+   * 
+   * @throws IOException if the file cannot be read or is not a snapshot
+   */
+  public void loadSnapshot(File file) throws IOException {
+    try {
+      GraphSnapshot.read(file, this.network);
+    } finally {
+      this.checkpointLog();
+    }
+  }
+
+  /**
+   * Saves the current state of the social network as the first generation of a
+   * MappedGraph directory, which openMappedNetwork opens without reading it
+   * 
+   * @param directory the directory to save to, must not hold a graph yet
+   * 
+   * @throws IOException if the directory cannot be written
+   */
+  public void saveMappedNetwork(File directory) throws IOException {
+    MappedGraph.create(this.network, directory);
+  }
+  
+  /**
+   * Opens a social network saved by saveMappedNetwork by memory-mapping its
+   * newest generation. Opening takes the same time whatever the size, friends
+   * are read from disk when first asked for. Call close when done so pending
+   * changes are merged into a new generation.
+   * 
+   * @param directory the directory to open
+   * 
+   * @return SocialNetwork backed by a MappedGraph
+   * 
+   * @throws IOException if the directory cannot be opened
+   */
+  public static SocialNetwork openMappedNetwork(File directory) throws IOException {
+    return new SocialNetwork(new MappedGraph(directory));
+  }
+
+  /**
+   * Saves the current state of the social network as the shortest command file
+   * that rebuilds it: one "a" line per friendship, one per user without
+   * friends and an "s" line for the central user
+   * 
+   * @param file the file to save to
+   * @param centralUser the central user, or null to not write one
+   * 
+   * @throws IOException if the file cannot be written
+   */
+  public void saveCompactNetworkToFile(File file, String centralUser) throws IOException {
+    new CommandLogCompactor().compact(this.network, centralUser, file);
+  }
 
   /**
    * Saves a social network to a file
@@ -302,6 +902,16 @@ public class SocialNetwork implements SocialNetworkADT {
    */
   @Override
   public void saveNetworkToFile(File file, Queue<String> commandList) {
+    saveCommandsToFile(file, commandList);
+  }
+  
+  /**
+   * Writes and drains a queue of commands to a file
+   * 
+   * @param file the file to save to
+   * @param commandList the commands to write
+   */
+  static void saveCommandsToFile(File file, Queue<String> commandList) {
     PrintStream writer;
 	
 	try {
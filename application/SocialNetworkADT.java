@@ -78,6 +78,15 @@ public interface SocialNetworkADT {
      */
     public Set<Person> getAllUsers();
     
+    /**
+     * Returns the Person object for a specified username
+     * 
+     * @param name the username to look up
+     * 
+     * @return Person object of the user, or null if user does not exist
+     */
+    public Person getPersonByName(String name);
+    
     
     /**
      * Get all the friends of a user
@@ -90,6 +99,17 @@ public interface SocialNetworkADT {
      */
     public List<Person> getFriendsOf(String user) throws UserNotFoundException;
     
+    /**
+     * Get a read-only view of the friends of a user without copying them
+     * 
+     * @param user the specified user
+     * 
+     * @return a read-only Set<Person> of all the friends of the specified person
+     * 
+     * @throws UserNotFoundException if user does not exist
+     */
+    public Set<Person> getFriendsView(String user) throws UserNotFoundException;
+    
     /**
      * Get all of the mutual friends between two users
      * 
@@ -102,6 +122,19 @@ public interface SocialNetworkADT {
      */
     public Set<Person> getMutualFriends(String user1, String user2) throws UserNotFoundException;
     
+    /**
+     * Get a shortest chain of friendships connecting two users
+     * 
+     * @param user1 the first user
+     * @param user2 the second user
+     * 
+     * @return List<Person> of the people on the path from user1 to user2, both
+     *         included, or an empty list if they are not connected
+     * 
+     * @throws UserNotFoundException if a user does not exist
+     */
+    public List<Person> getShortestPath(String user1, String user2) throws UserNotFoundException;
+    
     /**
      * Loads a file and constructs a social network from the file
      * 
@@ -0,0 +1,202 @@
+package application;
+
+/**
+ * Intersection of sorted int arrays without duplicates, such as CSR friend
+ * rows.
+ *
+ * Three algorithms, picked by the lengths of the two ranges:
+ *
+ *   - linear merge, for ranges of about the same, small length
+ *   - galloping, when one range is much shorter: every element of the short
+ *     range is found in the long one by exponential then binary search, so
+ *     the cost is O(short * log(long / short)) instead of O(short + long)
+ *   - blocks of four, for long ranges of similar length: every element of a
+ *     block of the first range is compared against a whole block of the second
+ *     with no data dependent branches, and the block with the smaller last
+ *     element is skipped. This trades a few extra comparisons for far fewer
+ *     mispredicted branches and lets the JIT use vector instructions.
+ *
+ * Every method takes an output array that may be null to only count.
+ *
+ * @author samsoncain
+ */
+public class SortedIntersection {
+
+  /**
+   * Length ratio from which galloping beats merging
+   */
+  static final int GALLOP_RATIO = 32;
+
+  /**
+   * Shorter range length from which blocks beat a plain merge
+   */
+  static final int BLOCK_THRESHOLD = 64;
+
+  /**
+   * Counts the common elements of two sorted ranges without allocating
+   *
+   * @param a     first array
+   * @param aFrom first index of the range in a
+   * @param aTo   end of the range in a
+   * @param b     second array
+   * @param bFrom first index of the range in b
+   * @param bTo   end of the range in b
+   *
+   * @return int number of common elements
+   */
+  public static int count(int[] a, int aFrom, int aTo, int[] b, int bFrom, int bTo) {
+    return intersect(a, aFrom, aTo, b, bFrom, bTo, null);
+  }
+
+  /**
+   * Writes the common elements of two sorted ranges to out in ascending order
+   *
+   * @param a     first array
+   * @param aFrom first index of the range in a
+   * @param aTo   end of the range in a
+   * @param b     second array
+   * @param bFrom first index of the range in b
+   * @param bTo   end of the range in b
+   * @param out   array to write to, at least as long as the shorter range, or
+   *              null to only count
+   *
+   * @return int number of common elements
+   */
+  public static int intersect(int[] a, int aFrom, int aTo, int[] b, int bFrom, int bTo,
+      int[] out) {
+    int aLength = aTo - aFrom;
+    int bLength = bTo - bFrom;
+    if (aLength == 0 || bLength == 0) {
+      return 0;
+    }
+
+    if (aLength > bLength) {
+      // keep a the shorter range
+      return intersect(b, bFrom, bTo, a, aFrom, aTo, out);
+    }
+    if (bLength / aLength >= GALLOP_RATIO) {
+      return gallop(a, aFrom, aTo, b, bFrom, bTo, out, 0);
+    }
+    if (aLength >= BLOCK_THRESHOLD) {
+      return blocks(a, aFrom, aTo, b, bFrom, bTo, out, 0);
+    }
+    return merge(a, aFrom, aTo, b, bFrom, bTo, out, 0);
+  }
+
+  /**
+   * Intersects by walking both ranges in step
+   *
+   * @param out   array to write to from index count, or null to only count
+   * @param count number of elements already found
+   *
+   * @return int number of common elements including count
+   */
+  static int merge(int[] a, int aFrom, int aTo, int[] b, int bFrom, int bTo, int[] out,
+      int count) {
+    int i = aFrom;
+    int j = bFrom;
+    while (i < aTo && j < bTo) {
+      int x = a[i];
+      int y = b[j];
+      if (x < y) {
+        i++;
+      } else if (x > y) {
+        j++;
+      } else {
+        if (out != null) {
+          out[count] = x;
+        }
+        count++;
+        i++;
+        j++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Intersects by searching every element of the short range a in the long
+   * range b, starting where the previous search ended
+   *
+   * @param out   array to write to from index count, or null to only count
+   * @param count number of elements already found
+   *
+   * @return int number of common elements including count
+   */
+  static int gallop(int[] a, int aFrom, int aTo, int[] b, int bFrom, int bTo, int[] out,
+      int count) {
+    int low = bFrom;
+    for (int i = aFrom; i < aTo && low < bTo; i++) {
+      int x = a[i];
+
+      // double the step until b[high] >= x
+      int step = 1;
+      int high = low;
+      while (high < bTo && b[high] < x) {
+        low = high + 1;
+        high += step;
+        step <<= 1;
+      }
+      high = Math.min(high, bTo - 1);
+
+      // binary search for the first element >= x in b[low..high]
+      while (low <= high) {
+        int middle = (low + high) >>> 1;
+        if (b[middle] < x) {
+          low = middle + 1;
+        } else {
+          high = middle - 1;
+        }
+      }
+      if (low < bTo && b[low] == x) {
+        if (out != null) {
+          out[count] = x;
+        }
+        count++;
+        low++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Intersects blocks of four elements at a time, then merges the rest. With
+   * an output array, every element of a is written at index count and only
+   * kept if it matched, so out must be as long as the range of a.
+   *
+   * @param out   array to write to from index count, or null to only count
+   * @param count number of elements already found
+   *
+   * @return int number of common elements including count
+   */
+  static int blocks(int[] a, int aFrom, int aTo, int[] b, int bFrom, int bTo, int[] out,
+      int count) {
+    int i = aFrom;
+    int j = bFrom;
+    while (i + 4 <= aTo && j + 4 <= bTo) {
+      int b0 = b[j];
+      int b1 = b[j + 1];
+      int b2 = b[j + 2];
+      int b3 = b[j + 3];
+      for (int k = i; k < i + 4; k++) {
+        int x = a[k];
+        // elements are unique, so at most one of these matches
+        int hit = (x == b0 ? 1 : 0) | (x == b1 ? 1 : 0) | (x == b2 ? 1 : 0) | (x == b3 ? 1 : 0);
+        if (out != null) {
+          out[count] = x;
+        }
+        count += hit;
+      }
+
+      int aLast = a[i + 3];
+      if (aLast <= b3) {
+        i += 4;
+      }
+      if (b3 <= aLast) {
+        j += 4;
+      }
+    }
+    return merge(a, i, aTo, b, j, bTo, out, count);
+  }
+
+}
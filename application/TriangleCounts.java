@@ -0,0 +1,249 @@
+package application;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Triangle counts and clustering coefficients of a graph.
+ *
+ * People are renumbered in order of degree and every friendship is kept only
+ * on its lower numbered end, so each person keeps a sorted list of "forward"
+ * friends with a higher number. A triangle u < v < w is then found exactly
+ * once, as an element w common to the forward lists of u and v. Low degree
+ * people come first, so hubs end up with short forward lists and no
+ * intersection is larger than O(sqrt(edges)).
+ *
+ * The intersections are split over ranges of people in a fork-join pool and
+ * use SortedIntersection. Self-friendships are ignored.
+ *
+ * @author samsoncain
+ */
+public class TriangleCounts {
+
+  /**
+   * Forward friendships per task
+   */
+  private static final int CHUNK_EDGES = 1 << 16;
+
+  /**
+   * Number of every person, in ascending order of degree
+   */
+  private Map<Person, Integer> ids;
+
+  /**
+   * Friends of every person, self-friendships left out
+   */
+  private int[] degrees;
+
+  /**
+   * Triangles every person is part of
+   */
+  private long[] triangles;
+
+  /**
+   * Triangles in the graph
+   */
+  private long total;
+
+  /**
+   * Counts the triangles of a graph
+   *
+   * @param graph graph to count, must not change while this runs
+   * @param pool  pool to run in
+   */
+  public TriangleCounts(GraphADT graph, ForkJoinPool pool) {
+    Person[] persons = graph.getAllNodes().toArray(new Person[0]);
+    int order = persons.length;
+
+    // number people by ascending degree, ties by position
+    int[] degrees = new int[order];
+    long[] keys = new long[order];
+    for (int i = 0; i < order; i++) {
+      Set<Person> friends = graph.getNeighbors(persons[i]);
+      degrees[i] = friends.size() - (friends.contains(persons[i]) ? 1 : 0);
+      keys[i] = (long) degrees[i] << 32 | i;
+    }
+    Arrays.sort(keys);
+
+    this.ids = new HashMap<Person, Integer>(order * 2);
+    Person[] ranked = new Person[order];
+    this.degrees = new int[order];
+    for (int id = 0; id < order; id++) {
+      int position = (int) keys[id];
+      ranked[id] = persons[position];
+      this.degrees[id] = degrees[position];
+      this.ids.put(persons[position], id);
+    }
+
+    // forward lists: friends with a higher number, sorted
+    int[] offsets = new int[order + 1];
+    for (int id = 0; id < order; id++) {
+      int forward = 0;
+      for (Person friend : graph.getNeighbors(ranked[id])) {
+        if (this.ids.get(friend) > id) {
+          forward++;
+        }
+      }
+      offsets[id + 1] = offsets[id] + forward;
+    }
+    int[] targets = new int[offsets[order]];
+    for (int id = 0; id < order; id++) {
+      int position = offsets[id];
+      for (Person friend : graph.getNeighbors(ranked[id])) {
+        int friendId = this.ids.get(friend);
+        if (friendId > id) {
+          targets[position++] = friendId;
+        }
+      }
+      Arrays.sort(targets, offsets[id], position);
+    }
+
+    AtomicLongArray counts = new AtomicLongArray(order);
+    this.total = pool.invoke(new CountTask(offsets, targets, counts, 0, order));
+
+    this.triangles = new long[order];
+    for (int id = 0; id < order; id++) {
+      this.triangles[id] = counts.get(id);
+    }
+  }
+
+  /**
+   * Returns the number of triangles, groups of three people who are all
+   * friends with each other
+   *
+   * @return long number of triangles
+   */
+  public long getTriangleCount() {
+    return this.total;
+  }
+
+  /**
+   * Returns the number of triangles a person is part of
+   *
+   * @param person the person
+   *
+   * @return long number of triangles, or -1 if the person was not in the graph
+   */
+  public long getTriangles(Person person) {
+    Integer id = this.ids.get(person);
+    return id == null ? -1 : this.triangles[id];
+  }
+
+  /**
+   * Returns the local clustering coefficient of a person: the share of pairs
+   * of their friends that are friends with each other
+   *
+   * @param person the person
+   *
+   * @return double between 0 and 1, 0 for fewer than two friends, or -1 if the
+   *         person was not in the graph
+   */
+  public double getClusteringCoefficient(Person person) {
+    Integer id = this.ids.get(person);
+    if (id == null) {
+      return -1;
+    }
+    long degree = this.degrees[id];
+    return degree < 2 ? 0 : 2.0 * this.triangles[id] / (degree * (degree - 1));
+  }
+
+  /**
+   * Returns the mean of the local clustering coefficients of everybody
+   *
+   * @return double average clustering coefficient
+   */
+  public double getAverageClusteringCoefficient() {
+    double sum = 0;
+    for (int id = 0; id < this.degrees.length; id++) {
+      long degree = this.degrees[id];
+      if (degree >= 2) {
+        sum += 2.0 * this.triangles[id] / (degree * (degree - 1));
+      }
+    }
+    return this.degrees.length == 0 ? 0 : sum / this.degrees.length;
+  }
+
+  /**
+   * Returns the global clustering coefficient (transitivity): three times the
+   * triangles over the number of pairs of friends that share a friend
+   *
+   * @return double between 0 and 1
+   */
+  public double getGlobalClusteringCoefficient() {
+    double wedges = 0;
+    for (int degree : this.degrees) {
+      wedges += (double) degree * (degree - 1) / 2;
+    }
+    return wedges == 0 ? 0 : 3 * this.total / wedges;
+  }
+
+  /**
+   * Counts the triangles found at a range of people, splitting ranges with
+   * many forward friendships
+   */
+  private static class CountTask extends RecursiveTask<Long> {
+    private static final long serialVersionUID = 1L;
+
+    private int[] offsets;
+    private int[] targets;
+    private AtomicLongArray counts;
+    private int from;
+    private int to;
+
+    CountTask(int[] offsets, int[] targets, AtomicLongArray counts, int from, int to) {
+      this.offsets = offsets;
+      this.targets = targets;
+      this.counts = counts;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected Long compute() {
+      if (this.to - this.from > 1
+          && this.offsets[this.to] - this.offsets[this.from] > CHUNK_EDGES) {
+        int middle = (this.from + this.to) >>> 1;
+        CountTask left = new CountTask(this.offsets, this.targets, this.counts, this.from, middle);
+        left.fork();
+        long right =
+            new CountTask(this.offsets, this.targets, this.counts, middle, this.to).compute();
+        return left.join() + right;
+      }
+
+      long found = 0;
+      int[] common = new int[16];
+      for (int u = this.from; u < this.to; u++) {
+        int uFrom = this.offsets[u];
+        int uTo = this.offsets[u + 1];
+        for (int e = uFrom; e < uTo; e++) {
+          int v = this.targets[e];
+          int vFrom = this.offsets[v];
+          int vTo = this.offsets[v + 1];
+          int shorter = Math.min(uTo - uFrom, vTo - vFrom);
+          if (common.length < shorter) {
+            common = new int[Math.max(shorter, common.length * 2)];
+          }
+
+          int count = SortedIntersection.intersect(this.targets, uFrom, uTo, this.targets, vFrom,
+              vTo, common);
+          if (count == 0) {
+            continue;
+          }
+          found += count;
+          this.counts.addAndGet(u, count);
+          this.counts.addAndGet(v, count);
+          for (int i = 0; i < count; i++) {
+            this.counts.incrementAndGet(common[i]);
+          }
+        }
+      }
+      return found;
+    }
+  }
+
+}